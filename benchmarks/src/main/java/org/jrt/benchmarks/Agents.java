@@ -0,0 +1,68 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.benchmarks;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import org.jrt.impl.Configuration;
+import org.jrt.impl.JRT;
+import org.jrt.impl.JRTStatistic;
+import org.jrt.impl.Sampling;
+
+/**
+ * jRTs for benchmarks calling probes directly: configured by agent
+ * arguments and ready to record, but not started (nothing is instrumented,
+ * there is no LogWriter), and remote addresses of peers.
+ */
+class Agents {
+
+    /**
+     * @param arguments jRT agent arguments, null for defaults
+     */
+    static Configuration configuration(String arguments) {
+        JRT jRT = new JRT();
+        jRT.parseArguments(arguments);
+        return jRT.configuration;
+    }
+
+    /**
+     * @param arguments jRT agent arguments, null for defaults
+     */
+    static JRT newJRT(String arguments) {
+        JRT jRT = new JRT();
+        jRT.parseArguments(arguments);
+        jRT.jrtStat = new JRTStatistic();
+        jRT.sampling = new Sampling(jRT);
+        jRT.i2oLS = jRT.newLatencyStats();
+        jRT.o2iLS = jRT.newLatencyStats();
+        // for probes resolving jRT by uuid as before binding
+        JRT.jRTWorkers.put(jRT.configuration.uuid, jRT);
+        return jRT;
+    }
+
+    static void stop(JRT jRT) {
+        JRT.jRTWorkers.remove(jRT.configuration.uuid);
+        jRT.i2oLS.stop();
+        jRT.o2iLS.stop();
+    }
+
+    /**
+     * @return n distinct addresses of 10.0.0.0/8, 10.<n/65536>.<n/256>.<n>
+     */
+    static InetAddress[] peers(int n) {
+        InetAddress[] peers = new InetAddress[n];
+        try {
+            for (int i = 0; i < n; ++i) {
+                peers[i] = InetAddress.getByAddress(new byte[] {
+                    10, (byte) (i >>> 16), (byte) (i >>> 8), (byte) i });
+            }
+        } catch (UnknownHostException e) {
+            throw new AssertionError(e);
+        }
+        return peers;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.benchmarks;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import org.jrt.impl.SocketFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Socket filter check of a new socket (SocketFilter.matchEntry, called by
+ * Accumulator.initializeJRTHic and connection probes) with filter lists
+ * of real services. A few peers are answered by the filter cache, more
+ * than its limit (4096) are matched against entries every time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    private static final int LOCAL_PORT = 40000;
+    private static final int[] REMOTE_PORTS = {80, 443, 5432, 6379, 8080, 9092, 11211, 27017};
+
+    /*
+     * none:  no filter, everything is measured
+     * ports: remote ports of a service talking to its backends
+     * cidr:  address ranges, globs and exact addresses
+     * mixed: 100 entries of both, matching ones are the last
+     */
+    @Param({"none", "ports", "cidr", "mixed"})
+    public String filter;
+
+    @Param({"16", "65536"})
+    public int peers;
+
+    private SocketFilter socketFilter;
+    private InetAddress[] addresses;
+    private int[] ports;
+    private int next;
+
+    @Setup
+    public void setup() {
+        String arguments = null;
+        if ("ports".equals(filter)) {
+            arguments = "-rport=5432,-rport=6379,-rport=9000-9100,-rport=11211,-rport=27017,-rport=8080";
+        } else if ("cidr".equals(filter)) {
+            arguments = "-raddr=192.168.0.0/16,-raddr=172.16.*,-raddr=10.0.0.0/12,-f=:10.16.0.0/12:8080,-raddr=127.0.0.1";
+        } else if ("mixed".equals(filter)) {
+            StringBuilder b = new StringBuilder();
+            for (int i = 0; i < 98; ++i) {
+                b.append(i % 2 == 0 ? "-f=:192.168." + i + ".0/24:" : "-lport=" + (20000 + i)).append(',');
+            }
+            arguments = b.append("-f=::443,-f=:10.0.0.0/8:").toString();
+        }
+        socketFilter = Agents.configuration(arguments).socketFilter;
+
+        addresses = Agents.peers(peers);
+        ports = new int[peers];
+        for (int i = 0; i < peers; ++i) {
+            ports[i] = REMOTE_PORTS[i % REMOTE_PORTS.length];
+        }
+    }
+
+    @Benchmark
+    public int matchEntry() {
+        int i = next;
+        next = (i + 1) & (peers - 1);
+        return socketFilter.matchEntry(addresses[i], ports[i], LOCAL_PORT);
+    }
+}
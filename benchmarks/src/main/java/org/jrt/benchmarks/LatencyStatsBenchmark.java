@@ -0,0 +1,88 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.LatencyUtils.LatencyStats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LatencyStats.recordLatency of jRT's LatencyStats (defaults of
+ * JRT.newLatencyStats but -digits) by 1, 4 and 16 threads recording into
+ * the same one, as all sockets of a direction do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyStatsBenchmark {
+
+    @Param({"2", "3"})
+    public int digits;
+
+    private LatencyStats ls;
+
+    /**
+     * Latencies of a thread, 10 us .. ~10 ms spread over the histogram.
+     */
+    @State(Scope.Thread)
+    public static class Latencies {
+        long x = System.nanoTime() | 1;
+
+        long next() {
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            return 10000 + (x & 0x7fffff);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        ls = LatencyStats.Builder.create()
+                .lowestTrackableLatency(1000)
+                .highestTrackableLatency(3600000000000L)
+                .numberOfSignificantValueDigits(digits)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        ls.stop();
+    }
+
+    @Benchmark
+    public void record1(Latencies l) {
+        ls.recordLatency(l.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void record4(Latencies l) {
+        ls.recordLatency(l.next());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void record16(Latencies l) {
+        ls.recordLatency(l.next());
+    }
+}
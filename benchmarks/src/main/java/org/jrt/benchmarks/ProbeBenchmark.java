@@ -0,0 +1,194 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import org.jrt.impl.JRT;
+import org.jrt.impl.JRTBinder;
+import org.jrt.socket.api.JRTHic;
+import org.jrt.socket.regular.Accumulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Probes of a request/response round (write before/after, read
+ * before/after: an o2i latency recorded per round) as instrumented code
+ * calls them:
+ *
+ *   field:  JRTHic of the socket and jRT are at hand (an instance field
+ *           of the benchmark), as with -hf=true
+ *   bound:  JRTHic at hand, jRT is read from the static final field of
+ *           the holder class JRTBinder generates, by a constant method
+ *           handle, so JIT may fold it to a constant as in instrumented
+ *           JDK classes; jRTWorkers is not touched
+ *   lookup: every probe resolves jRT in jRTWorkers by uuid and JRTHic in
+ *           sockRTs, as probes did before them (and -weaver=asm does for
+ *           JRTHic)
+ *
+ * Single threaded, each of 8 threads with its own socket (LatencyStats
+ * are shared) and 8 threads on the same full duplex socket.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProbeBenchmark {
+
+    private static final int MESSAGE_SIZE = 64;
+
+    // probe calls are counted with -overhead
+    @Param({"false", "true"})
+    public boolean overhead;
+
+    private JRT jRT;
+    private String uuid;
+    private Connection shared;
+
+    //uuid of the jRT Binding is generated for, set by setup()
+    private static volatile String boundUuid;
+
+    /**
+     * Holder class of the jRT of the trial, JMH forks a JVM per trial.
+     */
+    static final class Binding {
+        static final MethodHandle jRT = bind();
+
+        private static MethodHandle bind() {
+            final String name = "org.jrt.impl.binding.JRTBenchmark";
+            final byte[] b = JRTBinder.holderClass(name.replace('.', '/'), boundUuid);
+            Class<?> holder = new ClassLoader(ProbeBenchmark.class.getClassLoader()) {
+                Class<?> define() {
+                    return defineClass(name, b, 0, b.length);
+                }
+            }.define();
+            try {
+                return MethodHandles.lookup().findStaticGetter(holder, "jRT", JRT.class);
+            } catch (ReflectiveOperationException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        static JRT get() {
+            try {
+                return (JRT) jRT.invokeExact();
+            } catch (Throwable t) {
+                throw new AssertionError(t);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        final Object sock = new Object();
+        final byte[] message = new byte[MESSAGE_SIZE];
+        JRTHic hic;
+
+        @Setup
+        public void setup(ProbeBenchmark b) throws Exception {
+            hic = b.register(sock);
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        jRT = Agents.newJRT("-overhead=" + overhead);
+        uuid = jRT.configuration.uuid;
+        shared = new Connection();
+        shared.hic = register(shared.sock);
+        boundUuid = uuid;
+        if (Binding.get() != jRT) {
+            throw new IllegalStateException("Binding is of jRT of another trial, run with forks");
+        }
+    }
+
+    JRTHic register(Object sock) throws Exception {
+        return Accumulator.initializeJRTHic(jRT, sock, InetAddress.getByName(null), 8080, 40000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Agents.stop(jRT);
+    }
+
+    private void field(Connection s) {
+        JRT j = jRT;
+        Accumulator.putTimestampWriteBefore(j, s.hic);
+        Accumulator.putTimestampWriteAfter(j, s.hic, s.message, 0, MESSAGE_SIZE);
+        Accumulator.putTimestampReadBefore(j, s.hic);
+        Accumulator.putTimestampReadAfter(j, s.hic, s.message, 0, MESSAGE_SIZE);
+    }
+
+    private void bound(Connection s) {
+        JRT j = Binding.get();
+        Accumulator.putTimestampWriteBefore(j, s.hic);
+        Accumulator.putTimestampWriteAfter(j, s.hic, s.message, 0, MESSAGE_SIZE);
+        Accumulator.putTimestampReadBefore(j, s.hic);
+        Accumulator.putTimestampReadAfter(j, s.hic, s.message, 0, MESSAGE_SIZE);
+    }
+
+    private void lookup(Connection s) {
+        Accumulator.writeBefore(JRT.jRTWorkers.get(uuid), s.sock);
+        Accumulator.writeAfter(JRT.jRTWorkers.get(uuid), s.sock, s.message, 0, MESSAGE_SIZE);
+        Accumulator.readBefore(JRT.jRTWorkers.get(uuid), s.sock);
+        Accumulator.readAfter(MESSAGE_SIZE, JRT.jRTWorkers.get(uuid), s.sock, s.message, 0);
+    }
+
+    @Benchmark
+    public void field1(Connection s) {
+        field(s);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void field8(Connection s) {
+        field(s);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void field8Shared() {
+        field(shared);
+    }
+
+    @Benchmark
+    public void bound1(Connection s) {
+        bound(s);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void bound8(Connection s) {
+        bound(s);
+    }
+
+    @Benchmark
+    public void lookup1(Connection s) {
+        lookup(s);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void lookup8(Connection s) {
+        lookup(s);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.benchmarks;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import org.jrt.impl.JRT;
+import org.jrt.socket.api.JRTHic;
+import org.jrt.socket.regular.Accumulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Connection churn: a socket is registered (Accumulator.initializeJRTHic,
+ * filter check included) and unregistered as it's closed, next to a
+ * number of long living sockets registered already.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistrationBenchmark {
+
+    private static final int PEERS = 1024;
+    private static final int LOCAL_PORT = 40000;
+
+    /*
+     * none:  every socket is measured
+     * rport: a half of sockets is filtered out by remote port
+     */
+    @Param({"none", "rport"})
+    public String filter;
+
+    @Param({"0", "10000"})
+    public int live;
+
+    private JRT jRT;
+    private InetAddress[] addresses;
+
+    @State(Scope.Thread)
+    public static class Peer {
+        int next;
+    }
+
+    @Setup
+    public void setup() {
+        jRT = Agents.newJRT("rport".equals(filter) ? "-rport=1000-1511" : null);
+        addresses = Agents.peers(PEERS);
+        for (int i = 0; i < live; ++i) {
+            Accumulator.initializeJRTHic(jRT, new Object(), addresses[i % PEERS], 1000 + i % PEERS, LOCAL_PORT);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        Agents.stop(jRT);
+    }
+
+    private JRTHic churn(Peer p) {
+        int i = p.next;
+        p.next = (i + 1) & (PEERS - 1);
+        Object sock = new Object();
+        JRTHic hic = Accumulator.initializeJRTHic(jRT, sock, addresses[i], 1000 + i, LOCAL_PORT);
+        jRT.sockRTs.remove(sock);
+        return hic;
+    }
+
+    @Benchmark
+    public JRTHic churn1(Peer p) {
+        return churn(p);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public JRTHic churn8(Peer p) {
+        return churn(p);
+    }
+}
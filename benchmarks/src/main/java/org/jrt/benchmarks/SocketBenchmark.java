@@ -0,0 +1,119 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.benchmarks;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Request/response round over a loopback socket (java.net.Socket streams,
+ * SocketInputStream/SocketOutputStream or NioSocketImpl depending on JDK)
+ * without jRT and with probes woven by jRT started as an agent of the
+ * fork: javassist probes with JRTHic in sockRTs and in an injected field
+ * (-hf=true), and asm ones. Only the client socket passes the filter, so
+ * one o2i latency is recorded per round.
+ *
+ * The agent is target/jRT.jar, run benchmarks from this module directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SocketBenchmark {
+
+    private static final int PORT = 19800;
+    private static final int MESSAGE_SIZE = 64;
+    private static final String AGENT = "-javaagent:target/jRT.jar=-rport=19800,-lp=target/jRT-bench,-si=1000";
+
+    private ServerSocket server;
+    private Socket client;
+    private DataInputStream in;
+    private OutputStream out;
+    private final byte[] message = new byte[MESSAGE_SIZE];
+
+    @Setup
+    public void setup() throws IOException {
+        server = new ServerSocket(PORT, 1, InetAddress.getByName(null));
+        Thread echo = new Thread("echo") {
+            @Override
+            public void run() {
+                try {
+                    Socket s = server.accept();
+                    DataInputStream in = new DataInputStream(s.getInputStream());
+                    OutputStream out = s.getOutputStream();
+                    byte[] b = new byte[MESSAGE_SIZE];
+                    while (true) {
+                        in.readFully(b);
+                        out.write(b);
+                    }
+                } catch (IOException e) {
+                    // closed by tearDown
+                }
+            }
+        };
+        echo.setDaemon(true);
+        echo.start();
+
+        client = new Socket(InetAddress.getByName(null), PORT);
+        client.setTcpNoDelay(true);
+        in = new DataInputStream(client.getInputStream());
+        out = client.getOutputStream();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    private byte[] round() throws IOException {
+        out.write(message);
+        in.readFully(message);
+        return message;
+    }
+
+    @Benchmark
+    @Fork(1)
+    public byte[] plain() throws IOException {
+        return round();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = AGENT)
+    public byte[] javassist() throws IOException {
+        return round();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = AGENT + ",-hf=true")
+    public byte[] javassistField() throws IOException {
+        return round();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = AGENT + ",-weaver=asm")
+    public byte[] asm() throws IOException {
+        return round();
+    }
+}
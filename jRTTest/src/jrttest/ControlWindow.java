@@ -0,0 +1,138 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package jrttest;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Loopback request/response rounds in phases for jRT stop/start test
+ * (tests/test-control.sh): after every phase but the last one it prints
+ * phase=<n> and waits until file <marker><n> appears, so jRT can be
+ * stopped or started between phases. The client connection is kept open
+ * across phases, with -reconnect:true every phase opens a new one.
+ *
+ * @author fijiol
+ */
+public class ControlWindow {
+
+    private static final int MESSAGE_SIZE = 64;
+
+    private static int port = 19760;
+    private static int rounds = 100;
+    private static int phases = 3;
+    private static String marker = "phase";
+    private static boolean reconnect = false;
+    private static long waitForLog = 500;
+
+    private static Socket client;
+    private static DataInputStream in;
+    private static OutputStream out;
+
+    public static void main(String[] args) throws Exception {
+        for (String param : args) {
+            String[] paramVals = param.split(":", 2);
+            if (paramVals.length != 2) {
+                System.out.println("Usage ControlWindow -port:<port> -rounds:<n> -phases:<n> -marker:<file prefix> -reconnect:<boolean> -wait:<ms>");
+                System.exit(1);
+            }
+            if (paramVals[0].equals("-port")) {
+                port = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-rounds")) {
+                rounds = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-phases")) {
+                phases = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-marker")) {
+                marker = paramVals[1];
+            } else if (paramVals[0].equals("-reconnect")) {
+                reconnect = Boolean.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-wait")) {
+                waitForLog = Long.valueOf(paramVals[1]);
+            }
+        }
+
+        final ServerSocket server = new ServerSocket(port);
+        Thread acceptor = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        echo(server.accept());
+                    }
+                } catch (Exception e) {
+                    // server is closed
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        System.out.println("pid=" + name.substring(0, name.indexOf('@')));
+
+        for (int phase = 1; phase <= phases; ++phase) {
+            if (null == client || reconnect) {
+                connect();
+            }
+            for (int i = 0; i < rounds; ++i) {
+                out.write(new byte[MESSAGE_SIZE]);
+                in.readFully(new byte[MESSAGE_SIZE]);
+            }
+            if (phase == phases) {
+                break;
+            }
+            System.out.println("phase=" + phase);
+            System.out.flush();
+            File next = new File(marker + phase);
+            while (!next.exists()) {
+                Thread.sleep(50);
+            }
+        }
+
+        client.close();
+        server.close();
+
+        System.out.println("rounds=" + rounds * phases);
+
+        // let jRT write last interval
+        Thread.sleep(waitForLog);
+    }
+
+    private static void connect() throws Exception {
+        if (null != client) {
+            client.close();
+        }
+        client = new Socket("127.0.0.1", port);
+        in = new DataInputStream(client.getInputStream());
+        out = client.getOutputStream();
+    }
+
+    private static void echo(final Socket s) {
+        Thread echo = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    DataInputStream in = new DataInputStream(s.getInputStream());
+                    OutputStream out = s.getOutputStream();
+                    byte[] b = new byte[MESSAGE_SIZE];
+                    while (true) {
+                        in.readFully(b);
+                        out.write(b);
+                    }
+                } catch (Exception e) {
+                    // client is gone
+                }
+            }
+        };
+        echo.setDaemon(true);
+        echo.start();
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package jrttest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives request/response turns over single loopback socket by several
+ * writer and reader threads at once: a request is written by one of the
+ * writers and its echo is read by one of the readers, so reads and writes
+ * of the socket come from different threads all the time. Run it under
+ * jRT with -rport=<port> so only client side of the connection is
+ * measured.
+ *
+ * With -window:1 (default) a turn is written only after the previous echo
+ * is read, and an echo is read only after its request is written: jRT is
+ * expected to record one o2i latency per turn and one i2o latency per turn
+ * but the first. With a wider window up to that many requests are in
+ * flight while readers and writers run concurrently; messages are length
+ * prefixed, so with -framer=length and -pipeline=<window> one o2i latency
+ * per turn is expected as well.
+ *
+ * @author fijiol
+ */
+public class DuplexStress {
+
+    private static final int MESSAGE_SIZE = 64;
+
+    private static int port = 19500;
+    private static int writers = 4;
+    private static int readers = 4;
+    private static int rounds = 10000;
+    private static int window = 1;
+    private static long waitForLog = 1000;
+
+    public static void main(String[] args) throws Exception {
+        for (String param : args) {
+            String[] paramVals = param.split(":");
+            if (paramVals.length != 2) {
+                System.out.println("Usage DuplexStress -port:<port> -writers:<n> -readers:<n> -rounds:<n per writer> -window:<n> -wait:<ms>");
+                System.exit(1);
+            }
+            if (paramVals[0].equals("-port")) {
+                port = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-writers")) {
+                writers = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-readers")) {
+                readers = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-rounds")) {
+                rounds = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-window")) {
+                window = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-wait")) {
+                waitForLog = Long.valueOf(paramVals[1]);
+            }
+        }
+
+        final ServerSocket server = new ServerSocket(port);
+        Thread echo = new Thread() {
+            @Override
+            public void run() {
+                try (Socket s = server.accept()) {
+                    InputStream in = s.getInputStream();
+                    OutputStream out = s.getOutputStream();
+                    byte[] buf = new byte[4096];
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        out.write(buf, 0, n);
+                    }
+                } catch (IOException ex) {
+                    System.err.println("echo: " + ex);
+                }
+            }
+        };
+        echo.setDaemon(true);
+        echo.start();
+
+        final Socket client = new Socket("127.0.0.1", port);
+        client.setTcpNoDelay(true);
+        final InputStream in = client.getInputStream();
+        final OutputStream out = client.getOutputStream();
+        final int turns = writers * rounds;
+        // requests allowed in flight, requests written but not read yet
+        final Semaphore free = new Semaphore(window);
+        final Semaphore written = new Semaphore(0);
+        final AtomicInteger readTurns = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < writers; ++i) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    byte[] msg = message();
+                    try {
+                        for (int r = 0; r < rounds; ++r) {
+                            free.acquire();
+                            synchronized (out) {
+                                out.write(msg, 0, msg.length);
+                                written.release();
+                            }
+                        }
+                    } catch (Exception ex) {
+                        failures.incrementAndGet();
+                        System.err.println("writer: " + ex);
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < readers; ++i) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    byte[] buf = new byte[MESSAGE_SIZE];
+                    try {
+                        while (readTurns.getAndIncrement() < turns) {
+                            written.acquire();
+                            synchronized (in) {
+                                readMessage(in, buf);
+                            }
+                            free.release();
+                        }
+                    } catch (Exception ex) {
+                        failures.incrementAndGet();
+                        System.err.println("reader: " + ex);
+                    }
+                }
+            });
+        }
+
+        long start = System.currentTimeMillis();
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        long time = System.currentTimeMillis() - start;
+
+        client.close();
+        server.close();
+
+        //let jRT write last intervals
+        Thread.sleep(waitForLog);
+
+        System.out.println("time=" + time + "ms");
+        System.out.println("window=" + window);
+        if (failures.get() == 0) {
+            System.out.println("turns=" + turns);
+        }
+    }
+
+    /**
+     * @return request of MESSAGE_SIZE bytes prefixed by 4 byte big endian
+     * body length, see -framer=length
+     */
+    private static byte[] message() {
+        byte[] msg = new byte[MESSAGE_SIZE];
+        msg[3] = (byte) (MESSAGE_SIZE - 4);
+        return msg;
+    }
+
+    private static void readMessage(InputStream in, byte[] buf) throws IOException {
+        int read = 0;
+        while (read < buf.length) {
+            int n = in.read(buf, read, buf.length - read);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+    }
+}
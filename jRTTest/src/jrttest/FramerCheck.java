@@ -0,0 +1,194 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package jrttest;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.jrt.socket.api.JRTHic;
+import org.jrt.socket.api.MessageFramer;
+import org.jrt.socket.framing.Framers;
+
+/**
+ * Feeds streams of known messages to message framers of -framer
+ * (jRT.jar on classpath) and checks every message ends where it should:
+ * pipelined messages, HTTP chunked bodies, responses without body
+ * (HEAD, 204, 304, interim 1xx) and bodies of every kind split across
+ * reads at every byte, at random and by ByteBuffers.
+ *
+ * Framers of a socket are created and paired as jRT does (see
+ * JRTHic.setFramers), the stream of the opposite direction (requests of
+ * a client) is fed before the checked one.
+ *
+ * Prints "failed: ..." and exits with 1 on the first violation.
+ *
+ * @author fijiol
+ */
+public class FramerCheck {
+
+    private static final Random random = new Random(42);
+    private static int checks = 0;
+
+    public static void main(String[] args) throws Exception {
+        String[] pipelined = {
+            "GET /a HTTP/1.1\r\nHost: x\r\n\r\n",
+            "POST /b HTTP/1.1\r\nHost: x\r\nContent-Length: 5\r\n\r\nhello",
+            "\r\nGET /c HTTP/1.1\r\ncontent-length: 0\r\n\r\n",
+            "PUT /d HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n0\r\n\r\n",
+        };
+        check("http pipelined requests", "http", null, pipelined);
+
+        check("http chunked responses", "http", null, new String[] {
+            "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n1a;ext=1\r\nabcdefghijklmnopqrstuvwxyz\r\n0\r\n\r\n",
+            "HTTP/1.1 200 OK\r\ntransfer-encoding: gzip, Chunked\r\n\r\n2\r\nab\r\n0\r\nTrailer: x\r\n\r\n",
+            "HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\nabc",
+        });
+
+        // Content-Length of HEAD response is the one GET would have
+        check("http HEAD, 204, 304 and 1xx responses", "http", new String[] {
+            "HEAD /a HTTP/1.1\r\n\r\n",
+            "GET /b HTTP/1.1\r\n\r\n",
+            "DELETE /c HTTP/1.1\r\n\r\n",
+            "GET /d HTTP/1.1\r\n\r\n",
+            "HEAD /e HTTP/1.1\r\n\r\n",
+            "POST /f HTTP/1.1\r\nExpect: 100-continue\r\nContent-Length: 2\r\n\r\nab",
+        }, new String[] {
+            "HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\n",
+            "HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\nabc",
+            "HTTP/1.1 204 No Content\r\nContent-Length: 10\r\n\r\n",
+            "HTTP/1.1 304 Not Modified\r\nContent-Length: 7\r\n\r\n",
+            "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n",
+            "HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 201 Created\r\nContent-Length: 2\r\n\r\nok",
+        });
+
+        check("length", "length", null, new String[] {
+            "\0\0\0\5hello", "\0\0\0\0", "\0\0\1\0" + repeat('x', 256), "\0\0\0\1\0",
+        });
+        check("length:2", "length:2", null, new String[] {
+            "\0\3abc", "\0\0", "\1\1" + repeat('y', 257),
+        });
+
+        check("resp", "resp", null, new String[] {
+            "*2\r\n$3\r\nGET\r\n$1\r\nk\r\n",
+            "+OK\r\n",
+            ":-12\r\n",
+            "$-1\r\n",
+            "$5\r\nhello\r\n",
+            "*2\r\n*1\r\n+a\r\n$2\r\nbc\r\n",
+            "PING\r\n",
+        });
+
+        System.out.println("checks=" + checks);
+    }
+
+    private static String repeat(char c, int n) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < n; ++i) {
+            b.append(c);
+        }
+        return b.toString();
+    }
+
+    private static byte[] bytes(String[] messages) throws Exception {
+        StringBuilder b = new StringBuilder();
+        for (String m : messages) {
+            b.append(m);
+        }
+        return b.toString().getBytes("ISO-8859-1");
+    }
+
+    /**
+     * @return stream offsets right after every message
+     */
+    private static int[] ends(String[] messages) {
+        int[] ends = new int[messages.length];
+        int end = 0;
+        for (int i = 0; i < messages.length; ++i) {
+            end += messages[i].length();
+            ends[i] = end;
+        }
+        return ends;
+    }
+
+    /**
+     * Checks messages read by a socket, opposite is written before them.
+     */
+    private static void check(String name, String spec, String[] opposite, String[] messages) throws Exception {
+        byte[] stream = bytes(messages);
+        int[] ends = ends(messages);
+
+        // every byte by itself, all at once, random splits
+        feed(name + " byte by byte", spec, opposite, stream, ends, 1, false);
+        feed(name + " at once", spec, opposite, stream, ends, stream.length, false);
+        for (int i = 0; i < 100; ++i) {
+            feed(name + " random splits", spec, opposite, stream, ends, 0, i % 2 == 1);
+        }
+        // split at every single position
+        for (int split = 1; split < stream.length; ++split) {
+            MessageFramer in = framers(spec, opposite);
+            int messagesDone = in.onBytes(stream, 0, split) + in.onBytes(stream, split, stream.length - split);
+            expect(name + " split at " + split, messagesDone, ends.length);
+        }
+        System.out.println(name + " done");
+    }
+
+    /**
+     * @return inbound framer of a socket, outbound one has seen opposite
+     */
+    private static MessageFramer framers(String spec, String[] opposite) throws Exception {
+        MessageFramer.Factory factory = Framers.forSpec(spec);
+        JRTHic hic = new JRTHic(0);
+        hic.setFramers(factory.newFramer(true), factory.newFramer(false));
+        if (null != opposite) {
+            byte[] b = bytes(opposite);
+            expect("requests of " + spec, hic.outFramer.onBytes(b, 0, b.length), opposite.length);
+        }
+        return hic.inFramer;
+    }
+
+    /**
+     * @param chunk size of reads, 0 for random
+     * @param buffers pass reads as ByteBuffers (with data not at 0)
+     */
+    private static void feed(String name, String spec, String[] opposite, byte[] stream, int[] ends,
+            int chunk, boolean buffers) throws Exception {
+        MessageFramer framer = framers(spec, opposite);
+        int from = 0;
+        while (from < stream.length) {
+            int n = chunk > 0 ? chunk : 1 + random.nextInt(Math.min(stream.length, 40));
+            int to = Math.min(stream.length, from + n);
+
+            int messages;
+            if (buffers) {
+                ByteBuffer b = ByteBuffer.allocate(to - from + 7);
+                b.position(3);
+                b.put(stream, from, to - from);
+                int position = b.position();
+                messages = framer.onBytes(b, 3, position);
+                expect(name + ": buffer position moved", b.position(), position);
+            } else {
+                messages = framer.onBytes(stream, from, to - from);
+            }
+
+            int expected = 0;
+            for (int end : ends) {
+                if (end > from && end <= to) {
+                    ++expected;
+                }
+            }
+            expect(name + ": messages ending in [" + from + ", " + to + ")", messages, expected);
+            from = to;
+        }
+    }
+
+    private static void expect(String what, long got, long expected) {
+        ++checks;
+        if (got != expected) {
+            System.out.println("failed: " + what + ": " + got + ", expected " + expected);
+            System.exit(1);
+        }
+    }
+}
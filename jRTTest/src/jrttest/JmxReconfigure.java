@@ -0,0 +1,154 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package jrttest;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Reconfigures jRT of this VM (-jmx=true) through its MBean between phases
+ * of loopback rounds (tests/test-jmx.sh), every phase uses a new connection:
+ *   1. as configured
+ *   2. -mode switched to o2i
+ *   3. the only filter entry replaced by one matching nothing
+ * and prints i2o/o2i counters, o2i count and p99 of the busiest interval
+ * seen after each phase.
+ *
+ * @author fijiol
+ */
+public class JmxReconfigure {
+
+    private static final int MESSAGE_SIZE = 64;
+
+    private static int port = 19770;
+    private static int rounds = 100;
+    private static String id = "1";
+    private static long interval = 100;
+
+    public static void main(String[] args) throws Exception {
+        for (String param : args) {
+            String[] paramVals = param.split(":", 2);
+            if (paramVals.length != 2) {
+                System.out.println("Usage JmxReconfigure -port:<port> -rounds:<n> -id:<jRT uid> -interval:<jRT log interval ms>");
+                System.exit(1);
+            }
+            if (paramVals[0].equals("-port")) {
+                port = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-rounds")) {
+                rounds = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-id")) {
+                id = paramVals[1];
+            } else if (paramVals[0].equals("-interval")) {
+                interval = Long.valueOf(paramVals[1]);
+            }
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName jRT = new ObjectName("org.jrt:type=JRT,id=" + ObjectName.quote(id));
+        // MBean is registered by jRT log writer thread
+        for (int i = 0; i < 100 && !server.isRegistered(jRT); ++i) {
+            Thread.sleep(50);
+        }
+
+        ServerSocket listener = new ServerSocket(port);
+        acceptor(listener).start();
+
+        rounds();
+        print(server, jRT, "phase=1");
+
+        server.setAttribute(jRT, new Attribute("Mode", "o2i"));
+        rounds();
+        print(server, jRT, "phase=2");
+
+        String[] entries = (String[]) server.getAttribute(jRT, "FilterEntries");
+        server.invoke(jRT, "addFilterEntry", new Object[] {":192.0.2.1:"}, new String[] {String.class.getName()});
+        for (String entry : entries) {
+            server.invoke(jRT, "removeFilterEntry", new Object[] {entry}, new String[] {String.class.getName()});
+        }
+        rounds();
+        print(server, jRT, "phase=3");
+
+        listener.close();
+    }
+
+    private static void print(MBeanServer server, ObjectName jRT, String phase) throws Exception {
+        // counters are updated by jRT log writer every interval, last
+        // interval stats are polled until the one with the rounds is seen
+        long intervalCount = 0;
+        long p99 = 0;
+        for (int i = 0; i < 15; ++i) {
+            Thread.sleep(interval / 5);
+            long count = (Long) server.getAttribute(jRT, "O2iIntervalCount");
+            if (count > intervalCount) {
+                intervalCount = count;
+                p99 = (Long) server.invoke(jRT, "getO2iValueAtPercentile", new Object[] {99.0}, new String[] {double.class.getName()});
+            }
+        }
+        System.out.println(phase
+                + " mode=" + server.getAttribute(jRT, "Mode")
+                + " i2o=" + server.getAttribute(jRT, "I2oRecorded")
+                + " o2i=" + server.getAttribute(jRT, "O2iRecorded")
+                + " interval=" + intervalCount
+                + " p99=" + p99);
+    }
+
+    private static void rounds() throws Exception {
+        Socket client = new Socket("127.0.0.1", port);
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        OutputStream out = client.getOutputStream();
+        byte[] b = new byte[MESSAGE_SIZE];
+        for (int i = 0; i < rounds; ++i) {
+            out.write(b);
+            in.readFully(b);
+        }
+        client.close();
+    }
+
+    private static Thread acceptor(final ServerSocket listener) {
+        Thread acceptor = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        echo(listener.accept());
+                    }
+                } catch (Exception e) {
+                    // listener is closed
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        return acceptor;
+    }
+
+    private static void echo(final Socket s) {
+        Thread echo = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    DataInputStream in = new DataInputStream(s.getInputStream());
+                    OutputStream out = s.getOutputStream();
+                    byte[] b = new byte[MESSAGE_SIZE];
+                    while (true) {
+                        in.readFully(b);
+                        out.write(b);
+                    }
+                } catch (Exception e) {
+                    // client is gone
+                }
+            }
+        };
+        echo.setDaemon(true);
+        echo.start();
+    }
+}
@@ -0,0 +1,461 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package jrttest;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hermetic load for jRT accuracy and overhead tests (tests/test-harness.sh):
+ * a loopback request/response server (blocking java.net, NIO selector or
+ * AsynchronousSocketChannel) answers every request after a service time
+ * drawn from a known distribution, while -connections blocking java.net
+ * clients send -requests each, in a closed loop or at -rate requests per
+ * second in total.
+ *
+ * Messages are length prefixed (4 bytes), so jRT with -framer=length
+ * measures between message completions. Prints throughput and percentiles
+ * (us) of what jRT is expected to record then:
+ *
+ *   service:   server side, request read to response write (i2o of server
+ *              sockets)
+ *   roundtrip: client side, request write to response read (o2i of client
+ *              sockets)
+ *
+ * Both are taken next to the I/O calls, so they include the actual sleep
+ * and scheduling delays, not just the drawn service times.
+ *
+ * @author fijiol
+ */
+public class LoadHarness {
+
+    private static final int MESSAGE_SIZE = 64;
+    private static final int PREFIX_SIZE = 4;
+
+    private static int port = 19790;
+    private static String server = "blocking";
+    private static String dist = "fixed";
+    private static long service = 1000;
+    private static int connections = 4;
+    private static int requests = 1000;
+    private static long rate = 0;
+    private static long seed = 42;
+    private static long waitForLog = 1000;
+
+    // service and round trip times (ns), every connection has its own slice
+    private static long[] services;
+    private static long[] roundtrips;
+    private static ScheduledExecutorService workers;
+
+    public static void main(String[] args) throws Exception {
+        for (String param : args) {
+            String[] paramVals = param.split(":");
+            if (paramVals.length != 2) {
+                System.out.println("Usage LoadHarness -server:<blocking|nio|async> -dist:<fixed|uniform|exp|bimodal> -service:<us> "
+                        + "-connections:<n> -requests:<n per connection> -rate:<requests/s, 0 for closed loop> -port:<port> -seed:<n> -wait:<ms>");
+                System.exit(1);
+            }
+            if (paramVals[0].equals("-server")) {
+                server = paramVals[1];
+            } else if (paramVals[0].equals("-dist")) {
+                dist = paramVals[1];
+            } else if (paramVals[0].equals("-service")) {
+                service = Long.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-connections")) {
+                connections = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-requests")) {
+                requests = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-rate")) {
+                rate = Long.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-port")) {
+                port = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-seed")) {
+                seed = Long.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-wait")) {
+                waitForLog = Long.valueOf(paramVals[1]);
+            }
+        }
+
+        services = new long[connections * requests];
+        roundtrips = new long[connections * requests];
+        workers = Executors.newScheduledThreadPool(connections);
+
+        if (server.equals("blocking")) {
+            startBlocking();
+        } else if (server.equals("nio")) {
+            startNio();
+        } else if (server.equals("async")) {
+            startAsync();
+        } else {
+            System.out.println("Unknown server " + server + ", expects blocking, nio or async");
+            System.exit(1);
+        }
+
+        long time = drive();
+        workers.shutdownNow();
+
+        long total = (long) connections * requests;
+        System.out.println("server=" + server + " dist=" + dist + " service=" + service + "us connections="
+                + connections + " requests=" + total + " rate=" + (rate > 0 ? rate + "/s" : "closed"));
+        System.out.println("time=" + time / 1000000 + "ms");
+        System.out.println("throughput=" + total * 1000000000L / Math.max(time, 1) + "/s");
+        System.out.println("service: " + percentiles(services));
+        System.out.println("roundtrip: " + percentiles(roundtrips));
+
+        // let jRT write last interval
+        Thread.sleep(waitForLog);
+    }
+
+    /**
+     * @return next service time (ns) of a connection
+     */
+    private static long serviceTime(Random random) {
+        long mean = service * 1000;
+        if (dist.equals("uniform")) {
+            return (long) (random.nextDouble() * 2 * mean);
+        } else if (dist.equals("exp")) {
+            return Math.min((long) (-Math.log(1 - random.nextDouble()) * mean), 20 * mean);
+        } else if (dist.equals("bimodal")) {
+            return random.nextInt(20) == 0 ? 10 * mean : mean;
+        }
+        return mean;
+    }
+
+    /**
+     * Service times of a server connection, the same sequence for the same
+     * seed whichever server serves it.
+     */
+    private static class Connection {
+        final Random random;
+        final int first;
+        int served;
+
+        Connection(int id) {
+            random = new Random(seed + id);
+            first = id * requests;
+        }
+
+        /**
+         * @return when the response of the request read at readTime is due
+         */
+        long due(long readTime) {
+            return readTime + serviceTime(random);
+        }
+
+        /**
+         * The response of the request read at readTime is written, async
+         * server can read the next one by then.
+         */
+        synchronized void written(long readTime) {
+            long now = System.nanoTime();
+            if (served < requests) {
+                services[first + served++] = now - readTime;
+            }
+        }
+    }
+
+    /**
+     * @return a message, 4 bytes of length and the body
+     */
+    private static byte[] message() {
+        byte[] b = new byte[MESSAGE_SIZE];
+        ByteBuffer.wrap(b).putInt(MESSAGE_SIZE - PREFIX_SIZE);
+        return b;
+    }
+
+    private static void waitUntil(long deadline) {
+        long now;
+        while ((now = System.nanoTime()) < deadline) {
+            LockSupport.parkNanos(deadline - now);
+        }
+    }
+
+    private static void startBlocking() throws IOException {
+        final ServerSocket ss = new ServerSocket(port, 128, InetAddress.getByName(null));
+        Thread acceptor = new Thread("blocking acceptor") {
+            @Override
+            public void run() {
+                try {
+                    for (int id = 0; ; ++id) {
+                        final Socket s = ss.accept();
+                        final Connection c = new Connection(id);
+                        Thread t = new Thread("blocking server " + id) {
+                            @Override
+                            public void run() {
+                                try {
+                                    DataInputStream in = new DataInputStream(s.getInputStream());
+                                    OutputStream out = s.getOutputStream();
+                                    byte[] b = new byte[MESSAGE_SIZE];
+                                    while (true) {
+                                        in.readFully(b);
+                                        long read = System.nanoTime();
+                                        waitUntil(c.due(read));
+                                        out.write(b);
+                                        c.written(read);
+                                    }
+                                } catch (IOException e) {
+                                    // client is gone
+                                }
+                            }
+                        };
+                        t.setDaemon(true);
+                        t.start();
+                    }
+                } catch (IOException e) {
+                    // server is closed
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * A selector thread reads requests, responses are written by workers
+     * when they are due; a connection doesn't read until it's answered.
+     */
+    private static void startNio() throws IOException {
+        final Selector selector = Selector.open();
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        ssc.socket().bind(new InetSocketAddress(InetAddress.getByName(null), port), 128);
+        ssc.configureBlocking(false);
+        ssc.register(selector, SelectionKey.OP_ACCEPT);
+        Thread loop = new Thread("nio selector") {
+            @Override
+            public void run() {
+                int id = 0;
+                try {
+                    while (true) {
+                        selector.select();
+                        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                        while (keys.hasNext()) {
+                            SelectionKey key = keys.next();
+                            keys.remove();
+                            if (key.isAcceptable()) {
+                                SocketChannel ch = ((ServerSocketChannel) key.channel()).accept();
+                                if (null != ch) {
+                                    ch.configureBlocking(false);
+                                    ch.register(selector, SelectionKey.OP_READ,
+                                            new Object[] {new Connection(id++), ByteBuffer.allocate(MESSAGE_SIZE)});
+                                }
+                            } else if (key.isReadable()) {
+                                readNio(key);
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    // selector is closed
+                }
+            }
+        };
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    private static void readNio(final SelectionKey key) {
+        final SocketChannel ch = (SocketChannel) key.channel();
+        Object[] attachment = (Object[]) key.attachment();
+        final Connection c = (Connection) attachment[0];
+        final ByteBuffer b = (ByteBuffer) attachment[1];
+        try {
+            if (ch.read(b) < 0) {
+                key.cancel();
+                ch.close();
+                return;
+            }
+        } catch (IOException e) {
+            key.cancel();
+            return;
+        }
+        if (b.hasRemaining()) {
+            return;
+        }
+        key.interestOps(0);
+        final long read = System.nanoTime();
+        final long due = c.due(read);
+        workers.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    waitUntil(due);
+                    b.flip();
+                    while (b.hasRemaining()) {
+                        ch.write(b);
+                    }
+                    c.written(read);
+                    b.clear();
+                    key.interestOps(SelectionKey.OP_READ);
+                    key.selector().wakeup();
+                } catch (IOException e) {
+                    key.cancel();
+                }
+            }
+        }, due - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private static void startAsync() throws IOException {
+        final AsynchronousServerSocketChannel assc = AsynchronousServerSocketChannel.open()
+                .bind(new InetSocketAddress(InetAddress.getByName(null), port), 128);
+        assc.accept(0, new CompletionHandler<AsynchronousSocketChannel, Integer>() {
+            @Override
+            public void completed(AsynchronousSocketChannel ch, Integer id) {
+                assc.accept(id + 1, this);
+                readAsync(ch, new Connection(id), ByteBuffer.allocate(MESSAGE_SIZE));
+            }
+
+            @Override
+            public void failed(Throwable t, Integer id) {
+                // server is closed
+            }
+        });
+    }
+
+    private static void readAsync(final AsynchronousSocketChannel ch, final Connection c, final ByteBuffer b) {
+        ch.read(b, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer n, Void v) {
+                if (n < 0) {
+                    close(ch);
+                    return;
+                }
+                if (b.hasRemaining()) {
+                    ch.read(b, null, this);
+                    return;
+                }
+                final long read = System.nanoTime();
+                final long due = c.due(read);
+                workers.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        waitUntil(due);
+                        b.flip();
+                        // written at once but for a full socket buffer
+                        writeAsync(ch, c, b);
+                        c.written(read);
+                    }
+                }, due - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+
+            @Override
+            public void failed(Throwable t, Void v) {
+                close(ch);
+            }
+        });
+    }
+
+    private static void writeAsync(final AsynchronousSocketChannel ch, final Connection c, final ByteBuffer b) {
+        ch.write(b, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer written, Void v) {
+                if (b.hasRemaining()) {
+                    ch.write(b, null, this);
+                    return;
+                }
+                b.clear();
+                readAsync(ch, c, b);
+            }
+
+            @Override
+            public void failed(Throwable t, Void v) {
+                close(ch);
+            }
+        });
+    }
+
+    private static void close(AsynchronousSocketChannel ch) {
+        try {
+            ch.close();
+        } catch (IOException e) {
+            // closed already
+        }
+    }
+
+    /**
+     * Runs all clients, every one on its own connection.
+     *
+     * @return time of all requests, ns
+     */
+    private static long drive() throws Exception {
+        final CountDownLatch done = new CountDownLatch(connections);
+        final Socket[] sockets = new Socket[connections];
+        for (int i = 0; i < connections; ++i) {
+            sockets[i] = new Socket(InetAddress.getByName(null), port);
+            sockets[i].setTcpNoDelay(true);
+        }
+        // requests of a connection are spread evenly at rate/connections
+        final long period = rate > 0 ? connections * 1000000000L / rate : 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < connections; ++i) {
+            final Socket s = sockets[i];
+            final int first = i * requests;
+            Thread client = new Thread("client " + i) {
+                @Override
+                public void run() {
+                    try {
+                        DataInputStream in = new DataInputStream(s.getInputStream());
+                        OutputStream out = s.getOutputStream();
+                        byte[] b = message();
+                        for (int r = 0; r < requests; ++r) {
+                            if (period > 0) {
+                                waitUntil(start + r * period);
+                            }
+                            long sent = System.nanoTime();
+                            out.write(b);
+                            in.readFully(b);
+                            roundtrips[first + r] = System.nanoTime() - sent;
+                        }
+                        s.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            client.start();
+        }
+        done.await();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return count, p50, p90, p99 and max (us) of values (ns)
+     */
+    private static String percentiles(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        StringBuilder sb = new StringBuilder("count=" + sorted.length);
+        double[] ps = {50, 90, 99};
+        for (double p : ps) {
+            int i = (int) Math.ceil(p / 100 * sorted.length) - 1;
+            sb.append(String.format(Locale.US, " p%s=%.3f", (int) p, sorted[Math.max(i, 0)] / 1000.0));
+        }
+        return sb.append(String.format(Locale.US, " max=%.3f us", sorted[sorted.length - 1] / 1000.0)).toString();
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package jrttest;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Request/response rounds over loopback with every client flavour the JDK
+ * it runs on has: java.net.Socket, blocking SocketChannel and, when
+ * Thread.startVirtualThread is there (JDK 21+), java.net.Socket driven by
+ * virtual thread. Run it under jRT with -rport=<port> so only client side
+ * is measured: one o2i latency per round and one connection per flavour
+ * are expected. Then the server is closed and both flavours connect to
+ * the port again: these refused connects are expected to be recorded as
+ * failed, not opened.
+ *
+ * @author fijiol
+ */
+public class LoopbackEcho {
+
+    private static final int MESSAGE_SIZE = 64;
+
+    private static int port = 19700;
+    private static int rounds = 100;
+    private static long waitForLog = 1000;
+
+    public static void main(String[] args) throws Exception {
+        for (String param : args) {
+            String[] paramVals = param.split(":");
+            if (paramVals.length != 2) {
+                System.out.println("Usage LoopbackEcho -port:<port> -rounds:<n> -wait:<ms>");
+                System.exit(1);
+            }
+            if (paramVals[0].equals("-port")) {
+                port = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-rounds")) {
+                rounds = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-wait")) {
+                waitForLog = Long.valueOf(paramVals[1]);
+            }
+        }
+
+        final ServerSocket server = new ServerSocket(port);
+        Thread acceptor = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        echo(server.accept());
+                    }
+                } catch (Exception e) {
+                    // server is closed
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        int connections = 0;
+
+        socketRounds();
+        ++connections;
+        System.out.println("socket rounds done");
+
+        channelRounds();
+        ++connections;
+        System.out.println("channel rounds done");
+
+        if (virtualThreadRounds()) {
+            ++connections;
+            System.out.println("virtual thread rounds done");
+        }
+
+        server.close();
+        // listening socket may be closed only when blocked accept returns
+        acceptor.join();
+        int failed = failedConnects();
+
+        System.out.println("rounds=" + rounds * connections);
+        System.out.println("connections=" + connections);
+        System.out.println("failed=" + failed);
+
+        // let jRT write last interval
+        Thread.sleep(waitForLog);
+    }
+
+    private static void echo(final Socket s) {
+        Thread echo = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    DataInputStream in = new DataInputStream(s.getInputStream());
+                    OutputStream out = s.getOutputStream();
+                    byte[] b = new byte[MESSAGE_SIZE];
+                    while (true) {
+                        in.readFully(b);
+                        out.write(b);
+                    }
+                } catch (Exception e) {
+                    // client is gone
+                }
+            }
+        };
+        echo.setDaemon(true);
+        echo.start();
+    }
+
+    private static void socketRounds() throws Exception {
+        Socket client = new Socket("127.0.0.1", port);
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        OutputStream out = client.getOutputStream();
+        byte[] b = new byte[MESSAGE_SIZE];
+        for (int i = 0; i < rounds; ++i) {
+            out.write(b);
+            in.readFully(b);
+        }
+        client.close();
+    }
+
+    private static void channelRounds() throws Exception {
+        SocketChannel client = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+        ByteBuffer b = ByteBuffer.allocate(MESSAGE_SIZE);
+        for (int i = 0; i < rounds; ++i) {
+            b.clear();
+            while (b.hasRemaining()) {
+                client.write(b);
+            }
+            b.clear();
+            while (b.hasRemaining()) {
+                if (client.read(b) < 0) {
+                    throw new java.io.EOFException();
+                }
+            }
+        }
+        client.close();
+    }
+
+    /**
+     * @return connects done, all of them are expected to fail
+     */
+    private static int failedConnects() throws Exception {
+        try {
+            new Socket("127.0.0.1", port).close();
+            throw new IllegalStateException("socket connected to closed server");
+        } catch (IOException e) {
+            // refused
+        }
+        try {
+            SocketChannel.open(new InetSocketAddress("127.0.0.1", port)).close();
+            throw new IllegalStateException("channel connected to closed server");
+        } catch (IOException e) {
+            // refused
+        }
+        return 2;
+    }
+
+    /**
+     * @return false if there are no virtual threads in this JDK
+     */
+    private static boolean virtualThreadRounds() throws Exception {
+        Method start;
+        try {
+            start = Thread.class.getMethod("startVirtualThread", Runnable.class);
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+
+        final Exception[] failure = new Exception[1];
+        Thread vt = (Thread) start.invoke(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    socketRounds();
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        vt.join();
+        if (null != failure[0]) {
+            throw failure[0];
+        }
+        return true;
+    }
+}
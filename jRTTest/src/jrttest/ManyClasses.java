@@ -0,0 +1,180 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package jrttest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM with a lot of loaded classes for weaver benchmark (tests/bench-weaver.sh):
+ * defines <classes> empty classes generated in memory, then does loopback
+ * request/response rounds over java.net.Socket, so socket classes jRT
+ * instruments are loaded too. With -attach:<file> it waits until the file
+ * appears (jRT is attached) and does the rounds once more.
+ *
+ * @author fijiol
+ */
+public class ManyClasses {
+
+    private static final int MESSAGE_SIZE = 64;
+
+    private static int port = 19750;
+    private static int classes = 30000;
+    private static int rounds = 100;
+    private static String attachMarker = null;
+    private static long waitForLog = 500;
+
+    // keeps generated classes reachable
+    private static final List<Class<?>> loaded = new ArrayList<Class<?>>();
+
+    public static void main(String[] args) throws Exception {
+        for (String param : args) {
+            String[] paramVals = param.split(":", 2);
+            if (paramVals.length != 2) {
+                System.out.println("Usage ManyClasses -port:<port> -classes:<n> -rounds:<n> -attach:<marker file> -wait:<ms>");
+                System.exit(1);
+            }
+            if (paramVals[0].equals("-port")) {
+                port = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-classes")) {
+                classes = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-rounds")) {
+                rounds = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-attach")) {
+                attachMarker = paramVals[1];
+            } else if (paramVals[0].equals("-wait")) {
+                waitForLog = Long.valueOf(paramVals[1]);
+            }
+        }
+
+        long start = System.nanoTime();
+        Generator generator = new Generator();
+        for (int i = 0; i < classes; ++i) {
+            loaded.add(generator.define("jrttest/gen/C" + i));
+        }
+        System.out.println("defined=" + classes + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+        final ServerSocket server = new ServerSocket(port);
+        Thread acceptor = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        echo(server.accept());
+                    }
+                } catch (Exception e) {
+                    // server is closed
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        socketRounds();
+
+        if (null != attachMarker) {
+            String name = ManagementFactory.getRuntimeMXBean().getName();
+            System.out.println("pid=" + name.substring(0, name.indexOf('@')));
+            System.out.flush();
+            File marker = new File(attachMarker);
+            while (!marker.exists()) {
+                Thread.sleep(50);
+            }
+            socketRounds();
+        }
+
+        server.close();
+
+        System.out.println("rounds=" + rounds);
+
+        // let jRT write last interval
+        Thread.sleep(waitForLog);
+    }
+
+    private static void echo(final Socket s) {
+        Thread echo = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    DataInputStream in = new DataInputStream(s.getInputStream());
+                    OutputStream out = s.getOutputStream();
+                    byte[] b = new byte[MESSAGE_SIZE];
+                    while (true) {
+                        in.readFully(b);
+                        out.write(b);
+                    }
+                } catch (Exception e) {
+                    // client is gone
+                }
+            }
+        };
+        echo.setDaemon(true);
+        echo.start();
+    }
+
+    private static void socketRounds() throws Exception {
+        Socket client = new Socket("127.0.0.1", port);
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        OutputStream out = client.getOutputStream();
+        byte[] b = new byte[MESSAGE_SIZE];
+        for (int i = 0; i < rounds; ++i) {
+            out.write(b);
+            in.readFully(b);
+        }
+        client.close();
+    }
+
+    /**
+     * Defines public empty classes (no members) of Java 1.5 class file format.
+     */
+    private static class Generator extends ClassLoader {
+
+        Generator() {
+            super(ManyClasses.class.getClassLoader());
+        }
+
+        Class<?> define(String internalName) throws IOException {
+            byte[] b = classFile(internalName);
+            return defineClass(internalName.replace('/', '.'), b, 0, b.length);
+        }
+
+        private static byte[] classFile(String internalName) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);          // minor version
+            out.writeShort(49);         // major version
+            out.writeShort(5);          // constant pool count + 1
+            out.writeByte(7);           // #1 Class #2
+            out.writeShort(2);
+            out.writeByte(1);           // #2 Utf8 <name>
+            out.writeUTF(internalName);
+            out.writeByte(7);           // #3 Class #4
+            out.writeShort(4);
+            out.writeByte(1);           // #4 Utf8 java/lang/Object
+            out.writeUTF("java/lang/Object");
+            out.writeShort(0x0021);     // ACC_PUBLIC | ACC_SUPER
+            out.writeShort(1);          // this class
+            out.writeShort(3);          // super class
+            out.writeShort(0);          // interfaces
+            out.writeShort(0);          // fields
+            out.writeShort(0);          // methods
+            out.writeShort(0);          // attributes
+            out.flush();
+            return bytes.toByteArray();
+        }
+    }
+}
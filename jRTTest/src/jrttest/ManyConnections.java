@@ -0,0 +1,110 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package jrttest;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Loopback request/response rounds over many short connections, one
+ * after another, for jRT sampling benchmark (tests/bench-sampling.sh).
+ * Run it under jRT with -rport=<port> so only client side is measured:
+ * one o2i latency per round is expected without sampling. Prints time
+ * of all rounds and round trips per second.
+ *
+ * @author fijiol
+ */
+public class ManyConnections {
+
+    private static final int MESSAGE_SIZE = 64;
+
+    private static int port = 19790;
+    private static int connections = 100;
+    private static int rounds = 100;
+    private static long waitForLog = 1000;
+
+    public static void main(String[] args) throws Exception {
+        for (String param : args) {
+            String[] paramVals = param.split(":");
+            if (paramVals.length != 2) {
+                System.out.println("Usage ManyConnections -port:<port> -connections:<n> -rounds:<n per connection> -wait:<ms>");
+                System.exit(1);
+            }
+            if (paramVals[0].equals("-port")) {
+                port = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-connections")) {
+                connections = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-rounds")) {
+                rounds = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-wait")) {
+                waitForLog = Long.valueOf(paramVals[1]);
+            }
+        }
+
+        final ServerSocket server = new ServerSocket(port);
+        Thread acceptor = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        echo(server.accept());
+                    }
+                } catch (Exception e) {
+                    // server is closed
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        byte[] b = new byte[MESSAGE_SIZE];
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; ++c) {
+            Socket client = new Socket("127.0.0.1", port);
+            DataInputStream in = new DataInputStream(client.getInputStream());
+            OutputStream out = client.getOutputStream();
+            for (int i = 0; i < rounds; ++i) {
+                out.write(b);
+                in.readFully(b);
+            }
+            client.close();
+        }
+        long time = System.nanoTime() - start;
+        server.close();
+
+        System.out.println("rounds=" + (long) rounds * connections);
+        System.out.println("connections=" + connections);
+        System.out.println("time=" + time / 1000000 + "ms");
+        System.out.println("rate=" + (long) rounds * connections * 1000000000L / Math.max(time, 1) + "/s");
+
+        // let jRT write last interval
+        Thread.sleep(waitForLog);
+    }
+
+    private static void echo(final Socket s) {
+        Thread echo = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    DataInputStream in = new DataInputStream(s.getInputStream());
+                    OutputStream out = s.getOutputStream();
+                    byte[] b = new byte[MESSAGE_SIZE];
+                    while (true) {
+                        in.readFully(b);
+                        out.write(b);
+                    }
+                } catch (Exception e) {
+                    // client is gone
+                }
+            }
+        };
+        echo.setDaemon(true);
+        echo.start();
+    }
+}
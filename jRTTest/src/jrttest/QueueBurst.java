@@ -0,0 +1,152 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package jrttest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.jrt.socket.api.TimestampQueue;
+
+/**
+ * Bursts through org.jrt.socket.api.TimestampQueue (jRT.jar on classpath),
+ * the FIFO pairing pipelined requests and responses (-pipeline):
+ *
+ *   full:       a burst longer than the queue keeps the oldest timestamps,
+ *               the rest are dropped and reported
+ *   wraparound: bursts of every length up to capacity over many laps of
+ *               the ring come out in order
+ *   concurrent: a producer and a consumer thread (a writer and a reader of
+ *               a full duplex socket) with bursts over the capacity; every
+ *               timestamp is either dropped or polled once, in order
+ *
+ * Prints "failed: ..." and exits with 1 on the first violation.
+ *
+ * @author fijiol
+ */
+public class QueueBurst {
+
+    private static int capacity = 16;
+    private static int laps = 10000;
+    private static long timestamps = 1000000;
+
+    public static void main(String[] args) throws Exception {
+        for (String param : args) {
+            String[] paramVals = param.split(":");
+            if (paramVals.length != 2) {
+                System.out.println("Usage QueueBurst -capacity:<n> -laps:<n> -timestamps:<n concurrent>");
+                System.exit(1);
+            }
+            if (paramVals[0].equals("-capacity")) {
+                capacity = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-laps")) {
+                laps = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-timestamps")) {
+                timestamps = Long.valueOf(paramVals[1]);
+            }
+        }
+
+        full();
+        System.out.println("full done");
+        wraparound();
+        System.out.println("wraparound done");
+        concurrent();
+        System.out.println("concurrent done");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("failed: " + message);
+            System.exit(1);
+        }
+    }
+
+    private static void full() {
+        TimestampQueue q = new TimestampQueue(capacity);
+        for (int i = 1; i <= capacity * 3; ++i) {
+            check(q.offer(i) == i <= capacity, "offer " + i + " of a burst over capacity " + capacity);
+        }
+        for (int i = 1; i <= capacity; ++i) {
+            long t = q.poll();
+            check(t == i, "polled " + t + ", expected " + i);
+        }
+        check(q.poll() == 0, "queue is not empty after a burst");
+        // 0 is never stored, it means nothing to pair with
+        check(q.offer(0) && q.poll() != 0, "0 timestamp was stored");
+    }
+
+    private static void wraparound() {
+        TimestampQueue q = new TimestampQueue(capacity);
+        long next = 1;
+        long expected = 1;
+        for (int lap = 0; lap < laps; ++lap) {
+            int burst = 1 + lap % capacity;
+            for (int i = 0; i < burst; ++i) {
+                check(q.offer(next++), "offer of " + burst + " to empty queue of " + capacity);
+            }
+            for (int i = 0; i < burst; ++i) {
+                long t = q.poll();
+                check(t == expected, "lap " + lap + ": polled " + t + ", expected " + expected);
+                ++expected;
+            }
+            check(q.poll() == 0, "lap " + lap + ": queue is not empty");
+        }
+    }
+
+    private static void concurrent() throws Exception {
+        final TimestampQueue q = new TimestampQueue(capacity);
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong polled = new AtomicLong();
+        final long[] failure = new long[2];
+
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                long t = 1;
+                while (t <= timestamps) {
+                    // bursts up to twice the capacity, the consumer lags
+                    long burst = 1 + t % (2 * capacity);
+                    for (long i = 0; i < burst && t <= timestamps; ++i, ++t) {
+                        if (!q.offer(t)) {
+                            dropped.incrementAndGet();
+                        }
+                    }
+                    Thread.yield();
+                }
+            }
+        };
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                long last = 0;
+                while (last < timestamps && failure[0] == 0) {
+                    long t = q.poll();
+                    if (t == 0) {
+                        if (polled.get() + dropped.get() == timestamps) {
+                            return;
+                        }
+                        Thread.yield();
+                        continue;
+                    }
+                    if (t <= last) {
+                        failure[0] = t;
+                        failure[1] = last;
+                    }
+                    last = t;
+                    polled.incrementAndGet();
+                }
+            }
+        };
+        producer.start();
+        consumer.start();
+        producer.join();
+        consumer.join();
+
+        check(failure[0] == 0, "polled " + failure[0] + " after " + failure[1] + " (duplicate or out of order)");
+        check(q.poll() == 0, "queue is not empty after all was polled");
+        check(polled.get() + dropped.get() == timestamps,
+                polled.get() + " polled and " + dropped.get() + " dropped of " + timestamps);
+        System.out.println("timestamps=" + timestamps + " polled=" + polled.get() + " dropped=" + dropped.get());
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package jrttest;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Request/response rounds over loopback SSLSocket and then over pair of
+ * SSLEngines talking through in memory buffers (client engine has peer
+ * port <port>). Run it under jRT with -tls=true,-rport=<port> so only
+ * client side is measured: 2 handshakes and one o2i latency per round of
+ * both socket and engine are expected.
+ *
+ * @author fijiol
+ */
+public class TlsEcho {
+
+    private static final int MESSAGE_SIZE = 64;
+
+    private static int port = 19900;
+    private static int rounds = 100;
+    private static String keystore = "keystore.jks";
+    private static String password = "changeit";
+    private static long waitForLog = 1000;
+
+    public static void main(String[] args) throws Exception {
+        for (String param : args) {
+            String[] paramVals = param.split(":");
+            if (paramVals.length != 2) {
+                System.out.println("Usage TlsEcho -port:<port> -rounds:<n> -keystore:<jks file> -password:<password> -wait:<ms>");
+                System.exit(1);
+            }
+            if (paramVals[0].equals("-port")) {
+                port = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-rounds")) {
+                rounds = Integer.valueOf(paramVals[1]);
+            } else if (paramVals[0].equals("-keystore")) {
+                keystore = paramVals[1];
+            } else if (paramVals[0].equals("-password")) {
+                password = paramVals[1];
+            } else if (paramVals[0].equals("-wait")) {
+                waitForLog = Long.valueOf(paramVals[1]);
+            }
+        }
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        FileInputStream ksIn = new FileInputStream(keystore);
+        try {
+            ks.load(ksIn, password.toCharArray());
+        } finally {
+            ksIn.close();
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(ks, password.toCharArray());
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(ks);
+        SSLContext ctx = SSLContext.getInstance("TLS");
+        ctx.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+        socketRounds(ctx);
+        engineRounds(ctx);
+
+        System.out.println("rounds=" + rounds);
+
+        // let jRT write last interval
+        Thread.sleep(waitForLog);
+    }
+
+    private static void socketRounds(SSLContext ctx) throws Exception {
+        final SSLServerSocket server = (SSLServerSocket) ctx.getServerSocketFactory().createServerSocket(port);
+        Thread echo = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Socket s = server.accept();
+                    DataInputStream in = new DataInputStream(s.getInputStream());
+                    OutputStream out = s.getOutputStream();
+                    byte[] b = new byte[MESSAGE_SIZE];
+                    while (true) {
+                        in.readFully(b);
+                        out.write(b);
+                    }
+                } catch (Exception e) {
+                    // client is gone
+                }
+            }
+        };
+        echo.setDaemon(true);
+        echo.start();
+
+        SSLSocket client = (SSLSocket) ctx.getSocketFactory().createSocket("127.0.0.1", port);
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        OutputStream out = client.getOutputStream();
+        byte[] b = new byte[MESSAGE_SIZE];
+        for (int i = 0; i < rounds; ++i) {
+            out.write(b);
+            in.readFully(b);
+        }
+        client.close();
+        server.close();
+    }
+
+    private static void engineRounds(SSLContext ctx) throws Exception {
+        SSLEngine client = ctx.createSSLEngine("localhost", port);
+        client.setUseClientMode(true);
+        SSLEngine server = ctx.createSSLEngine();
+        server.setUseClientMode(false);
+
+        int netSize = client.getSession().getPacketBufferSize();
+        int appSize = client.getSession().getApplicationBufferSize();
+        ByteBuffer c2s = ByteBuffer.allocate(netSize);
+        ByteBuffer s2c = ByteBuffer.allocate(netSize);
+        ByteBuffer clientApp = ByteBuffer.allocate(appSize);
+        ByteBuffer serverApp = ByteBuffer.allocate(appSize);
+        ByteBuffer empty = ByteBuffer.allocate(0);
+
+        client.beginHandshake();
+        server.beginHandshake();
+        while (handshaking(client) || handshaking(server)) {
+            client.wrap(empty, c2s);
+            runTasks(client);
+            c2s.flip();
+            server.unwrap(c2s, serverApp);
+            c2s.compact();
+            runTasks(server);
+
+            server.wrap(empty, s2c);
+            runTasks(server);
+            s2c.flip();
+            client.unwrap(s2c, clientApp);
+            s2c.compact();
+            runTasks(client);
+        }
+
+        for (int i = 0; i < rounds; ++i) {
+            client.wrap(ByteBuffer.wrap(new byte[MESSAGE_SIZE]), c2s);
+            c2s.flip();
+            serverApp.clear();
+            server.unwrap(c2s, serverApp);
+            c2s.compact();
+
+            serverApp.flip();
+            server.wrap(serverApp, s2c);
+            s2c.flip();
+            clientApp.clear();
+            client.unwrap(s2c, clientApp);
+            s2c.compact();
+        }
+
+        // close_notify both ways
+        client.closeOutbound();
+        client.wrap(empty, c2s);
+        c2s.flip();
+        server.unwrap(c2s, serverApp);
+        c2s.compact();
+        server.closeOutbound();
+        server.wrap(empty, s2c);
+        s2c.flip();
+        client.unwrap(s2c, clientApp);
+        if (!client.isInboundDone() || !client.isOutboundDone()) {
+            throw new IllegalStateException("client engine is not closed");
+        }
+    }
+
+    private static boolean handshaking(SSLEngine engine) {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        return status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+                && status != SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+
+    private static void runTasks(SSLEngine engine) {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+}
@@ -42,6 +42,10 @@ public class Agentmain {
         commonmain(agentArgument, instrumentation);
         
         try {
+            // -ctl=stop|start of running jRT, otherwise new one is started
+            if (JRT.control(agentArgument)) {
+                return;
+            }
             JRT.premain0(agentArgument, instrumentation);
         } catch (Throwable t) {
             t.printStackTrace();
@@ -0,0 +1,13 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+
+package org.jrt;
+
+public final class Version {
+    public static final String version="0.0.1-SNAPSHOT";
+    public static final String build_time="2026-10-18T07:46:44Z";
+}
@@ -0,0 +1,95 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.jrt.socket.api.CodeWriter;
+import org.jrt.socket.api.ProbeWriter;
+import org.jrt.socket.nio.NioConnectionCodeWrapper;
+import org.jrt.socket.nio.NioSocketCodeWrapper;
+import org.jrt.socket.nio.NioSocketImplCodeWrapper;
+import org.jrt.socket.nio.NioSocketImplConnectionCodeWrapper;
+import org.jrt.socket.nio.NioSocketImplProbeWriter;
+import org.jrt.socket.nio.NioSocketProbeWriter;
+import org.jrt.socket.regular.JavaNetConnectionCodeWrapper;
+import org.jrt.socket.regular.JavaNetSocketCodeWrapper;
+import org.jrt.socket.regular.JavaNetSocketProbeWriter;
+import org.jrt.socket.tls.TlsCodeWrapper;
+
+/**
+ * Picks code writers for JDK the agent runs on:
+ *
+ *      JDK 8..12   java.net sockets are PlainSocketImpl with SocketInputStream/SocketOutputStream
+ *      JDK 13..17  NioSocketImpl by default, PlainSocketImpl with -Djdk.net.usePlainSocketImpl
+ *      JDK 18+     NioSocketImpl only
+ *
+ * Socket channels (IOUtil) and TLS are the same on all of them. Order 
+ * matters: writers of lifecycle probes rely on JRTHic registered by data 
+ * writers of the same class.
+ *
+ * With -weaver=asm data writers are replaced by ProbeWriters of the same
+ * probes, connection and TLS ones are still CodeWriters.
+ */
+public class CodeWriterRegistry {
+
+    /**
+     * @return feature version of running JDK (8 for 1.8)
+     */
+    public static int jdkVersion() {
+        return jdkVersion(System.getProperty("java.specification.version"));
+    }
+
+    static int jdkVersion(String specVersion) {
+        if (null == specVersion) {
+            return 8;
+        }
+        if (specVersion.startsWith("1.")) {
+            specVersion = specVersion.substring(2);
+        }
+        int dot = specVersion.indexOf('.');
+        try {
+            return Integer.parseInt(dot < 0 ? specVersion : specVersion.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return 8;
+        }
+    }
+
+    public static List<CodeWriter> codeWriters(int jdk, Configuration configuration) {
+        boolean plainSocketImpl = jdk < 18;
+        boolean nioSocketImpl = jdk >= 13;
+
+        List<CodeWriter> writers = new ArrayList<CodeWriter>();
+        if (!configuration.asmWeaver) {
+            if (plainSocketImpl) writers.add(new JavaNetSocketCodeWrapper());
+            if (nioSocketImpl) writers.add(new NioSocketImplCodeWrapper());
+            writers.add(new NioSocketCodeWrapper());
+        }
+
+        if (configuration.recordConnections) {
+            if (plainSocketImpl) writers.add(new JavaNetConnectionCodeWrapper());
+            if (nioSocketImpl) writers.add(new NioSocketImplConnectionCodeWrapper());
+            writers.add(new NioConnectionCodeWrapper());
+        }
+
+        if (configuration.tls) {
+            writers.add(new TlsCodeWrapper(jdk >= 14));
+        }
+
+        return writers;
+    }
+
+    public static List<ProbeWriter> probeWriters(int jdk, Configuration configuration) {
+        List<ProbeWriter> writers = new ArrayList<ProbeWriter>();
+        if (configuration.asmWeaver) {
+            if (jdk < 18) writers.add(new JavaNetSocketProbeWriter());
+            if (jdk >= 13) writers.add(new NioSocketImplProbeWriter());
+            writers.add(new NioSocketProbeWriter());
+        }
+        return writers;
+    }
+}
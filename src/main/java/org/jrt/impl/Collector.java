@@ -0,0 +1,295 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+/**
+ * Host level aggregation of jRTs started with -collector=[<host>:]<port>
+ * (jRTCollector): interval histograms pushed by all agents are merged by
+ * direction and tag into intervals of -si, written to <prefix>.<direction>.hlog
+ * (tagged ones to the same log, like jRT does) and summarized on stdout.
+ *
+ * jRT intervals end at multiples of -si since epoch, so intervals of agents
+ * with the same -si fall into the same bucket. A bucket is written -grace
+ * (one -si by default) after its end, for agents pushing late, intervals
+ * coming after that are dropped and counted as late.
+ */
+public class Collector {
+
+    private final DatagramSocket socket;
+    private final long interval;
+    private final long grace;
+    private final String prefix;
+    private final long startTime = System.currentTimeMillis();
+
+    //buckets by interval end (ms since epoch) not written yet
+    private final TreeMap<Long, Bucket> buckets = new TreeMap<Long, Bucket>();
+    //end of the last written bucket, intervals ending before the collector
+    //started are late too
+    private long written;
+    private final Map<String, HistogramLogWriter> logs = new HashMap<String, HistogramLogWriter>();
+
+    private final Set<String> agents = new HashSet<String>();
+    private long received;
+    private long late;
+    private long malformed;
+    private long intervals;
+
+    /**
+     * Interval histograms of all agents ending at the same boundary, by
+     * direction and tag ("" for untagged, so it is written first).
+     */
+    private static class Bucket {
+        final Set<String> agents = new HashSet<String>();
+        final Map<String, TreeMap<String, Histogram>> directions = new TreeMap<String, TreeMap<String, Histogram>>();
+
+        void add(CollectorClient.Interval i) {
+            agents.add(i.agent);
+            TreeMap<String, Histogram> tags = directions.get(i.direction);
+            if (null == tags) {
+                tags = new TreeMap<String, Histogram>();
+                directions.put(i.direction, tags);
+            }
+            String tag = null == i.tag ? "" : i.tag;
+            Histogram sum = tags.get(tag);
+            if (null == sum) {
+                i.histogram.setAutoResize(true);
+                tags.put(tag, i.histogram);
+            } else {
+                sum.add(i.histogram);
+            }
+        }
+    }
+
+    public Collector(String address, long interval, long grace, String prefix) throws SocketException {
+        this.socket = new DatagramSocket(CollectorClient.parseAddress(address));
+        this.interval = interval;
+        this.grace = grace;
+        this.prefix = prefix;
+        this.written = startTime / interval * interval;
+    }
+
+    /**
+     * Receives pushed intervals until the socket is closed.
+     */
+    private void receive() {
+        byte[] data = new byte[CollectorClient.MAX_DATAGRAM];
+        DatagramPacket packet = new DatagramPacket(data, data.length);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(data.length);
+                socket.receive(packet);
+            } catch (IOException e) {
+                continue;
+            }
+            CollectorClient.Interval i;
+            try {
+                i = CollectorClient.Interval.parse(packet);
+            } catch (Exception e) {
+                // anything may arrive on the port, the receiver must survive it
+                synchronized (this) {
+                    ++malformed;
+                }
+                continue;
+            }
+            // rounded up, an interval shortened by jRT start goes to its boundary
+            long end = (i.end + interval - 1) / interval * interval;
+            synchronized (this) {
+                ++received;
+                agents.add(i.agent);
+                if (end <= written) {
+                    ++late;
+                    continue;
+                }
+                Bucket b = buckets.get(end);
+                if (null == b) {
+                    b = new Bucket();
+                    buckets.put(end, b);
+                }
+                b.add(i);
+            }
+        }
+    }
+
+    /**
+     * Writes and summarizes buckets ending at until or earlier.
+     */
+    private synchronized void flush(long until) {
+        Iterator<Map.Entry<Long, Bucket>> it = buckets.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Bucket> e = it.next();
+            long end = e.getKey();
+            if (end > until) {
+                break;
+            }
+            it.remove();
+            write(end, e.getValue());
+            written = end;
+        }
+    }
+
+    private void write(long end, Bucket b) {
+        ++intervals;
+        StringBuilder summary = new StringBuilder();
+        summary.append(new SimpleDateFormat("HH:mm:ss.SSS").format(new Date(end)))
+                .append(" agents=").append(b.agents.size());
+        for (Map.Entry<String, TreeMap<String, Histogram>> d : b.directions.entrySet()) {
+            HistogramLogWriter log = log(d.getKey());
+            for (Map.Entry<String, Histogram> t : d.getValue().entrySet()) {
+                Histogram h = t.getValue();
+                h.setStartTimeStamp(Math.max(end - interval, startTime) - startTime);
+                h.setEndTimeStamp(end - startTime);
+                h.setTag(t.getKey().length() == 0 ? null : t.getKey());
+                if (null != log) {
+                    log.outputIntervalHistogram(h);
+                }
+            }
+            Histogram untagged = d.getValue().get("");
+            if (null != untagged) {
+                summary.append(String.format(Locale.US, " %s: count=%d p50=%.3f p99=%.3f p99.9=%.3f max=%.3f ms",
+                        d.getKey(), untagged.getTotalCount(),
+                        untagged.getValueAtPercentile(50) / 1000000.0,
+                        untagged.getValueAtPercentile(99) / 1000000.0,
+                        untagged.getValueAtPercentile(99.9) / 1000000.0,
+                        untagged.getMaxValue() / 1000000.0));
+            }
+        }
+        System.out.println(summary);
+        System.out.flush();
+    }
+
+    /**
+     * @return log of direction, opened on its first interval, null if it
+     * can't be opened
+     */
+    private HistogramLogWriter log(String direction) {
+        if (logs.containsKey(direction)) {
+            return logs.get(direction);
+        }
+        HistogramLogWriter log = null;
+        File file = new File(prefix + "." + direction + ".hlog");
+        try {
+            log = new HistogramLogWriter(file);
+            log.outputLegend();
+            log.outputStartTime(startTime);
+        } catch (FileNotFoundException e) {
+            System.err.println("Could not open " + file + ": " + e);
+        }
+        logs.put(direction, log);
+        return log;
+    }
+
+    /**
+     * Receives in a daemon thread and writes buckets at every boundary
+     * until the VM is shut down, then writes the rest.
+     */
+    public void run() throws InterruptedException {
+        Thread receiver = new Thread("jRT collector receiver") {
+            @Override
+            public void run() {
+                receive();
+            }
+        };
+        receiver.setDaemon(true);
+        receiver.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                socket.close();
+                synchronized (Collector.this) {
+                    flush(Long.MAX_VALUE);
+                    for (HistogramLogWriter log : logs.values()) {
+                        if (null != log) {
+                            log.close();
+                        }
+                    }
+                    System.out.println("jRTCollector: " + intervals + " intervals of " + agents.size() + " agents was written, "
+                            + received + " interval histograms was received, " + late + " of them late, " + malformed + " malformed");
+                    System.out.flush();
+                }
+            }
+        });
+
+        long boundary = LogWriter.nextBoundary(System.currentTimeMillis(), interval);
+        while (true) {
+            long now;
+            while ((now = System.currentTimeMillis()) < boundary) {
+                Thread.sleep(boundary - now);
+            }
+            flush(boundary - grace);
+            boundary = LogWriter.nextBoundary(now, interval);
+        }
+    }
+
+    public static void main(String[] args) {
+        String address = null;
+        long interval = 1000;
+        long grace = -1;
+        String prefix = "jRTc";
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                if ("-si".equals(args[i])) {
+                    interval = Long.parseLong(args[++i]);
+                    if (interval <= 0) {
+                        throw new IllegalArgumentException("-si must be positive");
+                    }
+                } else if ("-grace".equals(args[i])) {
+                    grace = Long.parseLong(args[++i]);
+                } else if ("-o".equals(args[i])) {
+                    prefix = args[++i];
+                } else if (args[i].startsWith("-") || null != address) {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                } else {
+                    address = args[i];
+                    CollectorClient.parseAddress(address);
+                }
+            }
+            if (grace < 0) {
+                grace = interval;
+            }
+            if (null == address) {
+                throw new IllegalArgumentException("No address to listen at");
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage:\n\tjRTCollector [-si <ms>] [-grace <ms>] [-o <prefix>] [<host>:]<port>\n\n"
+                    + "\t\treceives interval histograms of jRTs started with -collector=[<host>:]<port>, merges\n"
+                    + "\t\tthem into -si (1000 ms by default, as jRT's) intervals written to <prefix>.<direction>.hlog\n"
+                    + "\t\t(jRTc by default) and prints a summary of every interval. Intervals are written -grace\n"
+                    + "\t\tms (one -si by default) after their end, later ones are dropped. Listens on loopback if\n"
+                    + "\t\thost is omitted.\n");
+            System.exit(1);
+        }
+
+        try {
+            new Collector(address, interval, grace, prefix).run();
+        } catch (SocketException e) {
+            System.err.println("jRTCollector could not listen at " + address + ": " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            //Nothing to do
+        }
+    }
+}
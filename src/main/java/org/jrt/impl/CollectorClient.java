@@ -0,0 +1,163 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Pushes interval histograms to Collector (-collector=[<host>:]<port>),
+ * one UDP datagram per histogram:
+ *
+ *   int     MAGIC
+ *   UTF     agent (jRT uid@pid@host)
+ *   UTF     direction (i2o, o2i, tls_i2o, tls_o2i, handshake)
+ *   UTF     tag, endpoint key or empty
+ *   long    interval start, ms since epoch
+ *   long    interval end, ms since epoch
+ *   int     length of the histogram
+ *   byte[]  compressed histogram
+ *
+ * Used by LogWriter thread only. Sending doesn't wait for the collector,
+ * lost datagrams (collector is down) are lost intervals of the combined
+ * log only, jRT logs of the agent are written as usual.
+ */
+public class CollectorClient {
+
+    static final int MAGIC = 0x6a525431;    //jRT1
+    //max payload of a datagram
+    static final int MAX_DATAGRAM = 65507;
+
+    private final JRT jRT;
+    private final InetSocketAddress address;
+    private final String agent;
+    private final DatagramSocket socket;
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+    private boolean failed;
+
+    public CollectorClient(JRT jRT, String address) throws IOException {
+        this.jRT = jRT;
+        this.address = parseAddress(address);
+        this.agent = jRT.configuration.uuid + "@" +
+                java.lang.management.ManagementFactory.getRuntimeMXBean().getName();
+        this.socket = new DatagramSocket();
+    }
+
+    /**
+     * @param address [<host>:]<port>, loopback if host is omitted
+     * @throws IllegalArgumentException if address has wrong format
+     */
+    public static InetSocketAddress parseAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        try {
+            int port = Integer.parseInt(address.substring(colon + 1));
+            return colon < 0 ? new InetSocketAddress(InetAddress.getByName(null), port)
+                    : new InetSocketAddress(address.substring(0, colon), port);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Wrong collector address " + address + ", expects [<host>:]<port>");
+        }
+    }
+
+    /**
+     * @param key endpoint key or null
+     * @param start interval start, ms since epoch
+     * @param end interval end, ms since epoch
+     */
+    public void push(String direction, String key, Histogram histogram, long start, long end) {
+        try {
+            int size = histogram.getNeededByteBufferCapacity();
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocate(size);
+            }
+            buffer.clear();
+            int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+
+            bytes.reset();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeUTF(agent);
+            out.writeUTF(direction);
+            out.writeUTF(null == key ? "" : key);
+            out.writeLong(start);
+            out.writeLong(end);
+            out.writeInt(length);
+            out.write(buffer.array(), 0, length);
+            if (bytes.size() > MAX_DATAGRAM) {
+                ++jRT.jrtStat.unpushedIntervals;
+                return;
+            }
+            byte[] packet = bytes.toByteArray();
+            socket.send(new DatagramPacket(packet, packet.length, address));
+            ++jRT.jrtStat.pushedIntervals;
+        } catch (IOException e) {
+            ++jRT.jrtStat.unpushedIntervals;
+            if (!failed) {
+                // once, collector may be started later
+                System.err.println("jRT could not push to collector " + address + ": " + e);
+                failed = true;
+            }
+        }
+    }
+
+    public void close() {
+        socket.close();
+    }
+
+    /**
+     * Pushed interval histogram, see the format above.
+     */
+    static class Interval {
+        String agent;
+        String direction;
+        String tag;
+        long start;
+        long end;
+        Histogram histogram;
+
+        /**
+         * @throws IOException if packet is malformed
+         */
+        static Interval parse(DatagramPacket packet) throws IOException {
+            DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(
+                    packet.getData(), packet.getOffset(), packet.getLength()));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a jRT interval");
+            }
+            Interval i = new Interval();
+            i.agent = in.readUTF();
+            i.direction = in.readUTF();
+            i.tag = in.readUTF();
+            if (i.tag.length() == 0) {
+                i.tag = null;
+            }
+            i.start = in.readLong();
+            i.end = in.readLong();
+            int length = in.readInt();
+            if (length < 0 || length > in.available()) {
+                throw new IOException("histogram of " + length + " bytes in a packet of " + packet.getLength());
+            }
+            byte[] histogram = new byte[length];
+            in.readFully(histogram);
+            try {
+                i.histogram = Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(histogram), 0);
+            } catch (Exception e) {
+                throw new IOException("malformed histogram: " + e);
+            }
+            i.histogram.setTag(i.tag);
+            return i;
+        }
+    }
+}
@@ -11,8 +11,16 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.UUID;
+import org.jrt.socket.api.MessageFramer;
+import org.jrt.socket.framing.Framers;
 
-public class Configuration {
+/**
+ * Parsed jRT arguments. Once jRT is started the configuration is not 
+ * modified in place: JRTControl changes a copy() and publishes it by 
+ * replacing JRT.configuration, so probes read a consistent snapshot 
+ * without locking.
+ */
+public class Configuration implements Cloneable {
     
     public String uuid = String.valueOf(++JRT.jrtInstances);
     
@@ -25,6 +33,9 @@ public class Configuration {
 //                UUID.randomUUID() + 
                 "." + uuid;
     public boolean printExceptions = true;
+    //keep JRTHic in a field injected into instrumented streams instead of
+    //looking it up in JRT.sockRTs on every read/write
+    public boolean injectHicField = false;
 
     public static class IOFilterEntry {
         public String remoteaddr = null;
@@ -37,13 +48,211 @@ public class Configuration {
             this.remoteport = remoteport;
         }
         
+        public String getLabel() {
+            return (null == localport ? "" : localport) + ":" + 
+                    (null == remoteaddr ? "" : remoteaddr) + ":" + 
+                    (null == remoteport ? "" : remoteport);
+        }
+        
+        /**
+         * @param entry <Local port>:<Remote address>:<Remote port>, any part
+         * can be empty
+         * @return null if entry has wrong format
+         */
+        public static IOFilterEntry parse(String entry) {
+            String localPort = null;
+            String remoteAddr = null;
+            String remotePort = null;
+            
+            String[] ports = entry.split(":");
+            
+            if (ports.length > 0 && ports[0].length() > 0) {
+                localPort = ports[0];
+            }
+
+            if (ports.length > 1 && ports[1].length() > 0) {
+                remoteAddr = ports[1];
+            }
+
+            if (ports.length > 2 && ports[2].length() > 0) {
+                remotePort = ports[2];
+            }
+
+            if (ports.length < 2 || ports.length > 3) {
+                return null;
+            }
+            
+            return new IOFilterEntry(localPort, remoteAddr, remotePort);
+        }
+        
     }
     
     public ArrayList<IOFilterEntry> filterEntries  = new ArrayList<IOFilterEntry>();
+    //allow reverse DNS lookups to match filter entries against host names
+    public boolean matchHostNames = false;
+    //filterEntries compiled by compileFilter()
+    public SocketFilter socketFilter = null;
+    
+    public void compileFilter() {
+        socketFilter = new SocketFilter(filterEntries, matchHostNames, 
+                null == metricsAddress ? 0 : MetricsServer.parseAddress(metricsAddress).getPort());
+    }
+    
+    /**
+     * @param mode one of i2o, o2i, both
+     * @return false if mode is unknown
+     */
+    public boolean setMode(String mode) {
+        if ("i2o".equals(mode)) {
+            i2oEnabled = true;
+            o2iEnabled = false;
+        } else if ("o2i".equals(mode)) {
+            i2oEnabled = false;
+            o2iEnabled = true;
+        } else if ("both".equals(mode)) {
+            i2oEnabled = true;
+            o2iEnabled = true;
+        } else {
+            return false;
+        }
+        return true;
+    }
+    
+    public String getMode() {
+        return i2oEnabled ? (o2iEnabled ? "both" : "i2o") : (o2iEnabled ? "o2i" : "none");
+    }
+    
+    /**
+     * @return copy to modify and publish, filter entries are copied too
+     */
+    public Configuration copy() {
+        try {
+            Configuration c = (Configuration) super.clone();
+            c.filterEntries = new ArrayList<IOFilterEntry>(filterEntries);
+            return c;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    public void compileFramer() {
+        framerFactory = null == framer ? null : Framers.forSpec(framer);
+    }
+    
+    //max outstanding requests per socket direction, 0 to pair only the last ones
+    public int pipelineDepth = 0;
+    
+    //record sizes of reads/writes and transferred bytes
+    public boolean recordBytes = false;
+    
+    //record connect/accept durations and opened/closed connections
+    public boolean recordConnections = false;
+    
+    //measure TLS connections at plaintext layer
+    public boolean tls = false;
+    
+    //weave socket data probes with ASM (ProbeTransformer) instead of 
+    //compiling them with Javassist, see CodeWriterRegistry
+    public boolean asmWeaver = false;
+
+    //stop or start command for jRT already running in the VM (attach),
+    //at startup "stop" loads jRT without weaving probes, see JRT.control
+    public String control = null;
+    
+    //register JRTControl MBean (org.jrt:type=JRT,id=<uuid>)
+    public boolean jmx = false;
+    
+    //[<host>:]<port> of OpenMetrics endpoint, see MetricsServer
+    public String metricsAddress = null;
+    
+    //[<host>:]<port> of Collector to push interval histograms to, see
+    //CollectorClient
+    public String collectorAddress = null;
+
+    //rotate interval logs when a segment reaches size (bytes) or crosses
+    //a multiple of time (ms since epoch), 0 to disable, see RotatingLog
+    public long logRotateSize = 0;
+    public long logRotateTime = 0;
+    //gzip rotated segments and keep all logs of the prefix within budget
+    //(bytes, 0 for unlimited), see LogCompressor
+    public boolean logCompress = true;
+    public long logDiskBudget = 0;
+
+    //LatencyStats.Builder knobs, LatencyUtils defaults: range (ns) and
+    //precision of histograms, window (latencies) and time cap (ns) of the
+    //expected interval estimator, see JRT.newLatencyStats
+    public long lowestTrackableLatency = 1000;
+    public long highestTrackableLatency = 3600000000000L;
+    public int significantDigits = 2;
+    public int estimatorWindow = 1024;
+    public long estimatorTimeCap = 10000000000L;
+    //SimplePauseDetector sleep (ns), pause threshold (ns) and threads, jRT
+    //starts its own detector only if they differ from LatencyUtils defaults
+    public long pauseSleep = 1000000;
+    public long pauseThreshold = 1000000;
+    public int pauseThreads = 3;
+    //log uncorrected interval histograms next to corrected ones, tagged
+    //raw (raw:<key> for endpoints), see LogWriter
+    public boolean logUncorrected = false;
+
+    //measure 1 in sampleConnections connections, record every
+    //sampleOperations-th latency of a connection and at most sampleBudget
+    //latencies per second per thread (0 for unlimited), see Sampling
+    public int sampleConnections = 1;
+    public int sampleOperations = 1;
+    public int sampleBudget = 0;
+
+    //count probe calls and calibrate their cost every interval, logged to
+    //<log prefix>.overhead.csv, see Overhead
+    public boolean overhead = false;
+
+    //message framer spec, see Framers, null to measure single reads/writes
+    public String framer = null;
+    public MessageFramer.Factory framerFactory = null;
+    
+    //per endpoint histograms: null (disabled), remote, lport or filter
+    public String endpointKey = null;
+    public int endpointMaxKeys = 64;
+    public long endpointIdleTime = 60000;    //miliseconds
     
     public long startDelaying = 0;             //miliseconds
     public long workingTime = Long.MAX_VALUE;  //infinity
     
+    /**
+     * @throws IllegalArgumentException if LatencyStats knobs are out of range
+     */
+    public void validateLatencyStats() {
+        if (lowestTrackableLatency < 1 || highestTrackableLatency < 2 * lowestTrackableLatency) {
+            throw new IllegalArgumentException("highest trackable latency must be at least twice the lowest one, which is at least 1");
+        }
+        if (significantDigits < 0 || significantDigits > 5) {
+            throw new IllegalArgumentException("significant digits must be 0..5");
+        }
+        if (estimatorWindow < 1 || estimatorTimeCap < 1) {
+            throw new IllegalArgumentException("interval estimator window and time cap must be positive");
+        }
+        if (pauseSleep < 1 || pauseThreshold < 1 || pauseThreads < 1) {
+            throw new IllegalArgumentException("pause detector sleep, threshold and threads must be positive");
+        }
+    }
+
+    /**
+     * @return true if pause detector knobs differ from LatencyUtils defaults
+     */
+    public boolean customPauseDetector() {
+        return pauseSleep != 1000000 || pauseThreshold != 1000000 || pauseThreads != 3;
+    }
+    
+    /**
+     * @param size <n>[k|m|g]
+     * @throws NumberFormatException if size has wrong format
+     */
+    public static long parseSize(String size) {
+        String s = size.toLowerCase();
+        int shift = s.endsWith("k") ? 10 : s.endsWith("m") ? 20 : s.endsWith("g") ? 30 : 0;
+        return Long.valueOf(0 == shift ? s : s.substring(0, s.length() - 1)) << shift;
+    }
+    
     public void setLogNamePattern(String str) {
         logPrefix = str
                 .replaceAll("%r", UUID.randomUUID().toString())
@@ -0,0 +1,62 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.LatencyUtils.LatencyStats;
+
+/**
+ * Connection lifecycle of measured sockets: connect and accept durations
+ * and counters of opened/closed connections, durations and count of 
+ * connects which failed.
+ *
+ * connect()/accept() block the calling thread, so the beginning of the
+ * operation is kept per thread between before and after probes. Non 
+ * blocking connect which is completed by finishConnect() keeps it in 
+ * JRTHic instead.
+ */
+public class ConnectionStats {
+    public final LatencyStats connectLS;
+    public final LatencyStats acceptLS;
+    public final LatencyStats connectFailedLS;
+    public final AtomicLong opened = new AtomicLong();
+    public final AtomicLong closed = new AtomicLong();
+    public final AtomicLong failed = new AtomicLong();
+    
+    private final ThreadLocal<long[]> started = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    public ConnectionStats(JRT jRT) {
+        connectLS = jRT.newLatencyStats();
+        acceptLS = jRT.newLatencyStats();
+        connectFailedLS = jRT.newLatencyStats();
+    }
+
+    public void begin() {
+        started.get()[0] = System.nanoTime();
+    }
+
+    /**
+     * @return time of the last begin() of this thread or 0
+     */
+    public long takeBegin() {
+        long[] s = started.get();
+        long time = s[0];
+        s[0] = 0;
+        return time;
+    }
+
+    public void stop() {
+        connectLS.stop();
+        acceptLS.stop();
+        connectFailedLS.stop();
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.jrt.socket.api.JRTHic;
+
+/**
+ * Per endpoint latency stats with bounded number of keys.
+ *
+ * Keys are resolved only when a socket is registered, so the lock here is
+ * never taken by read/write probes. When the cap is reached, the least
+ * recently used key is evicted; keys idle longer than endpointIdleTime are
+ * evicted by LogWriter. Evicted stats are kept until LogWriter writes their
+ * last interval (see drainEvicted).
+ *
+ * Sockets of an evicted key are recorded in overall stats only, until
+ * LogWriter registers the key again (see reregister) once there is room
+ * for it, so active keys over the cap never thrash the registry.
+ */
+public class EndpointRegistry {
+
+    public static final String KEY_REMOTE = "remote";
+    public static final String KEY_LOCAL_PORT = "lport";
+    public static final String KEY_FILTER = "filter";
+
+    private final JRT jRT;
+    private final Map<String, EndpointStats> endpoints = new HashMap<String, EndpointStats>();
+    private final List<EndpointStats> evicted = new ArrayList<EndpointStats>();
+
+    public EndpointRegistry(JRT jRT) {
+        this.jRT = jRT;
+    }
+
+    public static boolean isValidKeyMode(String mode) {
+        return KEY_REMOTE.equals(mode) || KEY_LOCAL_PORT.equals(mode) || KEY_FILTER.equals(mode);
+    }
+
+    /**
+     * @param conf configuration filterEntry was matched by
+     */
+    public String keyOf(Configuration conf, InetAddress remoteAddress, int remotePort, int localPort, int filterEntry) {
+        String mode = conf.endpointKey;
+        String key;
+        if (KEY_LOCAL_PORT.equals(mode)) {
+            key = String.valueOf(localPort);
+        } else if (KEY_FILTER.equals(mode)) {
+            key = conf.socketFilter.label(filterEntry);
+        } else {
+            key = (null == remoteAddress ? "?" : remoteAddress.getHostAddress()) + ":" + remotePort;
+        }
+        // must be a valid HdrHistogram log tag
+        return key.replaceAll("[,\\s]", "_");
+    }
+
+    public synchronized EndpointStats get(String key) {
+        EndpointStats stats = endpoints.get(key);
+        if (null != stats) {
+            return stats;
+        }
+
+        if (endpoints.size() >= jRT.configuration.endpointMaxKeys) {
+            EndpointStats lru = null;
+            for (EndpointStats s : endpoints.values()) {
+                if (null == lru || s.lastUsed - lru.lastUsed < 0) {
+                    lru = s;
+                }
+            }
+            if (null != lru) {
+                evict(lru);
+            }
+        }
+
+        // directions of current -mode, endpoint keeps them until evicted
+        Configuration conf = jRT.configuration;
+        stats = new EndpointStats(key, 
+                conf.i2oEnabled ? jRT.newLatencyStats() : null, 
+                conf.o2iEnabled ? jRT.newLatencyStats() : null);
+        endpoints.put(key, stats);
+        return stats;
+    }
+
+    /**
+     * Gives sockets of evicted keys used since their eviction live stats of
+     * the key again, as long as the cap isn't reached. Called by LogWriter.
+     */
+    public synchronized void reregister(Collection<JRTHic> sockets) {
+        for (JRTHic hic : sockets) {
+            EndpointStats e = hic.endpoint;
+            if (null == e || !e.evicted || e.lastUsed - e.evictedTime <= 0) {
+                continue;
+            }
+            EndpointStats stats = endpoints.get(e.key);
+            if (null == stats) {
+                if (endpoints.size() >= jRT.configuration.endpointMaxKeys) {
+                    continue;
+                }
+                stats = get(e.key);
+            }
+            hic.endpoint = stats;
+        }
+    }
+
+    public synchronized void evictIdle() {
+        long idleBefore = System.nanoTime() - jRT.configuration.endpointIdleTime * 1000000L;
+        for (Iterator<EndpointStats> it = endpoints.values().iterator(); it.hasNext();) {
+            EndpointStats s = it.next();
+            if (s.lastUsed - idleBefore < 0) {
+                it.remove();
+                markEvicted(s);
+            }
+        }
+    }
+
+    private void evict(EndpointStats s) {
+        endpoints.remove(s.key);
+        markEvicted(s);
+    }
+
+    private void markEvicted(EndpointStats s) {
+        s.evictedTime = System.nanoTime();
+        s.evicted = true;
+        evicted.add(s);
+    }
+
+    /**
+     * @return live stats followed by the ones evicted since last call
+     */
+    public synchronized List<EndpointStats> snapshot() {
+        List<EndpointStats> result = new ArrayList<EndpointStats>(endpoints.values());
+        result.addAll(evicted);
+        return result;
+    }
+
+    /**
+     * Stops stats evicted before and forgets them; LogWriter calls it after
+     * their interval histograms have been written.
+     */
+    public synchronized void drainEvicted(List<EndpointStats> written) {
+        for (EndpointStats s : written) {
+            if (s.evicted && evicted.remove(s)) {
+                s.stop();
+            }
+        }
+    }
+
+    public synchronized void stop() {
+        for (EndpointStats s : endpoints.values()) {
+            s.stop();
+        }
+        for (EndpointStats s : evicted) {
+            s.stop();
+        }
+        endpoints.clear();
+        evicted.clear();
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import org.LatencyUtils.LatencyStats;
+
+/**
+ * Latency stats of a single endpoint key, see EndpointRegistry.
+ */
+public class EndpointStats {
+    public final String key;
+    public final LatencyStats i2oLS;
+    public final LatencyStats o2iLS;
+
+    //System.nanoTime() of last recorded latency, written racy by probes
+    public long lastUsed;
+    //System.nanoTime() when registry dropped this key
+    public long evictedTime;
+    //set once registry dropped this key, its sockets are then recorded in
+    //overall stats only until LogWriter registers the key again
+    public volatile boolean evicted = false;
+
+    public EndpointStats(String key, LatencyStats i2oLS, LatencyStats o2iLS) {
+        this.key = key;
+        this.i2oLS = i2oLS;
+        this.o2iLS = o2iLS;
+        this.lastUsed = System.nanoTime();
+    }
+
+    public void stop() {
+        if (null != i2oLS) i2oLS.stop();
+        if (null != o2iLS) o2iLS.stop();
+    }
+}
@@ -7,17 +7,24 @@
 package org.jrt.impl;
 
 import org.jrt.socket.api.JRTHic;
+import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.Instrumentation;
 import java.lang.instrument.UnmodifiableClassException;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import org.HdrHistogram.Histogram;
 import org.LatencyUtils.LatencyStats;
+import org.LatencyUtils.PauseDetector;
+import org.LatencyUtils.SimplePauseDetector;
 import org.jrt.socket.api.CodeWriter;
+import org.jrt.socket.api.ProbeTransformer;
+import org.jrt.socket.api.ProbeWriter;
 import org.jrt.socket.api.Transformer;
-import org.jrt.socket.nio.NioSocketCodeWrapper;
-import org.jrt.socket.regular.JavaNetSocketCodeWrapper;
 
 public class JRT {
 
@@ -29,12 +36,48 @@ public class JRT {
     public long startTime;
     public LatencyStats i2oLS;
     public LatencyStats o2iLS;
+    public LatencyStats tlsI2oLS;
+    public LatencyStats tlsO2iLS;
+    public LatencyStats handshakeLS;
+    //null unless pause detector options are specified, see newLatencyStats
+    private PauseDetector pauseDetector;
     public boolean isAlive = true;
+    //class holding this jRT in static final field, see JRTBinder
+    public String bindingClass;
 
-    public Configuration configuration = new Configuration();
+    public EndpointRegistry endpoints;
+    public TransferStats transfer;
+    public ConnectionStats connections;
+    //compresses and deletes rotated logs, started by the first rotation
+    public final LogCompressor logCompressor = new LogCompressor(this);
+
+    //replaced as a whole by JRTControl, see Configuration
+    public volatile Configuration configuration;
     public JRTStatistic jrtStat;
+    public Sampling sampling;
+    //last interval histograms written by LogWriter, for JRTControl
+    public volatile Histogram i2oInterval;
+    public volatile Histogram o2iInterval;
+    
+    public Map<Object, JRTHic> sockRTs = new ConcurrentHashMap<Object, JRTHic>();
+    
+    //probes are woven into instrumented classes, see enable()/disable()
+    public volatile boolean woven = false;
+    private Instrumentation instrumentation;
+    private List<ProbeWriter> probeWriters;
+    private List<CodeWriter> codeWriters;
+    private final List<ClassFileTransformer> transformers = new ArrayList<ClassFileTransformer>();
+    
+    public JRT() {
+        this(new Configuration());
+    }
     
-    public Map<Object, JRTHic> sockRTs = new ConcurrentHashMap(new WeakHashMap<Object, JRTHic>());
+    /**
+     * Not started jRT with given configuration, see Overhead.
+     */
+    JRT(Configuration configuration) {
+        this.configuration = configuration;
+    }
     
     public static void main(String[] args) {
         System.out.println("jRT.jar doesn't have now functional main method. Please rerun your application as:\n\t"
@@ -74,16 +117,48 @@ public class JRT {
         System.out.println("\t\twhere <args> is an comma separated list of arguments like arg1,arg2=val2 e.t.c\n");
         System.out.println("\t\tARGUMENTS:");
         System.out.println("\t\t  " + printKeys(help, 40) + " to print help");
-        System.out.println("\t\t  " + printKeys(remoteaddr, 40) + " to add filter by remote address");
-        System.out.println("\t\t  " + printKeys(remoteport, 40) + " to add filter by remote port");
-        System.out.println("\t\t  " + printKeys(localport, 40) + " to add filter by local port");
+        System.out.println("\t\t  " + printKeys(remoteaddr, 40) + " to add filter by remote address: address, CIDR range (10.0.0.0/8), glob (10.1.*) or host name");
+        System.out.println("\t\t  " + printKeys(remoteport, 40) + " to add filter by remote port: port or range (8000-8100)");
+        System.out.println("\t\t  " + printKeys(localport, 40) + " to add filter by local port: port or range (8000-8100)");
         System.out.println("\t\t  " + printKeys(filterentry, 40) + " to add filter by entry: <Local port>:<Remote address>:<Remote port> any part can be empty");
+        System.out.println("\t\t  " + printKeys(hostnames, 40) + " to match remote address filters against host names too, uses reverse DNS (take <boolean>)");
         System.out.println("\t\t  " + printKeys(loginterval, 40) + " to set log sampling interval");
         System.out.println("\t\t  " + printKeys(startdelaying, 40) + " to specify time delay to start jRT");
         System.out.println("\t\t  " + printKeys(workingtime, 40) + " to specify how long jRT will work");
         System.out.println("\t\t  " + printKeys(logprefix, 40) + " to specify jRT log prefix");
         System.out.println("\t\t  " + printKeys(uuid, 40) + " to specify jRT inner ID (take <string>)");
         System.out.println("\t\t  " + printKeys(ioMode, 40) + " to specify jRT mode. Expects one of i2o, o2i, both. Both by default");
+        System.out.println("\t\t  " + printKeys(logrotatesize, 40) + " to rotate .hlog logs when they reach size (<n>[k|m|g] bytes)");
+        System.out.println("\t\t  " + printKeys(logrotatetime, 40) + " to rotate .hlog logs every given time (ms), at multiples of it since epoch");
+        System.out.println("\t\t  " + printKeys(logcompress, 40) + " to gzip rotated logs in background (take <boolean>). True by default");
+        System.out.println("\t\t  " + printKeys(logbudget, 40) + " to delete oldest rotated logs when all logs of the prefix exceed size (<n>[k|m|g] bytes)");
+        System.out.println("\t\t  " + printKeys(lowestlatency, 40) + " to set the lowest latency (ns) histograms track. 1000 by default");
+        System.out.println("\t\t  " + printKeys(highestlatency, 40) + " to set the highest latency (ns) histograms track. 3600000000000 (an hour) by default");
+        System.out.println("\t\t  " + printKeys(digits, 40) + " to set precision of histograms, 0..5 significant value digits. 2 by default");
+        System.out.println("\t\t  " + printKeys(estimatorwindow, 40) + " to set number of latencies the expected interval (for pause correction) is averaged over. 1024 by default");
+        System.out.println("\t\t  " + printKeys(estimatortimecap, 40) + " to set the longest time (ns) latencies are averaged over for the expected interval. 10000000000 by default");
+        System.out.println("\t\t  " + printKeys(pausesleep, 40) + " to set sleep (ns) of pause detector threads. 1000000 by default");
+        System.out.println("\t\t  " + printKeys(pausethreshold, 40) + " to set the shortest pause (ns) latencies are corrected for. 1000000 by default");
+        System.out.println("\t\t  " + printKeys(pausethreads, 40) + " to set number of pause detector threads, pause is detected when all of them stall. 3 by default");
+        System.out.println("\t\t  " + printKeys(loguncorrected, 40) + " to log uncorrected interval histograms too, tagged raw (raw:<key> for endpoints) (take <boolean>)");
+        System.out.println("\t\t  " + printKeys(recordbytes, 40) + " to record sizes of reads/writes and bytes per interval to <log prefix>.size.hlog and <log prefix>.bytes.csv (take <boolean>)");
+        System.out.println("\t\t  " + printKeys(recordconnections, 40) + " to record connect/accept durations (failed connects tagged failed) to <log prefix>.connect.hlog, <log prefix>.accept.hlog and opened/closed/failed connections to <log prefix>.conn.csv (take <boolean>)");
+        System.out.println("\t\t  " + printKeys(tlsplaintext, 40) + " to measure application data of TLS connections to <log prefix>.tls.i2o.hlog, <log prefix>.tls.o2i.hlog and handshakes to <log prefix>.handshake.hlog (take <boolean>)");
+        System.out.println("\t\t  " + printKeys(sampleconnections, 40) + " to measure 1 in n connections passing filters, decided when a connection is opened. 1 by default");
+        System.out.println("\t\t  " + printKeys(sampleoperations, 40) + " to record every n-th latency of a connection in each direction. 1 by default");
+        System.out.println("\t\t  " + printKeys(samplebudget, 40) + " to record at most n latencies per second per thread. Unlimited by default");
+        System.out.println("\t\t  " + printKeys(overhead, 40) + " to count probe calls and calibrate their cost every interval, logged to <log prefix>.overhead.csv (take <boolean>)");
+        System.out.println("\t\t  " + printKeys(framer, 40) + " to measure latency between complete messages. Expects one of http, resp, length[:<prefix bytes>] or class name of MessageFramer.Factory");
+        System.out.println("\t\t  " + printKeys(pipeline, 40) + " to pair pipelined requests and responses in FIFO order, takes max outstanding requests per socket");
+        System.out.println("\t\t  " + printKeys(endpointkey, 40) + " to record histograms per endpoint too. Expects one of remote (addr:port), lport, filter (matched filter entry)");
+        System.out.println("\t\t  " + printKeys(endpointmaxkeys, 40) + " to limit number of endpoints, least recently used one is evicted. 64 by default");
+        System.out.println("\t\t  " + printKeys(endpointidle, 40) + " to evict endpoints idle for given time (ms). 60000 by default");
+        System.out.println("\t\t  " + printKeys(hicfield, 40) + " to keep per-socket state in an injected field (take <boolean>). Only at startup, not on attach");
+        System.out.println("\t\t  " + printKeys(weaver, 40) + " to weave socket data probes with javassist (default) or asm. Connection and TLS probes are woven by javassist");
+        System.out.println("\t\t  " + printKeys(jmx, 40) + " to register MBean org.jrt:type=JRT,id=<uuid> to change filters, interval and mode and read last interval percentiles at runtime (take <boolean>)");
+        System.out.println("\t\t  " + printKeys(metrics, 40) + " to serve last interval percentiles in OpenMetrics (Prometheus) format at http://[<host>:]<port>/metrics");
+        System.out.println("\t\t  " + printKeys(collector, 40) + " to push interval histograms to jRTCollector listening at UDP [<host>:]<port> (loopback by default)");
+        System.out.println("\t\t  " + printKeys(control, 40) + " to stop or start jRT already running in the VM (with " + printKeys(uuid) + " or all), restoring/reweaving instrumented classes. At startup stop loads jRT without probes");
 //        System.out.println("\t\t  " + printKeys(i2oenabling, 40) + " to calculate latency (take <boolean>)");
 //        System.out.println("\t\t  " + printKeys(o2ienabling, 40) + " to calculate latency (take <boolean>)");
     }
@@ -92,6 +167,7 @@ public class JRT {
     
     public void premain(String agentArgument, Instrumentation instrumentation) {
         jrtStat = new JRTStatistic();
+        sampling = new Sampling(this);
 
         startTime = System.currentTimeMillis();
 
@@ -99,8 +175,17 @@ public class JRT {
         
         jRTWorkers.put(configuration.uuid, this);
         
-        if (configuration.i2oEnabled) i2oLS = new LatencyStats();
-        if (configuration.o2iEnabled) o2iLS = new LatencyStats();
+        // both directions, -mode can be switched by JRTControl later
+        i2oLS = newLatencyStats();
+        o2iLS = newLatencyStats();
+        if (null != configuration.endpointKey) endpoints = new EndpointRegistry(this);
+        if (configuration.recordBytes) transfer = new TransferStats();
+        if (configuration.recordConnections) connections = new ConnectionStats(this);
+        if (configuration.tls) {
+            tlsI2oLS = newLatencyStats();
+            tlsO2iLS = newLatencyStats();
+            handshakeLS = newLatencyStats();
+        }
 
         instrument(agentArgument, instrumentation);
         
@@ -122,6 +207,32 @@ public class JRT {
                     System.out.println("---------------------------------------------------------------");
                     System.out.println("jRT Statistic: ");
                     System.out.println(" " + jrtStat.processedSocket + " sockets was processed");
+                    System.out.println(" socket filter was checked " + jrtStat.registrations + " times and rejected " + jrtStat.filteredSocket + ", " + openSockets() + " open sockets are registered");
+                    if (configuration.overhead) {
+                        System.out.println(" " + jrtStat.probeCalls.sum() + " probe calls and registrations took ~" + jrtStat.probeTime / 1000000 + " ms (calibrated every interval)");
+                    }
+                    System.out.println(" log writer took " + (jrtStat.intervals > 0 ? jrtStat.logWriterTime / jrtStat.intervals / 1000 : 0) + " us per interval on average, " + jrtStat.maxLogWriterTime / 1000 + " us at most");
+                    if (null != Sampling.header(configuration, true)) {
+                        System.out.println(" " + jrtStat.unsampledSocket + " sockets was not measured (-sampleconn), " + jrtStat.overBudget.get() + " latencies was over budget (-samplebudget)");
+                    }
+                    System.out.println(" instrumentation took " + jrtStat.instrumentTime / 1000000 + " ms, " + jrtStat.retransformedClasses + " loaded classes was retransformed (" + (configuration.asmWeaver ? "asm" : "javassist") + " weaver)");
+                    if (configuration.pipelineDepth > 0) {
+                        System.out.println(" " + jrtStat.pipelineOverflows.get() + " outstanding requests was dropped by pipeline overflow");
+                    }
+                    System.out.println(" " + jrtStat.intervals + " log intervals, " + jrtStat.lateWakeups + " of them was late (max wake up delay " + jrtStat.maxWakeupDelay + " ms)");
+                    System.out.println(" " + jrtStat.i2oRecorded + " i2o and " + jrtStat.o2iRecorded + " o2i latencies was recorded (uncorrected)");
+                    if (configuration.tls) {
+                        System.out.println(" " + jrtStat.handshakesRecorded + " TLS handshakes, " + jrtStat.tlsI2oRecorded + " i2o and " + jrtStat.tlsO2iRecorded + " o2i TLS latencies was recorded (uncorrected)");
+                    }
+                    if (null != configuration.collectorAddress) {
+                        System.out.println(" " + jrtStat.pushedIntervals + " interval histograms was pushed to collector " + configuration.collectorAddress + ", " + jrtStat.unpushedIntervals + " failed");
+                    }
+                    if (jrtStat.rotatedLogs > 0) {
+                        System.out.println(" " + jrtStat.rotatedLogs + " log segments was rotated, " + jrtStat.compressedLogs + " compressed and " + jrtStat.deletedLogs + " deleted over disk budget");
+                    }
+                    if (null != connections) {
+                        System.out.println(" " + connections.opened.get() + " connections was opened and " + connections.closed.get() + " closed, " + connections.failed.get() + " connects failed");
+                    }
                     System.out.println("***************************************************************");
                     System.out.flush();
                 }
@@ -133,6 +244,29 @@ public class JRT {
         jRTLogWriter.start();    
     }
 
+    /**
+     * @return LatencyStats built by -lowest, -highest, -digits, -window,
+     * -timecap and pause detector options; LatencyStats of the jRT share
+     * its own pause detector if one is configured, the VM wide default
+     * one otherwise
+     */
+    public synchronized LatencyStats newLatencyStats() {
+        Configuration conf = configuration;
+        if (null == pauseDetector && conf.customPauseDetector()) {
+            pauseDetector = new SimplePauseDetector(conf.pauseSleep, conf.pauseThreshold, conf.pauseThreads);
+        }
+        LatencyStats.Builder builder = LatencyStats.Builder.create()
+                .lowestTrackableLatency(conf.lowestTrackableLatency)
+                .highestTrackableLatency(conf.highestTrackableLatency)
+                .numberOfSignificantValueDigits(conf.significantDigits)
+                .intervalEstimatorWindowLength(conf.estimatorWindow)
+                .intervalEstimatorTimeCap(conf.estimatorTimeCap);
+        if (null != pauseDetector) {
+            builder.pauseDetector(pauseDetector);
+        }
+        return builder.build();
+    }
+
     public void parseArguments(String agentArgument) throws NumberFormatException {
         if (null != agentArgument) {
             for (String v : agentArgument.split(",")) {
@@ -157,39 +291,14 @@ public class JRT {
                             new Configuration.IOFilterEntry(null, null, vArr[1]));
                 }
                 if (hasKey(filterentry, vArr[0]) && vArr.length == 2) {
-                    boolean isCorrect = true;
-                    
-                    String localPort = null;
-                    String remoteAddr = null;
-                    String remotePort = null;
+                    Configuration.IOFilterEntry entry = Configuration.IOFilterEntry.parse(vArr[1]);
                     
-                    String[] ports = vArr[1].split(":");
-                    
-                    if (ports.length > 0 && ports[0].length() > 0) {
-                        localPort = ports[0];
-                    }
-
-                    if (ports.length > 1 && ports[1].length() > 0) {
-                        remoteAddr = ports[1];
-                    }
-
-                    if (ports.length > 2 && ports[2].length() > 0) {
-                        remotePort = ports[2];
-                    }
-
-                    if (ports.length < 2 || ports.length > 3) {
-                        isCorrect = false;
-                    }
-
-                    //System.out.println("'" + localPort + "'" + remoteAddr + "'" + remotePort + "'");
-                    
-                    if (!isCorrect) {
+                    if (null == entry) {
                         System.err.println("Wrong " + printKeys(filterentry) + " format\n\n");
                         printHelpAndExit();
                     }
                     
-                    configuration.filterEntries.add(
-                            new Configuration.IOFilterEntry(localPort, remoteAddr, remotePort));
+                    configuration.filterEntries.add(entry);
                 }
                 if (hasKey(loginterval, vArr[0])) {
                     configuration.logWriterInterval = Long.valueOf(vArr[1]);
@@ -212,17 +321,134 @@ public class JRT {
                 if (hasKey(o2ienabling, vArr[0])) {
                     configuration.o2iEnabled = Boolean.valueOf(vArr[1]);
                 }
-                if (hasKey(ioMode, vArr[0])) {
-                    if ("i2o".equals(vArr[1])) {
-                        configuration.i2oEnabled = true;
-                        configuration.o2iEnabled = false;
-                    } else if ("o2i".equals(vArr[1])) {
-                        configuration.i2oEnabled = false;
-                        configuration.o2iEnabled = true;
-                    } else if ("both".equals(vArr[1])) {
-                        configuration.i2oEnabled = true;
-                        configuration.o2iEnabled = true;
+                if (hasKey(hostnames, vArr[0])) {
+                    configuration.matchHostNames = Boolean.valueOf(vArr[1]);
+                }
+                if (hasKey(recordbytes, vArr[0])) {
+                    configuration.recordBytes = Boolean.valueOf(vArr[1]);
+                }
+                if (hasKey(recordconnections, vArr[0])) {
+                    configuration.recordConnections = Boolean.valueOf(vArr[1]);
+                }
+                if (hasKey(tlsplaintext, vArr[0])) {
+                    configuration.tls = Boolean.valueOf(vArr[1]);
+                }
+                if (hasKey(weaver, vArr[0])) {
+                    if ("asm".equals(vArr[1])) {
+                        configuration.asmWeaver = true;
+                    } else if ("javassist".equals(vArr[1])) {
+                        configuration.asmWeaver = false;
                     } else {
+                        System.err.println("Parameter " + vArr[0] + 
+                                " expects one of javassist, asm argument. But " + vArr[1] + " has been got.");
+                        printHelpAndExit();
+                    }
+                }
+                if (hasKey(logrotatesize, vArr[0])) {
+                    configuration.logRotateSize = Configuration.parseSize(vArr[1]);
+                }
+                if (hasKey(logrotatetime, vArr[0])) {
+                    configuration.logRotateTime = Long.valueOf(vArr[1]);
+                }
+                if (hasKey(logcompress, vArr[0])) {
+                    configuration.logCompress = Boolean.valueOf(vArr[1]);
+                }
+                if (hasKey(logbudget, vArr[0])) {
+                    configuration.logDiskBudget = Configuration.parseSize(vArr[1]);
+                }
+                if (hasKey(jmx, vArr[0])) {
+                    configuration.jmx = Boolean.valueOf(vArr[1]);
+                }
+                if (hasKey(metrics, vArr[0])) {
+                    try {
+                        MetricsServer.parseAddress(vArr[1]);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(e.getMessage() + "\n\n");
+                        printHelpAndExit();
+                    }
+                    configuration.metricsAddress = vArr[1];
+                }
+                if (hasKey(collector, vArr[0])) {
+                    try {
+                        CollectorClient.parseAddress(vArr[1]);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(e.getMessage() + "\n\n");
+                        printHelpAndExit();
+                    }
+                    configuration.collectorAddress = vArr[1];
+                }
+                if (hasKey(control, vArr[0])) {
+                    if (!"stop".equals(vArr[1]) && !"start".equals(vArr[1])) {
+                        System.err.println("Parameter " + vArr[0] + 
+                                " expects one of stop, start argument. But " + vArr[1] + " has been got.");
+                        printHelpAndExit();
+                    }
+                    configuration.control = vArr[1];
+                }
+                if (hasKey(lowestlatency, vArr[0])) {
+                    configuration.lowestTrackableLatency = Long.valueOf(vArr[1]);
+                }
+                if (hasKey(highestlatency, vArr[0])) {
+                    configuration.highestTrackableLatency = Long.valueOf(vArr[1]);
+                }
+                if (hasKey(digits, vArr[0])) {
+                    configuration.significantDigits = Integer.valueOf(vArr[1]);
+                }
+                if (hasKey(estimatorwindow, vArr[0])) {
+                    configuration.estimatorWindow = Integer.valueOf(vArr[1]);
+                }
+                if (hasKey(estimatortimecap, vArr[0])) {
+                    configuration.estimatorTimeCap = Long.valueOf(vArr[1]);
+                }
+                if (hasKey(pausesleep, vArr[0])) {
+                    configuration.pauseSleep = Long.valueOf(vArr[1]);
+                }
+                if (hasKey(pausethreshold, vArr[0])) {
+                    configuration.pauseThreshold = Long.valueOf(vArr[1]);
+                }
+                if (hasKey(pausethreads, vArr[0])) {
+                    configuration.pauseThreads = Integer.valueOf(vArr[1]);
+                }
+                if (hasKey(loguncorrected, vArr[0])) {
+                    configuration.logUncorrected = Boolean.valueOf(vArr[1]);
+                }
+                if (hasKey(sampleconnections, vArr[0])) {
+                    configuration.sampleConnections = positive(vArr);
+                }
+                if (hasKey(sampleoperations, vArr[0])) {
+                    configuration.sampleOperations = positive(vArr);
+                }
+                if (hasKey(samplebudget, vArr[0])) {
+                    configuration.sampleBudget = positive(vArr);
+                }
+                if (hasKey(overhead, vArr[0])) {
+                    configuration.overhead = Boolean.valueOf(vArr[1]);
+                }
+                if (hasKey(framer, vArr[0])) {
+                    configuration.framer = vArr[1];
+                }
+                if (hasKey(pipeline, vArr[0])) {
+                    configuration.pipelineDepth = Integer.valueOf(vArr[1]);
+                }
+                if (hasKey(endpointkey, vArr[0])) {
+                    if (!EndpointRegistry.isValidKeyMode(vArr[1])) {
+                        System.err.println("Parameter " + vArr[0] + 
+                                " expects one of remote, lport, filter argument. But " + vArr[1] + " has been got.");
+                        printHelpAndExit();
+                    }
+                    configuration.endpointKey = vArr[1];
+                }
+                if (hasKey(endpointmaxkeys, vArr[0])) {
+                    configuration.endpointMaxKeys = Integer.valueOf(vArr[1]);
+                }
+                if (hasKey(endpointidle, vArr[0])) {
+                    configuration.endpointIdleTime = Long.valueOf(vArr[1]);
+                }
+                if (hasKey(hicfield, vArr[0])) {
+                    configuration.injectHicField = Boolean.valueOf(vArr[1]);
+                }
+                if (hasKey(ioMode, vArr[0])) {
+                    if (!configuration.setMode(vArr[1])) {
                         System.err.println("Parameter " + vArr[0] + 
                                 " expects one of i2o, o2i, both argument. But " + vArr[1] + " has been got.");
                         printHelpAndExit();
@@ -230,38 +456,274 @@ public class JRT {
                 }
             }
         }
+        
+        try {
+            configuration.compileFilter();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Wrong filter: " + e.getMessage() + "\n\n");
+            printHelpAndExit();
+        }
+        
+        try {
+            configuration.validateLatencyStats();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Wrong LatencyStats parameters: " + e.getMessage() + "\n\n");
+            printHelpAndExit();
+        }
+        
+        try {
+            configuration.compileFramer();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Wrong " + printKeys(framer) + ": " + e.getMessage() + "\n\n");
+            printHelpAndExit();
+        }
+    }
+
+    /**
+     * @return positive int value of parameter, prints help and exits otherwise
+     */
+    private static int positive(String[] vArr) {
+        try {
+            int value = Integer.valueOf(vArr[1]);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            //Falls through to help
+        }
+        System.err.println("Parameter " + vArr[0] + " expects positive number. But " + vArr[1] + " has been got.");
+        printHelpAndExit();
+        return 0;
     }
 
     public void instrument(String agentArgument, Instrumentation instrumentation) {
-        instrumentation.addTransformer(new Transformer(this, new JavaNetSocketCodeWrapper()), true);
-        instrumentation.addTransformer(new Transformer(this, new NioSocketCodeWrapper()), true);
+        long start = System.nanoTime();
+        int jdk = CodeWriterRegistry.jdkVersion();
         
-    /*
-    untested code to support attaching to existing java process
-    */
-        redeclare(instrumentation, new JavaNetSocketCodeWrapper());
-        redeclare(instrumentation, new NioSocketCodeWrapper());
+        if (configuration.asmWeaver && configuration.injectHicField) {
+            System.out.println("WARNING: " + printKeys(weaver) + "=asm keeps per-socket state in sockRTs, "
+                    + printKeys(hicfield) + " option is ignored");
+            configuration.injectHicField = false;
+        }
+        
+        probeWriters = CodeWriterRegistry.probeWriters(jdk, configuration);
+        codeWriters = CodeWriterRegistry.codeWriters(jdk, configuration);
+        
+        if (configuration.injectHicField && "stop".equals(configuration.control)) {
+            System.out.println("WARNING: jRT loaded stopped weaves probes into loaded classes, "
+                    + printKeys(hicfield) + " option is ignored");
+            configuration.injectHicField = false;
+        }
+        
+        if (configuration.injectHicField) {
+            // new fields can't be added to classes which are already loaded
+            // (f.e. when jRT is attached to running VM), fall back to sockRTs
+            for (CodeWriter cw : codeWriters) {
+                cw.init(this);
+            }
+            for (Class c : instrumentation.getAllLoadedClasses()) {
+                String className = c.getName().replace('.', '/');
+                boolean newFields = false;
+                for (CodeWriter cw : codeWriters) {
+                    newFields |= cw.needInstrument(className) && cw.classNewFields(className).iterator().hasNext();
+                }
+                if (newFields) {
+                    System.out.println("WARNING: " + c.getName() + " is already loaded, "
+                            + printKeys(hicfield) + " option is ignored");
+                    configuration.injectHicField = false;
+                    break;
+                }
+            }
+        }
+        
+        // Javassist is loaded only when there is something to compile
+        boolean javassist = !codeWriters.isEmpty();
+        
+        if (javassist) {
+            // since JDK 9 default class pool can't see jRT classes appended to
+            // bootstrap search path, and code compiled by Transformer refers to them
+            ClassPool.getDefault().insertClassPath(new ClassClassPath(JRT.class));
+        }
+        
+        bindingClass = JRTBinder.bind(this, instrumentation, javassist);
+        
+        // probes of the same method run in order of transformers
+        for (ProbeWriter pw : probeWriters) {
+            transformers.add(new ProbeTransformer(this, pw));
+        }
+        for (CodeWriter cw : codeWriters) {
+            transformers.add(new Transformer(this, cw));
+        }
+        this.instrumentation = instrumentation;
+        
+        if ("stop".equals(configuration.control)) {
+            System.out.println("jRT uid " + configuration.uuid + " is loaded stopped, attach with "
+                    + printKeys(control) + "=start to weave probes");
+        } else {
+            enable();
+        }
+        
+        jrtStat.instrumentTime = System.nanoTime() - start;
+    }
+    
+    /**
+     * Drops sockets closed before the previous call from sockRTs, the log
+     * writer calls it every interval.
+     */
+    public void dropClosed() {
+        for (Iterator<JRTHic> i = sockRTs.values().iterator(); i.hasNext();) {
+            JRTHic hic = i.next();
+            if (hic.closed) {
+                if (hic.closedSeen) {
+                    i.remove();
+                } else {
+                    hic.closedSeen = true;
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return registered sockets not closed yet
+     */
+    public int openSockets() {
+        int open = 0;
+        for (JRTHic hic : sockRTs.values()) {
+            if (!hic.closed) {
+                ++open;
+            }
+        }
+        return open;
+    }
+    
+    /**
+     * Weaves probes: adds transformers and retransforms classes which are 
+     * already loaded. Pending state of known sockets is reset, I/O done 
+     * while jRT was stopped was not seen. Sockets opened meanwhile stay 
+     * unmeasured, they are registered when opened.
+     */
+    public synchronized boolean enable() {
+        if (woven) {
+            return false;
+        }
+        for (JRTHic hic : sockRTs.values()) {
+            hic.reset();
+        }
+        for (ClassFileTransformer t : transformers) {
+            instrumentation.addTransformer(t, true);
+        }
+        woven = true;
+        redeclare(instrumentation, probeWriters, codeWriters);
+        return true;
+    }
+    
+    /**
+     * Removes transformers and retransforms instrumented classes, so they 
+     * get their original bytecode back and probes cost nothing. LogWriter 
+     * keeps writing (empty) intervals. Fields injected by -hf can't be 
+     * removed by retransformation, such jRT can't be stopped.
+     */
+    public synchronized boolean disable() {
+        if (!woven) {
+            return false;
+        }
+        if (configuration.injectHicField) {
+            System.out.println("WARNING: jRT uid " + configuration.uuid + " injected fields ("
+                    + printKeys(hicfield) + "), it can't be stopped");
+            return false;
+        }
+        for (ClassFileTransformer t : transformers) {
+            instrumentation.removeTransformer(t);
+        }
+        woven = false;
+        redeclare(instrumentation, probeWriters, codeWriters);
+        return true;
+    }
+    
+    /**
+     * Applies stop/start command of agent arguments to jRTs already running 
+     * in this VM: to the one with given uuid or to all of them. Other 
+     * arguments are ignored.
+     * 
+     * @return false if there is no command or no jRT to apply it to, then 
+     * new jRT should be started
+     */
+    public static boolean control(String agentArgument) {
+        if (null == agentArgument) {
+            return false;
+        }
+        String command = null;
+        String id = null;
+        for (String v : agentArgument.split(",")) {
+            String[] vArr = v.split("=");
+            if (vArr.length == 2 && hasKey(control, vArr[0])) {
+                command = vArr[1];
+            }
+            if (vArr.length == 2 && hasKey(uuid, vArr[0])) {
+                id = vArr[1];
+            }
+        }
+        if (null == command || jRTWorkers.isEmpty()) {
+            return false;
+        }
+        boolean found = false;
+        for (JRT jRT : jRTWorkers.values()) {
+            if (null != id && !id.equals(jRT.configuration.uuid)) {
+                continue;
+            }
+            found = true;
+            boolean stop = "stop".equals(command);
+            boolean changed = stop ? jRT.disable() : jRT.enable();
+            System.out.println("jRT uid " + jRT.configuration.uuid + " is " 
+                    + (jRT.woven ? "started" : "stopped") + (changed || jRT.woven == stop ? "" : " already"));
+        }
+        if (!found) {
+            System.out.println("WARNING: there is no jRT uid " + id + " to " + command);
+        }
+        return true;
     }
     
     /*
-    untested code to support attaching to existing java process
+    retransforms loaded classes jRT instruments (attach, stop and start)
     */
-    private void redeclare(Instrumentation instrumentation, CodeWriter cw) {
-        ArrayList<Class> ac = new ArrayList<Class>();
-        
+    private void redeclare(Instrumentation instrumentation, List<ProbeWriter> probeWriters, List<CodeWriter> codeWriters) {
+        List<Class> classes = new ArrayList<Class>();
         for (Class c : instrumentation.getAllLoadedClasses()) {
-            final String className = c.getName().replace(".", "/");
+            // char replace, the String one compiles a pattern for every class
+            final String className = c.getName().replace('.', '/');
             
-            if (cw.needInstrument(className)) {
-                ac.add(c);
+            boolean needInstrument = false;
+            for (ProbeWriter pw : probeWriters) {
+                needInstrument |= pw.needInstrument(className);
+            }
+            for (CodeWriter cw : codeWriters) {
+                needInstrument |= cw.needInstrument(className);
+            }
+            
+            if (needInstrument) {
+                classes.add(c);
+            }
+        }
+        
+        if (classes.isEmpty()) {
+            return;
+        }
+        
+        // all transformers are applied to retransformed class at once
+        try {
+            instrumentation.retransformClasses(classes.toArray(new Class[classes.size()]));
+            jrtStat.retransformedClasses += classes.size();
+        } catch (Exception e) {
+            // one by one, so a class which can't be retransformed doesn't stop others
+            for (Class c : classes) {
                 try {
                     instrumentation.retransformClasses(c);
+                    ++jrtStat.retransformedClasses;
                 } catch (UnmodifiableClassException ex) {
                     ex.printStackTrace();
                 }
             }
         }
-        
     }
     
     public static JRT premain0(String agentArgument, Instrumentation instrumentation) {
@@ -296,6 +758,38 @@ public class JRT {
     private static final String[] ioMode = {"-mode"};
     private static final String[] i2oenabling = {"-i2o"};
     private static final String[] o2ienabling = {"-o2i"};
+    private static final String[] hicfield = {"-hf", "hic-field"};
+    private static final String[] hostnames = {"-hn", "match-hostnames"};
+    private static final String[] recordbytes = {"-bytes", "record-bytes"};
+    private static final String[] recordconnections = {"-conn", "record-connections"};
+    private static final String[] tlsplaintext = {"-tls", "tls-plaintext"};
+    private static final String[] weaver = {"-weaver", "weaver"};
+    private static final String[] control = {"-ctl", "control"};
+    private static final String[] jmx = {"-jmx", "jmx"};
+    private static final String[] metrics = {"-metrics", "metrics-address"};
+    private static final String[] collector = {"-collector", "collector-address"};
+    private static final String[] logrotatesize = {"-logsize", "log-rotate-size"};
+    private static final String[] logrotatetime = {"-logtime", "log-rotate-time"};
+    private static final String[] logcompress = {"-logzip", "log-compress"};
+    private static final String[] logbudget = {"-logbudget", "log-disk-budget"};
+    private static final String[] lowestlatency = {"-lowest", "lowest-trackable-latency"};
+    private static final String[] highestlatency = {"-highest", "highest-trackable-latency"};
+    private static final String[] digits = {"-digits", "significant-digits"};
+    private static final String[] estimatorwindow = {"-window", "interval-estimator-window"};
+    private static final String[] estimatortimecap = {"-timecap", "interval-estimator-time-cap"};
+    private static final String[] pausesleep = {"-pausesleep", "pause-detector-sleep"};
+    private static final String[] pausethreshold = {"-pause", "pause-threshold"};
+    private static final String[] pausethreads = {"-pausethreads", "pause-detector-threads"};
+    private static final String[] loguncorrected = {"-raw", "log-uncorrected"};
+    private static final String[] sampleconnections = {"-sampleconn", "sample-connections"};
+    private static final String[] sampleoperations = {"-sampleops", "sample-operations"};
+    private static final String[] samplebudget = {"-samplebudget", "sample-budget"};
+    private static final String[] overhead = {"-overhead", "self-measurement"};
+    private static final String[] framer = {"-framer", "message-framer"};
+    private static final String[] pipeline = {"-pipeline", "pipeline-depth"};
+    private static final String[] endpointkey = {"-key", "endpoint-key"};
+    private static final String[] endpointmaxkeys = {"-maxkeys", "endpoint-max-keys"};
+    private static final String[] endpointidle = {"-keyidle", "endpoint-idle-time"};
 
     private static boolean hasKey(String[] list, String key) {
         for (String s : list) {
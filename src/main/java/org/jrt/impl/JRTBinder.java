@@ -0,0 +1,106 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.instrument.Instrumentation;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import javassist.ClassPool;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates per jRT instance holder class with single static final field:
+ *
+ *     public static final JRT jRT = (JRT) JRT.jRTWorkers.get("<uuid>");
+ *
+ * and puts it to bootstrap class loader search path, so instrumented JDK
+ * classes can reach their jRT by one static field load, which JIT treats
+ * as constant, instead of jRTWorkers lookup on every I/O operation.
+ * The class is generated with ASM, so Javassist isn't loaded unless
+ * there is code to compile by Transformer.
+ */
+public class JRTBinder {
+
+    private static final String binding_package = "org.jrt.impl.binding";
+    private static int bindings = 0;
+
+    /**
+     * @param javassist make the class visible for code compiled by Transformer
+     * @return name of the holder class or null if it couldn't be generated
+     */
+    public static synchronized String bind(JRT jRT, Instrumentation instrumentation, boolean javassist) {
+        String uuid = jRT.configuration.uuid;
+        String className = binding_package + ".JRT" + (++bindings) + "_"
+                + uuid.replaceAll("[^A-Za-z0-9_]", "_");
+
+        try {
+            byte[] b = holderClass(className.replace('.', '/'), uuid);
+
+            File jar = File.createTempFile("jRT-binding-", ".jar");
+            jar.deleteOnExit();
+            JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+            try {
+                out.putNextEntry(new JarEntry(className.replace('.', '/') + ".class"));
+                out.write(b);
+                out.closeEntry();
+            } finally {
+                out.close();
+            }
+
+            instrumentation.appendToBootstrapClassLoaderSearch(new JarFile(jar));
+            if (javassist) {
+                ClassPool.getDefault().insertClassPath(jar.getPath());
+            }
+
+            return className;
+        } catch (Exception e) {
+            System.err.println("Could not generate jRT binding class " + className +
+                    ", falling back to jRTWorkers lookup: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @param internalName f.e. org/jrt/impl/binding/JRT1_x
+     * @return class file of the holder class of jRT with uuid (benchmarks
+     * load it by their own class loader)
+     */
+    public static byte[] holderClass(String internalName, String uuid) {
+        String jrt = Type.getInternalName(JRT.class);
+        String jrtDesc = Type.getDescriptor(JRT.class);
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+                internalName, null, "java/lang/Object", null);
+
+        FieldVisitor fv = cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL,
+                "jRT", jrtDesc, null, null);
+        fv.visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+        mv.visitCode();
+        mv.visitFieldInsn(Opcodes.GETSTATIC, jrt, "jRTWorkers", "Ljava/util/concurrent/ConcurrentHashMap;");
+        mv.visitLdcInsn(uuid);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/util/concurrent/ConcurrentHashMap", "get",
+                "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, jrt);
+        mv.visitFieldInsn(Opcodes.PUTSTATIC, internalName, "jRT", jrtDesc);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import javax.management.ObjectName;
+import org.HdrHistogram.Histogram;
+
+/**
+ * JRTControlMBean of a jRT instance. Changes are made on a copy of the
+ * configuration which is published by replacing JRT.configuration, so 
+ * probes never wait for a lock and always see a consistent one; writers 
+ * are serialized by this object.
+ */
+public class JRTControl implements JRTControlMBean {
+
+    private final JRT jRT;
+
+    public JRTControl(JRT jRT) {
+        this.jRT = jRT;
+    }
+
+    public static ObjectName objectName(JRT jRT) throws Exception {
+        return new ObjectName("org.jrt:type=JRT,id=" + ObjectName.quote(jRT.configuration.uuid));
+    }
+
+    public static void register(JRT jRT) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new JRTControl(jRT), objectName(jRT));
+        } catch (Exception e) {
+            System.err.println("Could not register jRT MBean: " + e);
+        }
+    }
+
+    public static void unregister(JRT jRT) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(jRT));
+        } catch (Exception e) {
+            // not registered
+        }
+    }
+
+    @Override
+    public String getUuid() {
+        return jRT.configuration.uuid;
+    }
+
+    @Override
+    public String getLogPrefix() {
+        return jRT.configuration.logPrefix;
+    }
+
+    @Override
+    public boolean isStarted() {
+        return jRT.woven;
+    }
+
+    @Override
+    public void start() {
+        jRT.enable();
+    }
+
+    @Override
+    public void stop() {
+        jRT.disable();
+    }
+
+    @Override
+    public String getMode() {
+        return jRT.configuration.getMode();
+    }
+
+    @Override
+    public synchronized void setMode(String mode) {
+        Configuration c = jRT.configuration.copy();
+        if (!c.setMode(mode)) {
+            throw new IllegalArgumentException("Mode expects one of i2o, o2i, both. But " + mode + " has been got.");
+        }
+        jRT.configuration = c;
+    }
+
+    @Override
+    public long getLogWriterInterval() {
+        return jRT.configuration.logWriterInterval;
+    }
+
+    @Override
+    public synchronized void setLogWriterInterval(long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Log interval must be positive, " + interval + " has been got.");
+        }
+        Configuration c = jRT.configuration.copy();
+        c.logWriterInterval = interval;
+        jRT.configuration = c;
+    }
+
+    @Override
+    public String[] getFilterEntries() {
+        Configuration c = jRT.configuration;
+        String[] entries = new String[c.filterEntries.size()];
+        for (int i = 0; i < entries.length; ++i) {
+            entries[i] = c.filterEntries.get(i).getLabel();
+        }
+        return entries;
+    }
+
+    @Override
+    public synchronized void addFilterEntry(String entry) {
+        Configuration.IOFilterEntry e = Configuration.IOFilterEntry.parse(entry);
+        if (null == e) {
+            throw new IllegalArgumentException("Filter entry expects <Local port>:<Remote address>:<Remote port>. But " + entry + " has been got.");
+        }
+        Configuration c = jRT.configuration.copy();
+        c.filterEntries.add(e);
+        publishFilter(c);
+    }
+
+    @Override
+    public synchronized boolean removeFilterEntry(String entry) {
+        Configuration.IOFilterEntry e = Configuration.IOFilterEntry.parse(entry);
+        if (null == e) {
+            return false;
+        }
+        Configuration c = jRT.configuration.copy();
+        for (Iterator<Configuration.IOFilterEntry> it = c.filterEntries.iterator(); it.hasNext();) {
+            if (it.next().getLabel().equals(e.getLabel())) {
+                it.remove();
+                publishFilter(c);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void publishFilter(Configuration c) {
+        // compiled before publishing, throws on wrong address/port
+        c.compileFilter();
+        jRT.configuration = c;
+    }
+
+    @Override
+    public long getProcessedSockets() {
+        return jRT.jrtStat.processedSocket;
+    }
+
+    @Override
+    public long getI2oRecorded() {
+        return jRT.jrtStat.i2oRecorded;
+    }
+
+    @Override
+    public long getO2iRecorded() {
+        return jRT.jrtStat.o2iRecorded;
+    }
+
+    @Override
+    public long getI2oIntervalCount() {
+        Histogram h = jRT.i2oInterval;
+        return null == h ? 0 : h.getTotalCount();
+    }
+
+    @Override
+    public long getO2iIntervalCount() {
+        Histogram h = jRT.o2iInterval;
+        return null == h ? 0 : h.getTotalCount();
+    }
+
+    @Override
+    public long getI2oIntervalMax() {
+        Histogram h = jRT.i2oInterval;
+        return null == h ? 0 : h.getMaxValue();
+    }
+
+    @Override
+    public long getO2iIntervalMax() {
+        Histogram h = jRT.o2iInterval;
+        return null == h ? 0 : h.getMaxValue();
+    }
+
+    @Override
+    public long getI2oValueAtPercentile(double percentile) {
+        Histogram h = jRT.i2oInterval;
+        return null == h ? 0 : h.getValueAtPercentile(percentile);
+    }
+
+    @Override
+    public long getO2iValueAtPercentile(double percentile) {
+        Histogram h = jRT.o2iInterval;
+        return null == h ? 0 : h.getValueAtPercentile(percentile);
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+/**
+ * Management interface of a jRT instance (-jmx=true), registered as
+ * org.jrt:type=JRT,id=<uuid>. Latencies are in nanoseconds, as in logs.
+ */
+public interface JRTControlMBean {
+
+    public String getUuid();
+
+    public String getLogPrefix();
+
+    /**
+     * @return true if probes are woven, see JRT.enable()/disable()
+     */
+    public boolean isStarted();
+
+    public void start();
+
+    public void stop();
+
+    /**
+     * @return one of i2o, o2i, both
+     */
+    public String getMode();
+
+    public void setMode(String mode);
+
+    public long getLogWriterInterval();
+
+    public void setLogWriterInterval(long interval);
+
+    /**
+     * @return entries as <Local port>:<Remote address>:<Remote port>
+     */
+    public String[] getFilterEntries();
+
+    /**
+     * Filter entries are applied to sockets opened after the change.
+     */
+    public void addFilterEntry(String entry);
+
+    /**
+     * @return false if there is no such entry
+     */
+    public boolean removeFilterEntry(String entry);
+
+    public long getProcessedSockets();
+
+    public long getI2oRecorded();
+
+    public long getO2iRecorded();
+
+    public long getI2oIntervalCount();
+
+    public long getO2iIntervalCount();
+
+    public long getI2oIntervalMax();
+
+    public long getO2iIntervalMax();
+
+    /**
+     * @return value at percentile (0..100) of the last i2o interval
+     */
+    public long getI2oValueAtPercentile(double percentile);
+
+    public long getO2iValueAtPercentile(double percentile);
+}
@@ -6,8 +6,50 @@
  */
 package org.jrt.impl;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class JRTStatistic {
     public long processedSocket;
+    //initializeJRTHic calls and ones rejected by socket filter (a socket
+    //can be checked once per stream)
+    public long registrations;
+    public long filteredSocket;
+    //probe calls, counted with -overhead only, and their estimated time
+    //(ns) including registrations, see Overhead
+    public final StripedCounter probeCalls = new StripedCounter();
+    public long probeTime;
+    //time LogWriter spent on intervals (ns), total and the longest one
+    public long logWriterTime;
+    public long maxLogWriterTime;
+    //sockets passed the filter but not measured by -sampleconn and
+    //latencies not recorded over -samplebudget (approximately, counted
+    //once a second by each thread)
+    public long unsampledSocket;
+    public final AtomicLong overBudget = new AtomicLong();
+    //latencies recorded without pause correction, updated by LogWriter
+    public long i2oRecorded;
+    public long o2iRecorded;
+    public long tlsI2oRecorded;
+    public long tlsO2iRecorded;
+    public long handshakesRecorded;
+    //outstanding reads/writes dropped because pipeline queue was full
+    public final AtomicLong pipelineOverflows = new AtomicLong();
+    //time spent by instrument() and number of loaded classes retransformed by it
+    public long instrumentTime;
+    public int retransformedClasses;
+    //intervals written by LogWriter, ones it woke up for late and the
+    //longest delay of wake up (ms)
+    public long intervals;
+    public long lateWakeups;
+    public long maxWakeupDelay;
+    //log segments rotated, compressed and deleted over disk budget
+    public long rotatedLogs;
+    public volatile long compressedLogs;
+    public volatile long deletedLogs;
+    //interval histograms pushed to collector and ones failed to (too large
+    //for a datagram or not sent)
+    public long pushedIntervals;
+    public long unpushedIntervals;
     public long startTime;
     public long endTime;
 }
@@ -0,0 +1,138 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses log segments rotated by RotatingLog (-logzip) and keeps logs
+ * of the log prefix within disk budget (-logbudget) by deleting the oldest
+ * segments; active logs are never deleted. Runs in its own thread, so slow
+ * or full disk delays only compression, neither LogWriter nor probes.
+ */
+public class LogCompressor extends Thread {
+
+    private final JRT jRT;
+    private final LinkedBlockingQueue<File> rotated = new LinkedBlockingQueue<File>();
+
+    public LogCompressor(JRT jRT) {
+        setDaemon(true);
+        setName("jRT log compressor");
+        this.jRT = jRT;
+    }
+
+    /**
+     * Queues rotated segment, starts the thread on the first one.
+     */
+    public synchronized void rotated(File segment) {
+        rotated.add(segment);
+        if (State.NEW == getState()) {
+            start();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                File segment = rotated.take();
+                if (jRT.configuration.logCompress) {
+                    compress(segment);
+                }
+                if (jRT.configuration.logDiskBudget > 0) {
+                    enforceBudget(segment.getAbsoluteFile().getParentFile());
+                }
+            }
+        } catch (InterruptedException e) {
+            // exit
+        }
+    }
+
+    private void compress(File segment) {
+        File gz = new File(segment.getPath() + ".gz");
+        try {
+            InputStream in = new FileInputStream(segment);
+            try {
+                OutputStream out = new GZIPOutputStream(new FileOutputStream(gz));
+                try {
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // f.e. disk is full, the segment stays uncompressed
+            System.err.println("jRT could not compress " + segment + ": " + e);
+            gz.delete();
+            return;
+        }
+        gz.setLastModified(segment.lastModified());
+        segment.delete();
+        ++jRT.jrtStat.compressedLogs;
+    }
+
+    /**
+     * Deletes the oldest segments of the log prefix while all its logs
+     * take more than the budget.
+     */
+    private void enforceBudget(File dir) {
+        String base = new File(jRT.configuration.logPrefix).getName() + ".";
+        Pattern segment = Pattern.compile(Pattern.quote(base) + ".*\\.\\d+\\.hlog(\\.gz)?");
+        File[] files = dir.listFiles();
+        if (null == files) {
+            return;
+        }
+
+        long total = 0;
+        List<File> segments = new ArrayList<File>();
+        for (File f : files) {
+            if (f.getName().startsWith(base)) {
+                total += f.length();
+                if (segment.matcher(f.getName()).matches()) {
+                    segments.add(f);
+                }
+            }
+        }
+        Collections.sort(segments, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long ma = a.lastModified();
+                long mb = b.lastModified();
+                return ma != mb ? (ma < mb ? -1 : 1) : a.getName().compareTo(b.getName());
+            }
+        });
+
+        for (File f : segments) {
+            if (total <= jRT.configuration.logDiskBudget) {
+                break;
+            }
+            long length = f.length();
+            if (f.delete()) {
+                total -= length;
+                ++jRT.jrtStat.deletedLogs;
+            }
+        }
+    }
+}
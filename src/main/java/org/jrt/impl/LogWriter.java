@@ -8,14 +8,32 @@ package org.jrt.impl;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.HdrHistogram.Histogram;
 import org.HdrHistogram.HistogramLogWriter;
+import org.LatencyUtils.LatencyStats;
 
 public class LogWriter extends Thread {
 
     private final JRT jRT;
+    //null unless -metrics is specified
+    private MetricsServer metrics;
+    //null unless -collector is specified
+    private CollectorClient collector;
+    //null unless -overhead is specified
+    private Overhead overhead;
+    //scheduled bounds of the interval being written, ms since epoch
+    private long intervalStart;
+    private long intervalEnd;
+    //opened/closed connections at the end of previous interval
+    private long lastOpened;
+    private long lastClosed;
+    private long lastFailed;
     
     public LogWriter(JRT jRT) {
         setDaemon(true);
@@ -24,58 +42,348 @@ public class LogWriter extends Thread {
 
     @Override
     public void run() {
-        HistogramLogWriter i2olog = null;
-        HistogramLogWriter o2ilog = null;
+        RotatingLog i2olog = new RotatingLog(jRT, ".i2o.hlog");
+        RotatingLog o2ilog = new RotatingLog(jRT, ".o2i.hlog");
+        RotatingLog sizelog = null == jRT.transfer ? null : new RotatingLog(jRT, ".size.hlog", RotatingLog.Sampled.NOT);
+        PrintStream byteslog = null;
+        RotatingLog connectlog = null == jRT.connections ? null : new RotatingLog(jRT, ".connect.hlog", RotatingLog.Sampled.NOT);
+        RotatingLog acceptlog = null == jRT.connections ? null : new RotatingLog(jRT, ".accept.hlog", RotatingLog.Sampled.NOT);
+        PrintStream connlog = null;
+        RotatingLog tlsi2olog = null == jRT.tlsI2oLS ? null : new RotatingLog(jRT, ".tls.i2o.hlog");
+        RotatingLog tlso2ilog = null == jRT.tlsO2iLS ? null : new RotatingLog(jRT, ".tls.o2i.hlog");
+        // handshakes of connections not sampled are not measured
+        RotatingLog handshakelog = null == jRT.handshakeLS ? null : new RotatingLog(jRT, ".handshake.hlog", RotatingLog.Sampled.CONNECTIONS);
         try {
-            if (null != jRT.i2oLS) i2olog = new HistogramLogWriter(new File(jRT.configuration.logPrefix + ".i2o.hlog"));
-            if (null != jRT.o2iLS) o2ilog = new HistogramLogWriter(new File(jRT.configuration.logPrefix + ".o2i.hlog"));
+            if (null != jRT.transfer) {
+                byteslog = new PrintStream(new File(jRT.configuration.logPrefix + ".bytes.csv"));
+            }
+            if (null != jRT.connections) {
+                connlog = new PrintStream(new File(jRT.configuration.logPrefix + ".conn.csv"));
+            }
         } catch (FileNotFoundException ex) {
             Logger.getLogger(JRT.class.getName()).log(Level.SEVERE, null, ex);
             System.exit(1);
         }
         try {
-            if (null != jRT.i2oLS) {
-                i2olog.outputLegend();
-                i2olog.outputStartTime(jRT.startTime);
+            if (null != jRT.transfer) {
+                byteslog.println("\"StartTimestamp\",\"Interval_Length\",\"In_Ops\",\"In_Bytes\",\"In_MB/s\",\"Out_Ops\",\"Out_Bytes\",\"Out_MB/s\"");
+            }
+            if (null != jRT.connections) {
+                connlog.println("\"StartTimestamp\",\"Interval_Length\",\"Opened\",\"Closed\",\"Open\",\"Failed\"");
+            }
+            
+            if (jRT.configuration.jmx) {
+                JRTControl.register(jRT);
             }
-            if (null != jRT.o2iLS) {
-                o2ilog.outputLegend();
-                o2ilog.outputStartTime(jRT.startTime);
+            
+            if (null != jRT.configuration.metricsAddress) {
+                // started here, HTTP dispatcher inherits daemon flag of this thread
+                metrics = new MetricsServer(jRT, jRT.configuration.metricsAddress);
+                try {
+                    metrics.start();
+                } catch (IOException ex) {
+                    System.err.println("Could not start metrics endpoint " + jRT.configuration.metricsAddress + ": " + ex);
+                    metrics = null;
+                }
             }
             
+            if (null != jRT.configuration.collectorAddress) {
+                try {
+                    collector = new CollectorClient(jRT, jRT.configuration.collectorAddress);
+                } catch (IOException ex) {
+                    System.err.println("Could not push to collector " + jRT.configuration.collectorAddress + ": " + ex);
+                }
+            }
+            
+            if (jRT.configuration.overhead) {
+                try {
+                    overhead = new Overhead(jRT);
+                } catch (IOException ex) {
+                    System.err.println("Could not log overhead: " + ex);
+                }
+            }
+            
+            // intervals end at multiples of interval since epoch, so they
+            // are the same in all jRTs on the host whenever they started
+            intervalStart = jRT.startTime;
+            long boundary = nextBoundary(System.currentTimeMillis(), jRT.configuration.logWriterInterval);
+            
             while ((System.currentTimeMillis() - jRT.startTime < jRT.configuration.startDelaying)) {
-                if (null != jRT.i2oLS) { Histogram intervalHistogram = jRT.i2oLS.getIntervalHistogram(); }
-                if (null != jRT.o2iLS) { Histogram intervalHistogram2 = jRT.o2iLS.getIntervalHistogram(); }
+                boundary = awake(boundary, false);
                 
-                Thread.sleep(jRT.configuration.logWriterInterval);
+                jRT.i2oLS.getIntervalHistogram();
+                jRT.o2iLS.getIntervalHistogram();
+                if (null != jRT.endpoints) { outputEndpoints(null, null); }
+                if (null != jRT.transfer) { outputTransfer(null, null); }
+                if (null != jRT.connections) { outputConnections(null, null, null); }
+                if (null != jRT.tlsI2oLS) { outputTagged(null, jRT.tlsI2oLS, null); }
+                if (null != jRT.tlsO2iLS) { outputTagged(null, jRT.tlsO2iLS, null); }
+                if (null != jRT.handshakeLS) { outputTagged(null, jRT.handshakeLS, null); }
             }
             
             while ((System.currentTimeMillis() - jRT.startTime < jRT.configuration.workingTime) && jRT.isAlive && !Thread.interrupted()) {
-                if (null != jRT.i2oLS) {
-                    Histogram intervalHistogram = jRT.i2oLS.getIntervalHistogram();
-                    intervalHistogram.setStartTimeStamp(intervalHistogram.getStartTimeStamp() - jRT.startTime);
-                    intervalHistogram.setEndTimeStamp(intervalHistogram.getEndTimeStamp() - jRT.startTime);
-                    i2olog.outputIntervalHistogram(intervalHistogram);
+                boundary = awake(boundary, true);
+                long writeStart = System.nanoTime();
+                
+                // logs of directions switched off by -mode are not written,
+                // they are opened when a direction is switched on first time
+                // and rotated between intervals
+                Configuration conf = jRT.configuration;
+                HistogramLogWriter i2o = conf.i2oEnabled ? i2olog.writer(intervalStart) : null;
+                HistogramLogWriter o2i = conf.o2iEnabled ? o2ilog.writer(intervalStart) : null;
+                
+                jRT.i2oInterval = outputTagged(i2o, jRT.i2oLS, null);
+                jRT.jrtStat.i2oRecorded += jRT.i2oLS.getLatestUncorrectedIntervalHistogram().getTotalCount();
+                addMetrics(conf.i2oEnabled, "i2o", null, jRT.i2oInterval);
+                
+                jRT.o2iInterval = outputTagged(o2i, jRT.o2iLS, null);
+                jRT.jrtStat.o2iRecorded += jRT.o2iLS.getLatestUncorrectedIntervalHistogram().getTotalCount();
+                addMetrics(conf.o2iEnabled, "o2i", null, jRT.o2iInterval);
+                
+                jRT.dropClosed();
+                
+                if (null != jRT.endpoints) {
+                    outputEndpoints(i2o, o2i);
+                }
+                
+                if (null != jRT.transfer) {
+                    outputTransfer(sizelog.writer(intervalStart), byteslog);
+                }
+                
+                if (null != jRT.connections) {
+                    outputConnections(connectlog.writer(intervalStart), acceptlog.writer(intervalStart), connlog);
                 }
                 
-                if (null != jRT.o2iLS) {
-                    Histogram intervalHistogram2 = jRT.o2iLS.getIntervalHistogram();
-                    intervalHistogram2.setStartTimeStamp(intervalHistogram2.getStartTimeStamp() - jRT.startTime);
-                    intervalHistogram2.setEndTimeStamp(intervalHistogram2.getEndTimeStamp() - jRT.startTime);
-                    o2ilog.outputIntervalHistogram(intervalHistogram2);
+                if (null != jRT.tlsI2oLS) {
+                    addMetrics(conf.i2oEnabled, "tls_i2o", null, outputTagged(conf.i2oEnabled ? tlsi2olog.writer(intervalStart) : null, jRT.tlsI2oLS, null));
+                    jRT.jrtStat.tlsI2oRecorded += jRT.tlsI2oLS.getLatestUncorrectedIntervalHistogram().getTotalCount();
+                }
+                if (null != jRT.tlsO2iLS) {
+                    addMetrics(conf.o2iEnabled, "tls_o2i", null, outputTagged(conf.o2iEnabled ? tlso2ilog.writer(intervalStart) : null, jRT.tlsO2iLS, null));
+                    jRT.jrtStat.tlsO2iRecorded += jRT.tlsO2iLS.getLatestUncorrectedIntervalHistogram().getTotalCount();
+                }
+                if (null != jRT.handshakeLS) {
+                    addMetrics(true, "handshake", null, outputTagged(handshakelog.writer(intervalStart), jRT.handshakeLS, null));
+                    jRT.jrtStat.handshakesRecorded += jRT.handshakeLS.getLatestUncorrectedIntervalHistogram().getTotalCount();
                 }
                 
-                Thread.sleep(jRT.configuration.logWriterInterval);
+                if (null != metrics) {
+                    metrics.publish();
+                }
                 
+                long writeTime = System.nanoTime() - writeStart;
+                jRT.jrtStat.logWriterTime += writeTime;
+                jRT.jrtStat.maxLogWriterTime = Math.max(jRT.jrtStat.maxLogWriterTime, writeTime);
+                if (null != overhead) {
+                    overhead.interval(intervalStart, intervalEnd, writeTime);
+                }
             }
         } catch (InterruptedException ex) {
             //Nothing to do?
         } finally {
             //Nothing to do?
             //Need to flush logs?
-            if (null != jRT.i2oLS) jRT.i2oLS.stop();
-            if (null != jRT.o2iLS) jRT.o2iLS.stop();
+            if (jRT.configuration.jmx) JRTControl.unregister(jRT);
+            if (null != metrics) metrics.stop();
+            if (null != collector) collector.close();
+            if (null != overhead) overhead.stop();
+            jRT.i2oLS.stop();
+            jRT.o2iLS.stop();
+            if (null != jRT.endpoints) jRT.endpoints.stop();
+            i2olog.close();
+            o2ilog.close();
+            if (null != tlsi2olog) tlsi2olog.close();
+            if (null != tlso2ilog) tlso2ilog.close();
+            if (null != handshakelog) handshakelog.close();
+            if (null != sizelog) sizelog.close();
+            if (null != acceptlog) acceptlog.close();
+            if (null != connectlog) connectlog.close();
+            if (null != byteslog) byteslog.close();
+            if (null != jRT.connections) jRT.connections.stop();
+            if (null != connlog) connlog.close();
+            if (null != jRT.tlsI2oLS) jRT.tlsI2oLS.stop();
+            if (null != jRT.tlsO2iLS) jRT.tlsO2iLS.stop();
+            if (null != jRT.handshakeLS) jRT.handshakeLS.stop();
+        }
+    }
+    
+    /**
+     * @return the first multiple of interval after time
+     */
+    static long nextBoundary(long time, long interval) {
+        return (time / interval + 1) * interval;
+    }
+    
+    /**
+     * Sleeps until boundary (fixed rate, time spent on writing doesn't shift
+     * intervals) and sets bounds of the interval to write. Wake up later
+     * than a tenth of interval is counted as late; the interval then ends 
+     * at the last boundary passed, so missed ones are merged into it.
+     * 
+     * @param logged whether the interval is written, intervals drained
+     * during -start delay are not counted in statistic
+     * @return the next boundary
+     */
+    private long awake(long boundary, boolean logged) throws InterruptedException {
+        long now;
+        while ((now = System.currentTimeMillis()) < boundary) {
+            Thread.sleep(boundary - now);
+        }
+        long interval = jRT.configuration.logWriterInterval;
+        long delay = now - boundary;
+        if (logged) {
+            if (delay > interval / 10) {
+                ++jRT.jrtStat.lateWakeups;
+            }
+            jRT.jrtStat.maxWakeupDelay = Math.max(jRT.jrtStat.maxWakeupDelay, delay);
+            ++jRT.jrtStat.intervals;
+        }
+        
+        intervalStart = intervalEnd == 0 ? intervalStart : intervalEnd;
+        intervalEnd = Math.max(boundary, now - now % interval);
+        return nextBoundary(now, interval);
+    }
+    
+    /**
+     * Sets scheduled interval bounds (relative to jRT start) to histogram.
+     */
+    private void stamp(Histogram h) {
+        h.setStartTimeStamp(intervalStart - jRT.startTime);
+        h.setEndTimeStamp(intervalEnd - jRT.startTime);
+    }
+    
+    /**
+     * Writes interval histograms of every endpoint tagged by its key, 
+     * or just drops them if logs are null.
+     */
+    private void outputEndpoints(HistogramLogWriter i2olog, HistogramLogWriter o2ilog) {
+        jRT.endpoints.reregister(jRT.sockRTs.values());
+        jRT.endpoints.evictIdle();
+        List<EndpointStats> endpoints = jRT.endpoints.snapshot();
+        for (EndpointStats e : endpoints) {
+            if (null != e.i2oLS) addMetrics(null != i2olog, "i2o", e.key, outputTagged(i2olog, e.i2oLS, e.key));
+            if (null != e.o2iLS) addMetrics(null != o2ilog, "o2i", e.key, outputTagged(o2ilog, e.o2iLS, e.key));
+        }
+        jRT.endpoints.drainEvicted(endpoints);
+    }
+    
+    /**
+     * Writes interval histograms of read/write sizes tagged "in"/"out" and
+     * interval byte counters on the same timeline, or just drops them if
+     * logs are null (histograms alone if sizelog couldn't be opened).
+     */
+    private void outputTransfer(HistogramLogWriter sizelog, PrintStream byteslog) {
+        TransferStats t = jRT.transfer;
+        Histogram in = t.inSizes.getIntervalHistogram();
+        Histogram out = t.outSizes.getIntervalHistogram();
+        long inBytes = t.inBytes.getAndSet(0);
+        long outBytes = t.outBytes.getAndSet(0);
+        
+        long start = intervalStart - jRT.startTime;
+        long end = intervalEnd - jRT.startTime;
+        if (null != sizelog) {
+            stamp(in);
+            stamp(out);
+            in.setTag("in");
+            out.setTag("out");
+            sizelog.outputIntervalHistogram(in);
+            sizelog.outputIntervalHistogram(out);
+        }
+        
+        if (null == byteslog) {
+            return;
+        }
+        double seconds = Math.max(end - start, 1) / 1000.0;
+        byteslog.printf(Locale.US, "%.3f,%.3f,%d,%d,%.3f,%d,%d,%.3f%n",
+                start / 1000.0, (end - start) / 1000.0,
+                in.getTotalCount(), inBytes, inBytes / seconds / (1024 * 1024),
+                out.getTotalCount(), outBytes, outBytes / seconds / (1024 * 1024));
+        byteslog.flush();
+    }
+    
+    /**
+     * Writes interval histograms of connect/accept durations (failed 
+     * connects tagged "failed") and counters of opened/closed connections,
+     * or just drops them if logs are null (histograms alone if their log
+     * couldn't be opened).
+     */
+    private void outputConnections(HistogramLogWriter connectlog, HistogramLogWriter acceptlog, PrintStream connlog) {
+        ConnectionStats c = jRT.connections;
+        Histogram connects = c.connectLS.getIntervalHistogram();
+        Histogram accepts = c.acceptLS.getIntervalHistogram();
+        long opened = c.opened.get();
+        long closed = c.closed.get();
+        long failed = c.failed.get();
+        
+        long start = intervalStart - jRT.startTime;
+        long end = intervalEnd - jRT.startTime;
+        if (null != connectlog) {
+            stamp(connects);
+            connectlog.outputIntervalHistogram(connects);
+            outputUncorrected(connectlog, c.connectLS, null);
+        }
+        outputTagged(connectlog, c.connectFailedLS, "failed");
+        if (null != acceptlog) {
+            stamp(accepts);
+            acceptlog.outputIntervalHistogram(accepts);
+            outputUncorrected(acceptlog, c.acceptLS, null);
+        }
+        
+        if (null != connlog) {
+            connlog.printf(Locale.US, "%.3f,%.3f,%d,%d,%d,%d%n",
+                    start / 1000.0, (end - start) / 1000.0,
+                    opened - lastOpened, closed - lastClosed, opened - closed, failed - lastFailed);
+            connlog.flush();
+        }
+        lastOpened = opened;
+        lastClosed = closed;
+        lastFailed = failed;
+    }
+    
+    /**
+     * Writes interval histogram tagged by tag (or untagged if tag is null), 
+     * and with -raw its uncorrected histogram tagged raw (raw:<tag>), or
+     * just drops them if log is null.
+     * 
+     * @return the interval histogram
+     */
+    private Histogram outputTagged(HistogramLogWriter log, LatencyStats ls, String tag) {
+        Histogram intervalHistogram = ls.getIntervalHistogram();
+        if (null == log) {
+            return intervalHistogram;
+        }
+        stamp(intervalHistogram);
+        intervalHistogram.setTag(tag);
+        log.outputIntervalHistogram(intervalHistogram);
+        outputUncorrected(log, ls, tag);
+        return intervalHistogram;
+    }
+    
+    /**
+     * Writes uncorrected histogram of the interval just taken from ls 
+     * tagged raw (raw:<tag>) if -raw is specified.
+     */
+    private void outputUncorrected(HistogramLogWriter log, LatencyStats ls, String tag) {
+        if (!jRT.configuration.logUncorrected) {
+            return;
+        }
+        Histogram uncorrected = ls.getLatestUncorrectedIntervalHistogram();
+        stamp(uncorrected);
+        uncorrected.setTag(null == tag ? "raw" : "raw:" + tag);
+        log.outputIntervalHistogram(uncorrected);
+    }
+    
+    /**
+     * Passes interval histogram of an enabled direction to metrics endpoint
+     * and collector, if any.
+     */
+    private void addMetrics(boolean enabled, String direction, String key, Histogram intervalHistogram) {
+        if (null != metrics && enabled) {
+            metrics.add(direction, key, intervalHistogram);
+        }
+        if (null != collector && enabled) {
+            collector.push(direction, key, intervalHistogram, intervalStart, intervalEnd);
         }
     }
     
-}
+}
\ No newline at end of file
@@ -0,0 +1,230 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.HdrHistogram.Histogram;
+
+/**
+ * OpenMetrics (Prometheus) scrape endpoint, -metrics=[<host>:]<port>.
+ *
+ * LogWriter passes every interval histogram it writes to add() and calls
+ * publish() at the end of the interval, which renders the text exposition
+ * once; scrapes only copy the last rendered bytes, so they never touch
+ * LatencyStats and cost the same however often they come.
+ *
+ * Every direction (and endpoint key, see -key) is a summary: quantiles
+ * of the last completed interval (quantile 1 is its max), _count and _sum
+ * accumulated over all intervals since start. Values are corrected for
+ * pauses like the logged histograms and are in seconds.
+ *
+ * com.sun.net.httpserver is used by reflection: since JDK 9 it is in
+ * jdk.httpserver module which classes on bootstrap search path (jRT) can't
+ * link to, it's loaded by system class loader instead.
+ */
+public class MetricsServer {
+
+    private static final String OPENMETRICS = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    private static final String TEXT = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999, 1.0};
+    private static final double NANOS = 1000000000.0;
+
+    private final JRT jRT;
+    private final InetSocketAddress address;
+    private Object server;
+    private Method stop;
+    //com.sun.net.httpserver.HttpExchange methods
+    private Method getRequestHeaders;
+    private Method getResponseHeaders;
+    private Method sendResponseHeaders;
+    private Method getResponseBody;
+
+    //series of the current interval and totals by series labels, LogWriter thread only
+    private final Map<String, Histogram> interval = new LinkedHashMap<String, Histogram>();
+    private final Map<String, long[]> counts = new LinkedHashMap<String, long[]>();
+    private final Map<String, double[]> sums = new LinkedHashMap<String, double[]>();
+
+    private volatile byte[] snapshot;
+
+    /**
+     * @param address [<host>:]<port>, all interfaces if host is omitted
+     */
+    public MetricsServer(JRT jRT, String address) {
+        this.jRT = jRT;
+        this.address = parseAddress(address);
+        this.snapshot = render();
+    }
+
+    /**
+     * @throws IllegalArgumentException if address has wrong format
+     */
+    public static InetSocketAddress parseAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        try {
+            int port = Integer.parseInt(address.substring(colon + 1));
+            return colon < 0 ? new InetSocketAddress(port)
+                    : new InetSocketAddress(address.substring(0, colon), port);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Wrong metrics address " + address + ", expects [<host>:]<port>");
+        }
+    }
+
+    /**
+     * Must be called from a daemon thread: HTTP dispatcher thread inherits
+     * it, so the endpoint doesn't keep the VM alive.
+     */
+    public void start() throws IOException {
+        try {
+            ClassLoader loader = ClassLoader.getSystemClassLoader();
+            Class<?> serverClass = Class.forName("com.sun.net.httpserver.HttpServer", true, loader);
+            Class<?> handlerClass = Class.forName("com.sun.net.httpserver.HttpHandler", true, loader);
+            Class<?> exchangeClass = Class.forName("com.sun.net.httpserver.HttpExchange", true, loader);
+            getRequestHeaders = exchangeClass.getMethod("getRequestHeaders");
+            getResponseHeaders = exchangeClass.getMethod("getResponseHeaders");
+            sendResponseHeaders = exchangeClass.getMethod("sendResponseHeaders", int.class, long.class);
+            getResponseBody = exchangeClass.getMethod("getResponseBody");
+            stop = serverClass.getMethod("stop", int.class);
+            
+            Object handler = Proxy.newProxyInstance(loader, new Class<?>[] {handlerClass}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("handle".equals(method.getName())) {
+                        handle(args[0]);
+                        return null;
+                    } else if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    } else if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    }
+                    return "jRT metrics";
+                }
+            });
+            
+            server = serverClass.getMethod("create", InetSocketAddress.class, int.class).invoke(null, address, 0);
+            serverClass.getMethod("createContext", String.class, handlerClass).invoke(server, "/metrics", handler);
+            serverClass.getMethod("start").invoke(server);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    public void stop() {
+        if (null != server) {
+            try {
+                stop.invoke(server, 0);
+            } catch (Exception e) {
+                // already stopped
+            }
+        }
+    }
+
+    /**
+     * Adds interval histogram of a direction (i2o, o2i, tls_i2o, tls_o2i,
+     * handshake), key is endpoint key or null for the overall one.
+     */
+    public void add(String direction, String key, Histogram histogram) {
+        String labels = "jrt=\"" + escape(jRT.configuration.uuid) + "\",direction=\"" + direction + "\""
+                + (null == key ? "" : ",key=\"" + escape(key) + "\"");
+        interval.put(labels, histogram);
+        long[] count = counts.get(labels);
+        if (null == count) {
+            counts.put(labels, count = new long[1]);
+            sums.put(labels, new double[1]);
+        }
+        count[0] += histogram.getTotalCount();
+        sums.get(labels)[0] += histogram.getMean() * histogram.getTotalCount() / NANOS;
+    }
+
+    /**
+     * Renders intervals added since the last publish() for scrapes. Series
+     * which got no interval (evicted endpoints, directions switched off by
+     * -mode) are dropped.
+     */
+    public void publish() {
+        counts.keySet().retainAll(interval.keySet());
+        sums.keySet().retainAll(interval.keySet());
+        snapshot = render();
+        interval.clear();
+    }
+
+    private byte[] render() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# TYPE jrt_latency_seconds summary\n");
+        sb.append("# UNIT jrt_latency_seconds seconds\n");
+        sb.append("# HELP jrt_latency_seconds Response times, quantiles of the last interval.\n");
+        for (Map.Entry<String, long[]> e : counts.entrySet()) {
+            String labels = e.getKey();
+            Histogram h = interval.get(labels);
+            for (double q : QUANTILES) {
+                double value = null == h || h.getTotalCount() == 0 ? Double.NaN
+                        : (q == 1.0 ? h.getMaxValue() : h.getValueAtPercentile(q * 100)) / NANOS;
+                sb.append("jrt_latency_seconds{").append(labels).append(",quantile=\"").append(q).append("\"} ")
+                        .append(format(value)).append('\n');
+            }
+            sb.append("jrt_latency_seconds_count{").append(labels).append("} ").append(e.getValue()[0]).append('\n');
+            sb.append("jrt_latency_seconds_sum{").append(labels).append("} ").append(format(sums.get(labels)[0])).append('\n');
+        }
+        sb.append("# TYPE jrt_sockets counter\n");
+        sb.append("# HELP jrt_sockets Sockets matched by filters.\n");
+        sb.append("jrt_sockets_total{jrt=\"").append(escape(jRT.configuration.uuid)).append("\"} ")
+                .append(jRT.jrtStat.processedSocket).append('\n');
+        sb.append("# TYPE jrt_late_intervals counter\n");
+        sb.append("# HELP jrt_late_intervals Intervals jRT log writer woke up for late.\n");
+        sb.append("jrt_late_intervals_total{jrt=\"").append(escape(jRT.configuration.uuid)).append("\"} ")
+                .append(jRT.jrtStat.lateWakeups).append('\n');
+        sb.append("# EOF\n");
+        try {
+            return sb.toString().getBytes("UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? "NaN" : String.format(Locale.US, "%.9g", value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * HttpHandler.handle(HttpExchange), Headers are Map<String, List<String>>.
+     */
+    @SuppressWarnings("unchecked")
+    private void handle(Object exchange) throws Throwable {
+        byte[] body = snapshot;
+        try {
+            List<String> accept = ((Map<String, List<String>>) getRequestHeaders.invoke(exchange)).get("Accept");
+            boolean openMetrics = null != accept && accept.toString().contains("application/openmetrics-text");
+            ((Map<String, List<String>>) getResponseHeaders.invoke(exchange)).put("Content-Type",
+                    Collections.singletonList(openMetrics ? OPENMETRICS : TEXT));
+            sendResponseHeaders.invoke(exchange, 200, (long) body.length);
+            OutputStream out = (OutputStream) getResponseBody.invoke(exchange);
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
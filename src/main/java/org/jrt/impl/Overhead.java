@@ -0,0 +1,141 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.util.Locale;
+import org.jrt.socket.api.JRTHic;
+import org.jrt.socket.regular.Accumulator;
+
+/**
+ * Self-measurement of jRT (-overhead): probe calls are counted by
+ * Accumulator, their cost is calibrated every interval by running the
+ * same probes (write/read pairs and socket registrations) against a
+ * private, not started jRT with a copy of the configuration, so probes
+ * themselves are not timed. Estimated probe time of an interval is its
+ * probe calls times calibrated cost.
+ *
+ * Written by LogWriter to <log prefix>.overhead.csv, one line per interval.
+ */
+public class Overhead {
+
+    private static final int PROBES = 1000;
+    private static final int REGISTRATIONS = 100;
+
+    private final JRT jRT;
+    private final JRT calibration;
+    private final JRTHic hic;
+    private final byte[] message = new byte[64];
+    private final Object[] sockets = new Object[REGISTRATIONS];
+    private final InetAddress loopback;
+    private final PrintStream log;
+
+    //counters at the end of previous interval
+    private long lastProbes;
+    private long lastRegistrations;
+    private long lastFiltered;
+
+    public Overhead(JRT jRT) throws IOException {
+        this.jRT = jRT;
+        Configuration conf = jRT.configuration.copy();
+        conf.overhead = false;
+        conf.i2oEnabled = true;
+        conf.o2iEnabled = true;
+        conf.sampleConnections = 1;
+        conf.sampleOperations = 1;
+        conf.sampleBudget = 0;
+        // copy() shares the filter and its cache with the agent
+        conf.compileFilter();
+        calibration = new JRT(conf);
+        calibration.jrtStat = new JRTStatistic();
+        calibration.sampling = new Sampling(calibration);
+        calibration.i2oLS = jRT.newLatencyStats();
+        calibration.o2iLS = jRT.newLatencyStats();
+
+        hic = new JRTHic(conf.pipelineDepth);
+        if (null != conf.framerFactory) {
+            hic.setFramers(conf.framerFactory.newFramer(true), conf.framerFactory.newFramer(false));
+        }
+        for (int i = 0; i < sockets.length; ++i) {
+            sockets[i] = new Object();
+        }
+        loopback = InetAddress.getByName(null);
+
+        log = new PrintStream(new File(jRT.configuration.logPrefix + ".overhead.csv"));
+        log.println("\"StartTimestamp\",\"Interval_Length\",\"Probe_Calls\",\"Probe_ns\",\"Registrations\",\"Registration_ns\","
+                + "\"Filtered\",\"Sockets\",\"Probe_ms\",\"LogWriter_ms\",\"Calibration_ms\"");
+    }
+
+    /**
+     * @return ns per probe call, a write/read pair is 4 of them
+     */
+    private double calibrateProbes() {
+        long start = System.nanoTime();
+        for (int i = 0; i < PROBES; ++i) {
+            Accumulator.putTimestampWriteBefore(calibration, hic);
+            Accumulator.putTimestampWriteAfter(calibration, hic, message, 0, message.length);
+            Accumulator.putTimestampReadBefore(calibration, hic);
+            Accumulator.putTimestampReadAfter(calibration, hic, message, 0, message.length);
+        }
+        return (System.nanoTime() - start) / (4.0 * PROBES);
+    }
+
+    /**
+     * @return ns per socket registration (filter included)
+     */
+    private double calibrateRegistrations() {
+        // sockets of the same peer again would be answered by filter cache
+        calibration.configuration.compileFilter();
+        long start = System.nanoTime();
+        for (int i = 0; i < REGISTRATIONS; ++i) {
+            Accumulator.initializeJRTHic(calibration, sockets[i], loopback, 1024 + i, 0);
+        }
+        long time = System.nanoTime() - start;
+        calibration.sockRTs.clear();
+        return time / (double) REGISTRATIONS;
+    }
+
+    /**
+     * Calibrates probes and logs the interval.
+     *
+     * @param start interval start, ms since epoch
+     * @param end interval end, ms since epoch
+     * @param writerTime time LogWriter spent on the interval, ns
+     */
+    public void interval(long start, long end, long writerTime) {
+        long calibrationStart = System.nanoTime();
+        double probeCost = calibrateProbes();
+        double registrationCost = calibrateRegistrations();
+        long calibrationTime = System.nanoTime() - calibrationStart;
+
+        JRTStatistic stat = jRT.jrtStat;
+        long probes = stat.probeCalls.sum() - lastProbes;
+        long registrations = stat.registrations - lastRegistrations;
+        long filtered = stat.filteredSocket - lastFiltered;
+        lastProbes += probes;
+        lastRegistrations += registrations;
+        lastFiltered += filtered;
+        long probeTime = (long) (probes * probeCost + registrations * registrationCost);
+        stat.probeTime += probeTime;
+
+        log.printf(Locale.US, "%.3f,%.3f,%d,%.1f,%d,%.1f,%d,%d,%.3f,%.3f,%.3f%n",
+                (start - jRT.startTime) / 1000.0, (end - start) / 1000.0,
+                probes, probeCost, registrations, registrationCost,
+                filtered, jRT.sockRTs.size(), probeTime / 1000000.0,
+                writerTime / 1000000.0, calibrationTime / 1000000.0);
+        log.flush();
+    }
+
+    public void stop() {
+        calibration.i2oLS.stop();
+        calibration.o2iLS.stop();
+        log.close();
+    }
+}
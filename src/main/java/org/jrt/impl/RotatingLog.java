@@ -0,0 +1,188 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.HdrHistogram.HistogramLogWriter;
+
+/**
+ * Interval log <log prefix><suffix> rotated by size (-logsize) and by
+ * wall clock time (-logtime). Rotation happens only between intervals:
+ * the active file is renamed to <log prefix>.<name>.<n>.hlog (n grows
+ * from 1) and passed to LogCompressor, which gzips it and deletes oldest
+ * segments over disk budget in its own thread. Every segment has its own
+ * header with jRT start time, so it can be processed alone.
+ *
+ * Used by LogWriter thread only.
+ */
+public class RotatingLog {
+
+    /**
+     * Sampling latencies of the log are subject to, described in the header
+     * of every segment.
+     */
+    public enum Sampled {
+        /** connections and operations (i2o/o2i logs) */
+        OPERATIONS,
+        /** connections only (handshakes) */
+        CONNECTIONS,
+        /** not sampled (sizes, connects, accepts) */
+        NOT
+    }
+
+    private final JRT jRT;
+    private final Sampled sampled;
+    private final File file;
+    private final String segmentPrefix;
+    private final String segmentSuffix;
+    private int segments;
+
+    private HistogramLogWriter writer;
+    private PrintStream out;
+    private long written;
+    //interval start time (ms since epoch) the active segment was opened at
+    private long segmentStart;
+
+    /**
+     * @param suffix f.e. ".i2o.hlog"
+     */
+    public RotatingLog(JRT jRT, String suffix) {
+        this(jRT, suffix, Sampled.OPERATIONS);
+    }
+
+    /**
+     * @param suffix f.e. ".size.hlog"
+     */
+    public RotatingLog(JRT jRT, String suffix, Sampled sampled) {
+        this.jRT = jRT;
+        this.sampled = sampled;
+        this.file = new File(jRT.configuration.logPrefix + suffix);
+        int dot = file.getName().lastIndexOf('.');
+        this.segmentPrefix = file.getName().substring(0, dot) + ".";
+        this.segmentSuffix = file.getName().substring(dot);
+        this.segments = lastSegment();
+    }
+
+    /**
+     * Rotates the log if the interval starting at intervalStart doesn't
+     * fit into the active segment, opens it if needed.
+     *
+     * @return writer for the interval or null if the log can't be created,
+     * it is retried next interval
+     */
+    public HistogramLogWriter writer(long intervalStart) {
+        Configuration conf = jRT.configuration;
+        if (null != writer && (conf.logRotateSize > 0 && written >= conf.logRotateSize
+                || conf.logRotateTime > 0 && intervalStart / conf.logRotateTime != segmentStart / conf.logRotateTime)) {
+            rotate();
+        }
+        if (null == writer) {
+            try {
+                // buffered and flushed at line ends, HistogramLogWriter formats a
+                // line piece by piece and VM exit must not leave half of it
+                out = new PrintStream(new BufferedOutputStream(new CountingOutputStream(new FileOutputStream(file))), true);
+            } catch (FileNotFoundException ex) {
+                Logger.getLogger(JRT.class.getName()).log(Level.SEVERE, null, ex);
+                return null;
+            }
+            written = 0;
+            segmentStart = intervalStart;
+            writer = new HistogramLogWriter(out);
+            writer.outputLegend();
+            writer.outputStartTime(jRT.startTime);
+            String sampling = Sampled.NOT == sampled ? null
+                    : Sampling.header(jRT.configuration, Sampled.OPERATIONS == sampled);
+            if (null != sampling) {
+                writer.outputComment(sampling);
+            }
+        }
+        return writer;
+    }
+
+    public void close() {
+        if (null != out) {
+            out.close();
+        }
+    }
+
+    /**
+     * @return segment file name without directory
+     */
+    String segmentName(int n) {
+        return segmentPrefix + n + segmentSuffix;
+    }
+
+    private void rotate() {
+        out.close();
+        writer = null;
+        out = null;
+        File segment = new File(file.getAbsoluteFile().getParentFile(), segmentName(++segments));
+        if (!file.renameTo(segment)) {
+            // overwritten by the next segment rather than growing forever
+            System.err.println("jRT could not rotate " + file + " to " + segment);
+            return;
+        }
+        ++jRT.jrtStat.rotatedLogs;
+        jRT.logCompressor.rotated(segment);
+    }
+
+    /**
+     * @return number of the last segment left by a previous run with the
+     * same log prefix, so it is not overwritten
+     */
+    private int lastSegment() {
+        int last = 0;
+        String[] names = file.getAbsoluteFile().getParentFile().list();
+        if (null == names) {
+            return last;
+        }
+        for (String name : names) {
+            if (!name.startsWith(segmentPrefix)) {
+                continue;
+            }
+            String rest = name.substring(segmentPrefix.length());
+            int end = rest.indexOf(segmentSuffix);
+            if (end <= 0) {
+                continue;
+            }
+            try {
+                last = Math.max(last, Integer.parseInt(rest.substring(0, end)));
+            } catch (NumberFormatException e) {
+                // not a segment
+            }
+        }
+        return last;
+    }
+
+    private class CountingOutputStream extends FilterOutputStream {
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            ++written;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            written += len;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jrt.socket.api.JRTHic;
+
+/**
+ * Sampling for high I/O rates (-sampleconn, -sampleops, -samplebudget):
+ * 1 in N connections is measured, decided once when it's registered;
+ * of a measured connection every Nth latency of each direction is
+ * recorded, and a thread records at most budget latencies per second.
+ * Sampled out operations are still paired, so sampling never shifts
+ * which read answers which write; they only skip LatencyStats.
+ */
+public class Sampling {
+
+    private static final long SECOND = 1000000000L;
+
+    private final JRT jRT;
+    //connections registered so far, every sampleConnections-th is measured
+    private final AtomicLong connections = new AtomicLong();
+    private final ThreadLocal<Budget> budgets = new ThreadLocal<Budget>() {
+        @Override
+        protected Budget initialValue() {
+            return new Budget();
+        }
+    };
+
+    /**
+     * Latencies of a thread recorded in the current second and skipped,
+     * skipped ones are added to jrtStat.overBudget once a second.
+     */
+    private static class Budget {
+        long second = System.nanoTime();
+        int recorded;
+        long skipped;
+    }
+
+    public Sampling(JRT jRT) {
+        this.jRT = jRT;
+    }
+
+    /**
+     * @return true if a newly registered connection is measured
+     */
+    public boolean connection() {
+        int n = jRT.configuration.sampleConnections;
+        return n <= 1 || connections.getAndIncrement() % n == 0;
+    }
+
+    /**
+     * @param i2o direction of the latency
+     * @param now time of the latency end (System.nanoTime)
+     * @return true if the latency is recorded
+     */
+    public boolean operation(JRTHic hic, boolean i2o, long now) {
+        Configuration conf = jRT.configuration;
+        if (conf.sampleOperations > 1) {
+            // counters are not atomic, a lost increment of racing threads
+            // only moves the sample by one
+            int n = i2o ? hic.i2oSamples++ : hic.o2iSamples++;
+            if (n % conf.sampleOperations != 0) {
+                return false;
+            }
+        }
+        return conf.sampleBudget <= 0 || withinBudget(conf.sampleBudget, now);
+    }
+
+    private boolean withinBudget(int budget, long now) {
+        Budget b = budgets.get();
+        if (now - b.second >= SECOND) {
+            if (b.skipped > 0) {
+                jRT.jrtStat.overBudget.addAndGet(b.skipped);
+            }
+            b.second = now;
+            b.recorded = 0;
+            b.skipped = 0;
+        }
+        if (b.recorded < budget) {
+            ++b.recorded;
+            return true;
+        }
+        ++b.skipped;
+        return false;
+    }
+
+    /**
+     * @param operations whether operation sampling applies to the log
+     * @return sampling header of logs, null if everything is recorded
+     */
+    public static String header(Configuration conf, boolean operations) {
+        int ops = operations ? conf.sampleOperations : 1;
+        int budget = operations ? conf.sampleBudget : 0;
+        if (conf.sampleConnections <= 1 && ops <= 1 && budget <= 0) {
+            return null;
+        }
+        return String.format(Locale.US, "[SampleRate: %s (connections 1/%d, operations 1/%d, %s)]",
+                1.0 / (Math.max(conf.sampleConnections, 1) * Math.max(ops, 1)),
+                Math.max(conf.sampleConnections, 1), Math.max(ops, 1),
+                budget > 0 ? "at most " + budget + " latencies/s per thread" : "no budget");
+    }
+}
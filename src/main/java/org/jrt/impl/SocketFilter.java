@@ -0,0 +1,388 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Filter entries (Configuration.filterEntries) compiled once into matchers.
+ *
+ * Remote address of an entry can be:
+ *      10.0.0.1, ::1           exact address
+ *      10.0.0.0/8              CIDR range
+ *      10.0.*.1?               glob over textual address
+ *      some.host.com           host name, resolved once while compiling
+ * Port of an entry is either a single port (8080) or a range (8000-8100).
+ *
+ * Socket registration never triggers reverse DNS lookup unless host name
+ * matching was explicitly enabled and an entry has a host name pattern;
+ * match results are cached by (remote address, remote port, local port).
+ * The cache is bounded with CLOCK (second chance) eviction: when it's full
+ * results which were not looked up since the previous sweep are dropped,
+ * so sockets of busy peers keep being answered by the cache while one
+ * time peers churn through it.
+ *
+ * Connections accepted on jRT's own ports (metrics endpoint) never match.
+ */
+public class SocketFilter {
+
+    public static final int NO_MATCH = -1;
+    private static final int CACHE_LIMIT = 4096;
+
+    private final Entry[] entries;
+    private final boolean matchHostNames;
+    private final int ownPort;
+    private final ConcurrentHashMap<Key, Cached> cache = new ConcurrentHashMap<Key, Cached>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    /**
+     * @param ownPort local port of jRT's own server or 0
+     */
+    public SocketFilter(List<Configuration.IOFilterEntry> filterEntries, boolean matchHostNames, int ownPort) {
+        this.matchHostNames = matchHostNames;
+        this.ownPort = ownPort;
+        this.entries = new Entry[filterEntries.size()];
+        for (int i = 0; i < entries.length; ++i) {
+            entries[i] = new Entry(filterEntries.get(i));
+        }
+    }
+
+    public boolean isEmpty() {
+        return entries.length == 0;
+    }
+
+    public boolean match(InetAddress remoteAddress, int remotePort, int localPort) {
+        return NO_MATCH != matchEntry(remoteAddress, remotePort, localPort);
+    }
+
+    /**
+     * @return index of the first matched entry, entries count if there are
+     * no entries at all (everything is matched) or NO_MATCH
+     */
+    public int matchEntry(InetAddress remoteAddress, int remotePort, int localPort) {
+        if (ownPort != 0 && localPort == ownPort) {
+            return NO_MATCH;
+        }
+        if (entries.length == 0) {
+            return 0;
+        }
+
+        Key key = new Key(remoteAddress, remotePort, localPort);
+        Cached cached = cache.get(key);
+        if (null != cached) {
+            if (!cached.referenced) {
+                cached.referenced = true;
+            }
+            return cached.entry;
+        }
+
+        int matched = NO_MATCH;
+        byte[] rawAddress = null;
+        String hostName = null;
+        for (int i = 0; i < entries.length; ++i) {
+            Entry entry = entries[i];
+            if (!entry.remotePort.match(remotePort) || !entry.localPort.match(localPort)) {
+                continue;
+            }
+            if (null != entry.remoteAddr) {
+                if (null == remoteAddress) {
+                    continue;
+                }
+                if (null == rawAddress) {
+                    rawAddress = remoteAddress.getAddress();
+                }
+                if (null == hostName && matchHostNames && entry.remoteAddr.needHostName()) {
+                    hostName = remoteAddress.getHostName();
+                }
+                if (!entry.remoteAddr.match(remoteAddress, rawAddress, hostName)) {
+                    continue;
+                }
+            }
+            matched = i;
+            break;
+        }
+
+        if (cache.size() >= CACHE_LIMIT) {
+            sweep();
+        }
+        cache.put(key, new Cached(matched));
+
+        return matched;
+    }
+
+    /**
+     * Drops results not looked up since the previous sweep and clears
+     * reference bits of the others. One thread sweeps at a time, others
+     * go on (the cache may exceed its limit by what they put meanwhile).
+     */
+    private void sweep() {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (Iterator<Cached> i = cache.values().iterator(); i.hasNext();) {
+                Cached cached = i.next();
+                if (cached.referenced) {
+                    cached.referenced = false;
+                } else {
+                    i.remove();
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * @return label of entry returned by matchEntry
+     */
+    public String label(int entry) {
+        if (entry < 0 || entry >= entries.length) {
+            return "*";
+        }
+        return entries[entry].label;
+    }
+
+    private static class Cached {
+        final int entry;
+        // racy by intent: a lost update only costs a second chance
+        boolean referenced;
+
+        Cached(int entry) {
+            this.entry = entry;
+        }
+    }
+
+    private static class Key {
+        private final InetAddress addr;
+        private final int remotePort;
+        private final int localPort;
+
+        Key(InetAddress addr, int remotePort, int localPort) {
+            this.addr = addr;
+            this.remotePort = remotePort;
+            this.localPort = localPort;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return remotePort == k.remotePort && localPort == k.localPort
+                    && (addr == null ? k.addr == null : addr.equals(k.addr));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * remotePort + localPort) + (addr == null ? 0 : addr.hashCode());
+        }
+    }
+
+    private static class Entry {
+        final String label;
+        final AddrMatcher remoteAddr;
+        final PortRange remotePort;
+        final PortRange localPort;
+
+        Entry(Configuration.IOFilterEntry e) {
+            label = e.getLabel();
+            remoteAddr = null == e.remoteaddr ? null : compileAddr(e.remoteaddr);
+            remotePort = new PortRange(e.remoteport);
+            localPort = new PortRange(e.localport);
+        }
+    }
+
+    private static class PortRange {
+        final int from;
+        final int to;
+
+        PortRange(String spec) {
+            if (null == spec) {
+                from = 0;
+                to = Integer.MAX_VALUE;
+                return;
+            }
+            String[] p = spec.split("-");
+            if (p.length < 1 || p.length > 2) {
+                throw new IllegalArgumentException("wrong port or port range: " + spec);
+            }
+            try {
+                from = Integer.parseInt(p[0].trim());
+                to = p.length == 2 ? Integer.parseInt(p[1].trim()) : from;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("wrong port or port range: " + spec);
+            }
+            if (from > to) {
+                throw new IllegalArgumentException("wrong port range: " + spec);
+            }
+        }
+
+        boolean match(int port) {
+            return port >= from && port <= to;
+        }
+    }
+
+    private static abstract class AddrMatcher {
+        /**
+         * @param rawAddress addr.getAddress(), taken once for all entries
+         */
+        abstract boolean match(InetAddress addr, byte[] rawAddress, String hostName);
+
+        boolean needHostName() {
+            return false;
+        }
+    }
+
+    private static final Pattern ipv4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+
+    private static boolean isLiteral(String addr) {
+        return ipv4.matcher(addr).matches() || addr.indexOf(':') >= 0;
+    }
+
+    private static InetAddress parseLiteral(String addr) {
+        if (!isLiteral(addr)) {
+            throw new IllegalArgumentException("not an IP address: " + addr);
+        }
+        try {
+            // no DNS request for literal addresses
+            return InetAddress.getByName(addr);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("not an IP address: " + addr);
+        }
+    }
+
+    private static AddrMatcher compileAddr(String spec) {
+        if (spec.indexOf('/') >= 0) {
+            return new CidrMatcher(spec);
+        }
+        if (spec.indexOf('*') >= 0 || spec.indexOf('?') >= 0) {
+            return new GlobMatcher(spec);
+        }
+        if (isLiteral(spec)) {
+            return new ExactMatcher(spec, Arrays.asList(parseLiteral(spec)));
+        }
+        List<InetAddress> resolved = new ArrayList<InetAddress>();
+        try {
+            resolved.addAll(Arrays.asList(InetAddress.getAllByName(spec)));
+        } catch (UnknownHostException e) {
+            System.err.println("WARNING: jRT filter host " + spec + " can't be resolved");
+        }
+        return new ExactMatcher(spec, resolved);
+    }
+
+    private static class ExactMatcher extends AddrMatcher {
+        final String spec;
+        final Set<InetAddress> addrs;
+
+        ExactMatcher(String spec, List<InetAddress> addrs) {
+            this.spec = spec;
+            this.addrs = new HashSet<InetAddress>(addrs);
+        }
+
+        @Override
+        boolean match(InetAddress addr, byte[] rawAddress, String hostName) {
+            return addrs.contains(addr) || (null != hostName && spec.equalsIgnoreCase(hostName));
+        }
+
+        @Override
+        boolean needHostName() {
+            return !isLiteral(spec);
+        }
+    }
+
+    private static class CidrMatcher extends AddrMatcher {
+        final byte[] network;
+        final int prefix;
+
+        CidrMatcher(String spec) {
+            String[] p = spec.split("/");
+            if (p.length != 2) {
+                throw new IllegalArgumentException("wrong CIDR range: " + spec);
+            }
+            network = parseLiteral(p[0].trim()).getAddress();
+            try {
+                prefix = Integer.parseInt(p[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("wrong CIDR range: " + spec);
+            }
+            if (prefix < 0 || prefix > network.length * 8) {
+                throw new IllegalArgumentException("wrong CIDR prefix length: " + spec);
+            }
+        }
+
+        @Override
+        boolean match(InetAddress addr, byte[] rawAddress, String hostName) {
+            byte[] a = rawAddress;
+            if (a.length != network.length) {
+                return false;
+            }
+            int bits = prefix;
+            for (int i = 0; bits > 0; ++i, bits -= 8) {
+                int mask = bits >= 8 ? 0xff : (0xff << (8 - bits)) & 0xff;
+                if ((a[i] & mask) != (network[i] & mask)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class GlobMatcher extends AddrMatcher {
+        final Pattern pattern;
+        final boolean hostNamePattern;
+
+        GlobMatcher(String spec) {
+            // letters outside of an IPv6 address can only match a host name,
+            // IPv4 and IPv6 globs ("10.0.*", "fe80::*") match the address
+            hostNamePattern = spec.indexOf(':') < 0 && hasLetters(spec);
+
+            StringBuilder sb = new StringBuilder();
+            for (char c : spec.toCharArray()) {
+                if (c == '*') {
+                    sb.append(".*");
+                } else if (c == '?') {
+                    sb.append('.');
+                } else {
+                    sb.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            pattern = Pattern.compile(sb.toString(), Pattern.CASE_INSENSITIVE);
+        }
+
+        @Override
+        boolean match(InetAddress addr, byte[] rawAddress, String hostName) {
+            return pattern.matcher(addr.getHostAddress()).matches()
+                    || (null != hostName && pattern.matcher(hostName).matches());
+        }
+
+        @Override
+        boolean needHostName() {
+            return hostNamePattern;
+        }
+
+        private static boolean hasLetters(String spec) {
+            for (int i = 0; i < spec.length(); ++i) {
+                if (Character.isLetter(spec.charAt(i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
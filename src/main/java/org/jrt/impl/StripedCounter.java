@@ -0,0 +1,45 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Exact counter incremented by many application threads at once (LongAdder
+ * is not in Java 6): threads are spread over stripes by thread id, so they
+ * rarely contend on the same cell, cells are a cache line apart. sum() is
+ * read by LogWriter once an interval.
+ */
+public class StripedCounter {
+
+    //longs of a cache line
+    private static final int PAD = 8;
+
+    private final int mask;
+    private final AtomicLongArray cells;
+
+    public StripedCounter() {
+        int stripes = 1;
+        while (stripes < 2 * Runtime.getRuntime().availableProcessors() && stripes < 64) {
+            stripes <<= 1;
+        }
+        mask = stripes - 1;
+        cells = new AtomicLongArray(stripes * PAD);
+    }
+
+    public void increment() {
+        cells.incrementAndGet((int) (Thread.currentThread().getId() & mask) * PAD);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PAD) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+}
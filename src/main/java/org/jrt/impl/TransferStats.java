@@ -0,0 +1,36 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Sizes of reads/writes of measured sockets: per direction histogram of
+ * bytes per operation and exact byte counters, both reset every interval
+ * by LogWriter.
+ */
+public class TransferStats {
+    public final Recorder inSizes = new Recorder(3);
+    public final Recorder outSizes = new Recorder(3);
+    public final AtomicLong inBytes = new AtomicLong();
+    public final AtomicLong outBytes = new AtomicLong();
+
+    public void read(long bytes) {
+        if (bytes > 0) {
+            inSizes.recordValue(bytes);
+            inBytes.addAndGet(bytes);
+        }
+    }
+
+    public void written(long bytes) {
+        if (bytes > 0) {
+            outSizes.recordValue(bytes);
+            outBytes.addAndGet(bytes);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Time range queries on a histogram log: intervals of the range are found
+ * by LogIndex and only their lines are memory-mapped and decoded, so a
+ * query costs the same in a log of an hour and of a week.
+ */
+public class IndexedLogReader {
+
+    //bytes of the log mapped at once, FileChannel.map() limit
+    static final long MAX_MAPPING = Integer.MAX_VALUE;
+
+    private final LogIndex index;
+    private int decoded;
+
+    public IndexedLogReader(File log) throws IOException {
+        this.index = LogIndex.forLog(log);
+    }
+
+    public LogIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return intervals decoded by the last sum()
+     */
+    public int getDecoded() {
+        return decoded;
+    }
+
+    /**
+     * @param from seconds since epoch
+     * @param to seconds since epoch
+     * @param tag null for untagged intervals
+     * @return sum of intervals of tag starting between from and to
+     * (inclusive, like HistogramLogProcessor -start/-end), null if there
+     * are none
+     * @throws IllegalArgumentException if a line of the range is malformed
+     */
+    public Histogram sum(double from, double to, String tag) throws IOException {
+        decoded = 0;
+        int first = index.lowerBound(Math.round(from * 1000));
+        int last = index.upperBound(Math.round(to * 1000));
+        if (first >= last) {
+            return null;
+        }
+
+        Histogram sum = null;
+        RandomAccessFile file = new RandomAccessFile(index.log, "r");
+        try {
+            // a mapping is at most 2 GiB, wide ranges are mapped by chunks
+            // of whole interval lines
+            int chunk = first;
+            while (chunk < last) {
+                long start = index.offset(chunk);
+                int next = chunk + 1;
+                while (next < last && index.end(next + 1) - start <= MAX_MAPPING) {
+                    ++next;
+                }
+                long end = index.end(next);
+                sum = sum(file.getChannel().map(FileChannel.MapMode.READ_ONLY, start, end - start), tag, sum);
+                chunk = next;
+            }
+        } finally {
+            // mappings stay valid after the channel is closed
+            file.close();
+        }
+        return sum;
+    }
+
+    /**
+     * @return sum plus intervals of tag in lines
+     */
+    private Histogram sum(MappedByteBuffer lines, String tag, Histogram sum) throws IOException {
+        byte[] line = new byte[256];
+        while (lines.hasRemaining()) {
+            int n = 0;
+            byte b;
+            while (lines.hasRemaining() && (b = lines.get()) != '\n') {
+                if (n == line.length) {
+                    line = Arrays.copyOf(line, n * 2);
+                }
+                line[n++] = b;
+            }
+            if (n > 0 && line[n - 1] == '\r') {
+                --n;
+            }
+            LogInterval i = LogInterval.parse(new String(line, 0, n, "US-ASCII"));
+            if (null == i || !i.isTagged(tag)) {
+                continue;
+            }
+            Histogram h = i.decode();
+            ++decoded;
+            if (null == sum) {
+                sum = h;
+                sum.setAutoResize(true);
+            } else {
+                sum.add(h);
+            }
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) {
+        String start = null;
+        String end = null;
+        String tag = null;
+        double unitRatio = 1000000.0;
+        double[] percentiles = {50.0, 90.0, 99.0, 99.9, 99.99};
+        List<File> logs = new ArrayList<File>();
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                if ("-start".equals(args[i])) {
+                    start = args[++i];
+                } else if ("-end".equals(args[i])) {
+                    end = args[++i];
+                } else if ("-tag".equals(args[i])) {
+                    tag = args[++i];
+                } else if ("-outputValueUnitRatio".equals(args[i])) {
+                    unitRatio = Double.parseDouble(args[++i]);
+                } else if ("-percentiles".equals(args[i])) {
+                    String[] p = args[++i].split(",");
+                    percentiles = new double[p.length];
+                    for (int k = 0; k < p.length; ++k) {
+                        percentiles[k] = Double.parseDouble(p[k]);
+                    }
+                } else if (args[i].startsWith("-")) {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                } else {
+                    logs.add(new File(args[i]));
+                }
+            }
+            if (logs.isEmpty()) {
+                throw new IllegalArgumentException("No logs to query");
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage:\n\tjRTLogQuery [-start <time>] [-end <time>] [-tag <tag>] [-percentiles <p>,...]\n"
+                    + "\t\t[-outputValueUnitRatio <ratio>] <log>...\n\n"
+                    + "\t\tprints percentiles of intervals starting between -start and -end in .hlog logs, time is\n"
+                    + "\t\tseconds since the earliest StartTime of the logs, HH:mm[:ss] (the first one after it) or\n"
+                    + "\t\tyyyy-MM-ddTHH:mm[:ss], local time. Logs are indexed to <log>.idx on the first query.\n");
+            System.exit(1);
+        }
+
+        try {
+            long started = System.nanoTime();
+            List<IndexedLogReader> readers = new ArrayList<IndexedLogReader>();
+            double startTime = Double.MAX_VALUE;
+            int intervals = 0;
+            for (File log : logs) {
+                IndexedLogReader r = new IndexedLogReader(log);
+                readers.add(r);
+                intervals += r.getIndex().size();
+                if (!Double.isNaN(r.getIndex().getStartTime())) {
+                    startTime = Math.min(startTime, r.getIndex().getStartTime());
+                }
+            }
+            double from = null == start ? 0 : parseTime(start, startTime);
+            double to = null == end ? Double.MAX_VALUE / 1000 : parseTime(end, startTime);
+
+            Histogram sum = null;
+            int decoded = 0;
+            for (IndexedLogReader r : readers) {
+                Histogram h = r.sum(from, to, tag);
+                decoded += r.getDecoded();
+                if (null == sum) {
+                    sum = h;
+                } else if (null != h) {
+                    sum.add(h);
+                }
+            }
+
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+            System.out.format(Locale.US, "#[Query between %s and %s, %d of %d intervals decoded in %.3f ms]\n",
+                    null == start ? "<Start>" : format.format(new Date((long) (from * 1000))),
+                    null == end ? "<Infinite>" : format.format(new Date((long) (to * 1000))),
+                    decoded, intervals, (System.nanoTime() - started) / 1000000.0);
+            System.out.format(Locale.US, "Count: %d\n", null == sum ? 0 : sum.getTotalCount());
+            if (null != sum) {
+                for (double p : percentiles) {
+                    System.out.format(Locale.US, "%s%%: %.3f\n", p, sum.getValueAtPercentile(p) / unitRatio);
+                }
+                System.out.format(Locale.US, "Max: %.3f\n", sum.getMaxValue() / unitRatio);
+            }
+        } catch (Exception e) {
+            System.err.println("jRTLogQuery failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param startTime earliest StartTime of the logs, seconds since epoch
+     * @return seconds since epoch
+     * @throws ParseException if time has wrong format
+     */
+    static double parseTime(String time, double startTime) throws ParseException {
+        if (time.matches("[0-9.]+")) {
+            return startTime + Double.parseDouble(time);
+        }
+        if (time.contains("T")) {
+            String pattern = time.length() > 16 ? "yyyy-MM-dd'T'HH:mm:ss" : "yyyy-MM-dd'T'HH:mm";
+            return new SimpleDateFormat(pattern).parse(time).getTime() / 1000.0;
+        }
+        // time of day, the first one since the minute the logs start at
+        Date parsed = new SimpleDateFormat(time.length() > 5 ? "HH:mm:ss" : "HH:mm").parse(time);
+        Calendar t = Calendar.getInstance();
+        t.setTime(parsed);
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis((long) (startTime * 1000));
+        c.set(Calendar.HOUR_OF_DAY, t.get(Calendar.HOUR_OF_DAY));
+        c.set(Calendar.MINUTE, t.get(Calendar.MINUTE));
+        c.set(Calendar.SECOND, t.get(Calendar.SECOND));
+        c.set(Calendar.MILLISECOND, 0);
+        long startMinute = (long) (startTime * 1000) / 60000 * 60000;
+        if (c.getTimeInMillis() < startMinute) {
+            c.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return c.getTimeInMillis() / 1000.0;
+    }
+}
@@ -0,0 +1,314 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Start times of intervals of a histogram log and byte offsets of their
+ * lines, cached in sidecar file <log>.idx. The sidecar is memory-mapped
+ * and searched in place, so opening a cached index doesn't depend on the
+ * size of the log. Logs are only appended to (the active log of a running
+ * jRT too), so a cached index is extended by scanning just the new lines
+ * and appending their entries; it's rebuilt if the log was replaced
+ * (shorter or another head). Works on plain .hlog only, rotated .hlog.gz
+ * segments must be gunzipped first.
+ *
+ * Sidecar: header (magic, indexed length, head length, head CRC32,
+ * StartTime, BaseTime, number of entries) and entries (start in ms since
+ * epoch, offset), big endian.
+ */
+public class LogIndex {
+
+    private static final long MAGIC = 0x6a52544944583031L;  //jRTIDX01
+    private static final int HEADER = 48;
+    private static final int HEAD = 1024;
+
+    public final File log;
+    private final File sidecar;
+
+    //seconds since epoch, NaN if the log has no header (yet)
+    private double startTime = Double.NaN;
+    private double baseTime = Double.NaN;
+    //bytes of the log indexed (up to the last complete line) and CRC32 of its head
+    private long length;
+    private int headLength;
+    private long head;
+    //entries of the sidecar, start and offset of each
+    private LongBuffer cached;
+    private int cachedSize;
+    //entries scanned after them
+    private long[] starts = new long[1024];
+    private long[] offsets = new long[1024];
+    private int size;
+
+    private LogIndex(File log) {
+        this.log = log;
+        this.sidecar = new File(log.getPath() + ".idx");
+    }
+
+    /**
+     * Opens cached index of log, extends or rebuilds it if the log has
+     * changed and caches it again (if the directory is writable).
+     */
+    public static LogIndex forLog(File log) throws IOException {
+        if (log.getName().endsWith(".gz")) {
+            throw new IOException(log + " is compressed, it can't be indexed");
+        }
+        LogIndex index = new LogIndex(log);
+        if (!index.load() || log.length() < index.length || index.head != index.checksum(index.headLength)) {
+            index = new LogIndex(log);
+        }
+        if (log.length() > index.length) {
+            index.scan();
+            index.save();
+        }
+        return index;
+    }
+
+    public int size() {
+        return cachedSize + size;
+    }
+
+    /**
+     * @return start of interval i, ms since epoch
+     */
+    public long start(int i) {
+        return i < cachedSize ? cached.get(2 * i) : starts[i - cachedSize];
+    }
+
+    /**
+     * @return offset of line of interval i in the log
+     */
+    public long offset(int i) {
+        return i < cachedSize ? cached.get(2 * i + 1) : offsets[i - cachedSize];
+    }
+
+    /**
+     * @return offset of the end of interval lines from i on
+     */
+    public long end(int i) {
+        return i < size() ? offset(i) : length;
+    }
+
+    public double getStartTime() {
+        return Double.isNaN(startTime) && size() > 0 ? start(0) / 1000.0 : startTime;
+    }
+
+    /**
+     * @return the first interval starting at time (ms since epoch) or later
+     */
+    public int lowerBound(long time) {
+        int lo = 0;
+        int hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (start(mid) < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return the first interval starting after time (ms since epoch)
+     */
+    public int upperBound(long time) {
+        return time == Long.MAX_VALUE ? size() : lowerBound(time + 1);
+    }
+
+    /**
+     * Indexes lines of the log from length on.
+     */
+    private void scan() throws IOException {
+        FileInputStream in = new FileInputStream(log);
+        try {
+            in.getChannel().position(length);
+            byte[] buffer = new byte[1 << 16];
+            byte[] line = new byte[256];
+            int n = 0;
+            long offset = length;
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                for (int k = 0; k < read; ++k) {
+                    byte b = buffer[k];
+                    if (b != '\n') {
+                        if (n == line.length) {
+                            line = Arrays.copyOf(line, n * 2);
+                        }
+                        line[n++] = b;
+                        continue;
+                    }
+                    index(new String(line, 0, n > 0 && line[n - 1] == '\r' ? n - 1 : n, "US-ASCII"), offset);
+                    offset += n + 1;
+                    n = 0;
+                    // a line being written is indexed next time
+                    length = offset;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        headLength = (int) Math.min(length, HEAD);
+        head = checksum(headLength);
+    }
+
+    private void index(String line, long offset) {
+        if (line.startsWith("#[StartTime: ")) {
+            startTime = LogSource.parseHeader(line, 13);
+            return;
+        }
+        if (line.startsWith("#[BaseTime: ")) {
+            baseTime = LogSource.parseHeader(line, 12);
+            return;
+        }
+        LogInterval i;
+        try {
+            i = LogInterval.parse(line);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(log + " at offset " + offset + " is malformed: " + e.getMessage());
+        }
+        if (null == i) {
+            return;
+        }
+        if (Double.isNaN(baseTime)) {
+            baseTime = LogSource.baseTime(startTime, i.start);
+        }
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        starts[size] = Math.round((i.start + baseTime) * 1000);
+        offsets[size] = offset;
+        ++size;
+    }
+
+    private long checksum(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        DataInputStream in = new DataInputStream(new FileInputStream(log));
+        try {
+            in.readFully(bytes);
+        } catch (EOFException e) {
+            return -1;
+        } finally {
+            in.close();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    /**
+     * Maps entries of the sidecar.
+     *
+     * @return false if there is no valid sidecar
+     */
+    private boolean load() {
+        if (!sidecar.isFile() || sidecar.length() < HEADER) {
+            return false;
+        }
+        try {
+            RandomAccessFile file = new RandomAccessFile(sidecar, "r");
+            try {
+                ByteBuffer header = ByteBuffer.allocate(HEADER);
+                file.getChannel().read(header, 0);
+                header.flip();
+                if (header.getLong() != MAGIC) {
+                    return false;
+                }
+                length = header.getLong();
+                headLength = header.getInt();
+                head = header.getLong();
+                startTime = header.getDouble();
+                baseTime = header.getDouble();
+                cachedSize = header.getInt();
+                if (sidecar.length() < HEADER + 16L * cachedSize) {
+                    return false;
+                }
+                // the mapping stays valid after the file is closed
+                cached = file.getChannel().map(FileChannel.MapMode.READ_ONLY, HEADER, 16L * cachedSize).asLongBuffer();
+                return true;
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            // unreadable, rebuilt
+            return false;
+        }
+    }
+
+    /**
+     * Caches the index, unless the directory is not writable: appends
+     * scanned entries to the sidecar and then updates its header, or
+     * writes a new one.
+     */
+    private void save() {
+        try {
+            if (null != cached) {
+                RandomAccessFile file = new RandomAccessFile(sidecar, "rw");
+                try {
+                    file.seek(HEADER + 16L * cachedSize);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.getFD()), 1 << 16));
+                    writeEntries(out);
+                    out.flush();
+                    file.seek(0);
+                    writeHeader(file);
+                } finally {
+                    file.close();
+                }
+                return;
+            }
+            File tmp = new File(sidecar.getPath() + ".tmp");
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+            try {
+                writeHeader(out);
+                writeEntries(out);
+            } finally {
+                out.close();
+            }
+            sidecar.delete();
+            if (!tmp.renameTo(sidecar)) {
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            // not cached, indexed again next time
+        }
+    }
+
+    private void writeHeader(DataOutput out) throws IOException {
+        out.writeLong(MAGIC);
+        out.writeLong(length);
+        out.writeInt(headLength);
+        out.writeLong(head);
+        out.writeDouble(startTime);
+        out.writeDouble(baseTime);
+        out.writeInt(cachedSize + size);
+    }
+
+    private void writeEntries(DataOutputStream out) throws IOException {
+        for (int i = 0; i < size; ++i) {
+            out.writeLong(starts[i]);
+            out.writeLong(offsets[i]);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.log;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Interval line of a histogram log: [Tag=<tag>,]<start>,<length>,<max>,<histogram>.
+ * Parsing doesn't decode the histogram, so intervals out of range or of
+ * other tags cost only splitting the line; decode() can be called from
+ * another thread.
+ */
+public class LogInterval {
+
+    private static final int[] BASE64 = new int[128];
+
+    static {
+        java.util.Arrays.fill(BASE64, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); ++i) {
+            BASE64[alphabet.charAt(i)] = i;
+        }
+    }
+
+    //null for untagged interval
+    public final String tag;
+    //as written in the log, seconds (relative to BaseTime if the log has it)
+    public final double start;
+    public final double length;
+    private final String histogram;
+
+    private LogInterval(String tag, double start, double length, String histogram) {
+        this.tag = tag;
+        this.start = start;
+        this.length = length;
+        this.histogram = histogram;
+    }
+
+    /**
+     * @return null if line is not an interval (comment, legend)
+     * @throws IllegalArgumentException if line is malformed
+     */
+    public static LogInterval parse(String line) {
+        if (line.length() == 0 || line.startsWith("#") || line.startsWith("\"")) {
+            return null;
+        }
+        String tag = null;
+        int from = 0;
+        if (line.startsWith("Tag=")) {
+            from = line.indexOf(',');
+            if (from < 0) {
+                throw new IllegalArgumentException("no interval after tag");
+            }
+            tag = line.substring(4, from++);
+        }
+        String[] fields = line.substring(from).split(",");
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("expects [Tag=<tag>,]<start>,<length>,<max>,<histogram>");
+        }
+        return new LogInterval(tag, Double.parseDouble(fields[0]), Double.parseDouble(fields[1]), fields[3]);
+    }
+
+    public boolean isTagged(String tag) {
+        return null == tag ? null == this.tag : tag.equals(this.tag);
+    }
+
+    /**
+     * @throws IllegalArgumentException if histogram is malformed
+     */
+    public Histogram decode() {
+        try {
+            Histogram h = Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(base64(histogram)), 0);
+            h.setTag(tag);
+            return h;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException(e);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static byte[] base64(String s) {
+        int length = s.length();
+        while (length > 0 && s.charAt(length - 1) == '=') {
+            --length;
+        }
+        byte[] bytes = new byte[length * 3 / 4];
+        int bits = 0;
+        int n = 0;
+        int j = 0;
+        for (int i = 0; i < length; ++i) {
+            char c = s.charAt(i);
+            int v = c < 128 ? BASE64[c] : -1;
+            if (v < 0) {
+                throw new IllegalArgumentException("not a base64 character " + c);
+            }
+            bits = bits << 6 | v;
+            n += 6;
+            if (n >= 8) {
+                n -= 8;
+                bytes[j++] = (byte) (bits >> n);
+            }
+        }
+        return bytes;
+    }
+}
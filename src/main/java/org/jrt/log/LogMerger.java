@@ -0,0 +1,534 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.log;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Merges histogram logs of many JVMs/hosts (f.e. jRT logs of all services
+ * of a cluster, or rotated segments of one log) into one interval log and
+ * overall percentile distribution in HistogramLogProcessor formats
+ * (jRTPlotter.xls reads them).
+ *
+ * Intervals are merged by their end time into -interval buckets (jRT
+ * intervals end on multiples of -si since epoch, so with the same -si
+ * buckets are exactly the logged intervals). Logs are streamed line by
+ * line, opened, gunzipped and parsed in parallel by -threads reader
+ * threads, each log a few batches of intervals ahead, and merged in time
+ * order by the main thread. Decoding of the buckets is done in parallel
+ * by -threads decoder threads with at most a few buckets in flight, so
+ * memory doesn't depend on the size of logs.
+ */
+public class LogMerger {
+
+    //intervals of a log read at once and batches read ahead per log
+    private static final int BATCH = 256;
+    private static final int AHEAD = 4;
+
+    //i2o/o2i logs (TLS ones and rotated segments too), tagged intervals of
+    //them are per endpoint parts of the untagged ones
+    private static final Pattern LATENCY_LOG = Pattern.compile(".*\\.(i2o|o2i)(\\.[0-9]+)?\\.hlog(\\.gz)?");
+
+    private final List<File> inputs = new ArrayList<File>();
+    private String output = null;
+    //seconds since the earliest StartTime of inputs
+    private double rangeStart = 0;
+    private double rangeEnd = Double.MAX_VALUE;
+    private String tag = null;
+    private boolean allTags = false;
+    private boolean csv = false;
+    private long interval = 1000;   //miliseconds
+    private double unitRatio = 1000000.0;
+    private int ticks = 5;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public static void main(String[] args) {
+        LogMerger merger = new LogMerger();
+        try {
+            merger.parseArguments(args);
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            printHelpAndExit();
+        }
+        try {
+            merger.run();
+        } catch (Exception e) {
+            System.err.println("jRTLogMerger failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return whether intervals tagged tag in log repeat latencies of its
+     * other intervals: uncorrected ones (raw, raw:<tag>) and per endpoint
+     * ones of i2o/o2i logs (-key)
+     */
+    static boolean isPart(File log, String tag) {
+        if (null == tag) {
+            return false;
+        }
+        return "raw".equals(tag) || tag.startsWith("raw:") || LATENCY_LOG.matcher(log.getName()).matches();
+    }
+
+    private static void printHelpAndExit() {
+        System.err.println("Usage:\n\tjRTLogMerger [-o <output>] [-start <sec>] [-end <sec>] [-tag <tag> | -alltags] [-csv]\n"
+                + "\t\t[-interval <sec>] [-outputValueUnitRatio <ratio>] [-percentilesOutputTicksPerHalf <n>] [-threads <n>]\n"
+                + "\t\t<log or directory>...\n\n"
+                + "\t\tmerges .hlog and .hlog.gz logs (all of them in a directory) by interval end time into\n"
+                + "\t\t<output> interval percentile log and <output>.hgrm distribution (to stdout without -o).\n"
+                + "\t\t-start/-end are seconds since the earliest StartTime of the logs, intervals without tag\n"
+                + "\t\tare merged unless -tag or -alltags is given. -alltags merges every tag but uncorrected\n"
+                + "\t\t(raw) and per endpoint ones, which repeat latencies of other intervals, -tag <tag>\n"
+                + "\t\tmerges one of them. -interval is 1 second by default.\n");
+        System.exit(1);
+    }
+
+    /**
+     * @throws IllegalArgumentException if arguments are wrong
+     */
+    void parseArguments(String[] args) {
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                if ("-o".equals(args[i])) {
+                    output = args[++i];
+                } else if ("-i".equals(args[i])) {
+                    addInput(new File(args[++i]));
+                } else if ("-start".equals(args[i])) {
+                    rangeStart = Double.parseDouble(args[++i]);
+                } else if ("-end".equals(args[i])) {
+                    rangeEnd = Double.parseDouble(args[++i]);
+                } else if ("-tag".equals(args[i])) {
+                    tag = args[++i];
+                } else if ("-alltags".equals(args[i])) {
+                    allTags = true;
+                } else if ("-csv".equals(args[i])) {
+                    csv = true;
+                } else if ("-interval".equals(args[i])) {
+                    interval = Math.round(Double.parseDouble(args[++i]) * 1000);
+                } else if ("-outputValueUnitRatio".equals(args[i])) {
+                    unitRatio = Double.parseDouble(args[++i]);
+                } else if ("-percentilesOutputTicksPerHalf".equals(args[i])) {
+                    ticks = Integer.parseInt(args[++i]);
+                } else if ("-threads".equals(args[i])) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].startsWith("-")) {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                } else {
+                    addInput(new File(args[i]));
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Option " + args[args.length - 1] + " expects a value");
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No logs to merge");
+        }
+        if (interval <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("-interval and -threads must be positive");
+        }
+    }
+
+    private void addInput(File f) {
+        if (f.isDirectory()) {
+            File[] files = f.listFiles();
+            java.util.Arrays.sort(files);
+            for (File l : files) {
+                if (l.getName().endsWith(".hlog") || l.getName().endsWith(".hlog.gz")) {
+                    inputs.add(l);
+                }
+            }
+        } else if (f.isFile()) {
+            inputs.add(f);
+        } else {
+            throw new IllegalArgumentException("No such log " + f);
+        }
+    }
+
+    void run() throws IOException, InterruptedException, ExecutionException {
+        ExecutorService readers = Executors.newFixedThreadPool(threads, daemons("jRT log reader"));
+        List<LogSource> sources = new ArrayList<LogSource>();
+        try {
+            open(readers, sources);
+            merge(readers, sources);
+        } finally {
+            readers.shutdownNow();
+            readers.awaitTermination(1, TimeUnit.SECONDS);
+            for (LogSource s : sources) {
+                s.close();
+            }
+        }
+    }
+
+    /**
+     * Opens inputs in parallel (up to their first interval), sources are
+     * the ones with intervals in order of inputs.
+     */
+    private void open(ExecutorService readers, List<LogSource> sources) throws IOException, InterruptedException {
+        List<Future<LogSource>> opened = new ArrayList<Future<LogSource>>();
+        for (final File f : inputs) {
+            opened.add(readers.submit(new Callable<LogSource>() {
+                @Override
+                public LogSource call() throws IOException {
+                    return new LogSource(f);
+                }
+            }));
+        }
+        IOException failure = null;
+        for (Future<LogSource> o : opened) {
+            LogSource s;
+            try {
+                s = o.get();
+            } catch (ExecutionException e) {
+                if (null == failure) {
+                    failure = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                            : new IOException(e.getCause().getMessage());
+                }
+                continue;
+            }
+            if (Double.isNaN(s.getStartTime())) {
+                s.close();
+            } else {
+                sources.add(s);
+            }
+        }
+        if (null != failure) {
+            throw failure;
+        }
+    }
+
+    private void merge(ExecutorService readers, List<LogSource> sources)
+            throws IOException, InterruptedException, ExecutionException {
+        double startTime = Double.MAX_VALUE;
+        for (LogSource s : sources) {
+            startTime = Math.min(startTime, s.getStartTime());
+        }
+        if (sources.isEmpty()) {
+            throw new IOException("no intervals in logs");
+        }
+
+        PrintStream intervalLog = null;
+        PrintStream histogramLog = System.out;
+        if (null != output) {
+            intervalLog = open(output);
+            histogramLog = open(output + ".hgrm");
+            outputHeader(intervalLog, "Interval percentile log", startTime);
+            outputHeader(histogramLog, "Overall percentile distribution", startTime);
+            intervalLog.println(csv ? "\"Timestamp\",\"Int_Count\",\"Int_50%\",\"Int_90%\",\"Int_Max\",\"Total_Count\",\"Total_50%\",\"Total_90%\",\"Total_99%\",\"Total_99.9%\",\"Total_99.99%\",\"Total_Max\""
+                    : "Time: IntervalPercentiles:count ( 50% 90% Max ) TotalPercentiles:count ( 50% 90% 99% 99.9% 99.99% Max )");
+        }
+
+        ExecutorService decoders = Executors.newFixedThreadPool(threads, daemons("jRT log decoder"));
+        try {
+            Histogram total = null;
+            LinkedList<Bucket> inFlight = new LinkedList<Bucket>();
+            double from = startTime + rangeStart;
+            double to = rangeEnd == Double.MAX_VALUE ? Double.MAX_VALUE : startTime + rangeEnd;
+            List<ReadAhead> logs = new ArrayList<ReadAhead>();
+            for (LogSource s : sources) {
+                ReadAhead log = new ReadAhead(s, readers, from, to);
+                log.start();
+                logs.add(log);
+            }
+            Heads heads = new Heads(logs);
+            Bucket bucket;
+            while (null != (bucket = heads.nextBucket())) {
+                bucket.decoded = decoders.submit(bucket);
+                inFlight.add(bucket);
+                if (inFlight.size() >= threads * 2) {
+                    total = output(inFlight.removeFirst(), total, intervalLog, startTime);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                total = output(inFlight.removeFirst(), total, intervalLog, startTime);
+            }
+            if (null == total) {
+                throw new IOException("no intervals selected");
+            }
+            total.outputPercentileDistribution(histogramLog, ticks, unitRatio, csv);
+        } finally {
+            decoders.shutdownNow();
+            if (null != intervalLog) {
+                intervalLog.close();
+                histogramLog.close();
+            }
+        }
+    }
+
+    private static ThreadFactory daemons(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    private void outputHeader(PrintStream log, String title, double startTime) {
+        log.format(Locale.US, "#[%s between %.3f and %s seconds (relative to StartTime)]\n", title, rangeStart,
+                rangeEnd == Double.MAX_VALUE ? "<Infinite>" : String.format(Locale.US, "%.3f", rangeEnd));
+        log.format(Locale.US, "#[StartTime: %.3f (seconds since epoch), %s]\n", startTime, new Date((long) (startTime * 1000)));
+    }
+
+    private static PrintStream open(String name) throws IOException {
+        try {
+            return new PrintStream(name);
+        } catch (FileNotFoundException e) {
+            throw new IOException("could not create " + name);
+        }
+    }
+
+    /**
+     * Adds bucket to total and writes it to interval log.
+     * 
+     * @param total null for the first bucket
+     * @return total
+     */
+    private Histogram output(Bucket bucket, Histogram total, PrintStream intervalLog, double startTime)
+            throws InterruptedException, ExecutionException {
+        Histogram h = bucket.decoded.get();
+        if (null == total) {
+            // like HistogramLogProcessor, total has precision of the logs
+            total = h.copy();
+            total.reset();
+            total.setAutoResize(true);
+        }
+        total.add(h);
+        if (null == intervalLog) {
+            return total;
+        }
+        double time = bucket.end / 1000.0 - startTime;
+        intervalLog.format(Locale.US, csv ? "%.3f,%d,%.3f,%.3f,%.3f,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f\n"
+                : "%4.3f: I:%d ( %7.3f %7.3f %7.3f ) T:%d ( %7.3f %7.3f %7.3f %7.3f %7.3f %7.3f )\n",
+                time,
+                h.getTotalCount(),
+                h.getValueAtPercentile(50.0) / unitRatio,
+                h.getValueAtPercentile(90.0) / unitRatio,
+                h.getMaxValue() / unitRatio,
+                total.getTotalCount(),
+                total.getValueAtPercentile(50.0) / unitRatio,
+                total.getValueAtPercentile(90.0) / unitRatio,
+                total.getValueAtPercentile(99.0) / unitRatio,
+                total.getValueAtPercentile(99.9) / unitRatio,
+                total.getValueAtPercentile(99.99) / unitRatio,
+                total.getMaxValue() / unitRatio);
+        return total;
+    }
+
+    /**
+     * Intervals of all logs ending in one bucket, decoded and added up by
+     * a decoder thread.
+     */
+    private static class Bucket implements Callable<Histogram> {
+        //end of the bucket, ms since epoch
+        final long end;
+        final List<LogInterval> intervals = new ArrayList<LogInterval>();
+        Future<Histogram> decoded;
+
+        Bucket(long end) {
+            this.end = end;
+        }
+
+        /**
+         * @return sum in the first interval histogram, which keeps its
+         * precision and value range (auto resized for the others)
+         */
+        @Override
+        public Histogram call() {
+            Histogram sum = intervals.get(0).decode();
+            sum.setAutoResize(true);
+            for (int i = 1; i < intervals.size(); ++i) {
+                sum.add(intervals.get(i).decode());
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Selected intervals of a log and ends of their buckets, the last batch
+     * of the log (maybe empty) is marked.
+     */
+    private static class Batch {
+        final List<LogInterval> intervals = new ArrayList<LogInterval>(BATCH);
+        final long[] ends = new long[BATCH];
+        boolean last;
+        //of reading, thrown by the main thread
+        Exception failure;
+    }
+
+    /**
+     * Reads selected intervals of a log ahead in batches by reader
+     * threads, at most AHEAD batches not taken by the main thread. A log is
+     * read by one reader at a time, the next batch is read right after the
+     * previous one until AHEAD are waiting, and again when they are taken.
+     */
+    private class ReadAhead implements Runnable {
+        private final LogSource source;
+        private final ExecutorService readers;
+        private final double from;
+        private final double to;
+        private final BlockingQueue<Batch> batches = new LinkedBlockingQueue<Batch>();
+        //guarded by this
+        private int queued;
+        private boolean reading;
+        private boolean read;
+
+        ReadAhead(LogSource source, ExecutorService readers, double from, double to) {
+            this.source = source;
+            this.readers = readers;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Schedules reading of the next batch if there is room for it.
+         */
+        synchronized void start() {
+            if (!reading && !read && queued < AHEAD) {
+                reading = true;
+                readers.execute(this);
+            }
+        }
+
+        /**
+         * @return the next batch, blocks until it's read
+         * @throws IOException if the log couldn't be read
+         */
+        Batch take() throws IOException, InterruptedException {
+            Batch b = batches.take();
+            synchronized (this) {
+                --queued;
+            }
+            start();
+            if (b.failure instanceof IOException) {
+                throw (IOException) b.failure;
+            } else if (null != b.failure) {
+                throw (RuntimeException) b.failure;
+            }
+            return b;
+        }
+
+        @Override
+        public void run() {
+            Batch b = read();
+            synchronized (this) {
+                ++queued;
+                reading = false;
+                read = b.last;
+            }
+            batches.add(b);
+            start();
+        }
+
+        private Batch read() {
+            Batch b = new Batch();
+            try {
+                while (b.intervals.size() < BATCH) {
+                    LogInterval next = source.next();
+                    double start = null == next ? 0 : source.absolute(next.start);
+                    if (null == next || start > to) {
+                        // logs are in time order, the rest is out of range
+                        b.last = true;
+                        break;
+                    }
+                    if (start >= from && (allTags ? !isPart(source.file, next.tag) : next.isTagged(tag))) {
+                        long end = Math.round((start + next.length) * 1000);
+                        b.ends[b.intervals.size()] = (end + interval - 1) / interval * interval;
+                        b.intervals.add(next);
+                    }
+                }
+            } catch (Exception e) {
+                // IOException or malformed line
+                b.failure = e;
+                b.last = true;
+            }
+            return b;
+        }
+    }
+
+    /**
+     * The next selected interval of every log, so buckets are taken in
+     * time order across logs.
+     */
+    private class Heads {
+        private final List<ReadAhead> logs;
+        private final Batch[] batches;
+        private final int[] positions;
+        private final LogInterval[] heads;
+        private final long[] ends;
+
+        Heads(List<ReadAhead> logs) throws IOException, InterruptedException {
+            this.logs = logs;
+            this.batches = new Batch[logs.size()];
+            this.positions = new int[logs.size()];
+            this.heads = new LogInterval[logs.size()];
+            this.ends = new long[logs.size()];
+            for (int i = 0; i < heads.length; ++i) {
+                batches[i] = new Batch();
+                advance(i);
+            }
+        }
+
+        /**
+         * @return intervals ending in the earliest bucket, null after the last one
+         */
+        Bucket nextBucket() throws IOException, InterruptedException {
+            long end = Long.MAX_VALUE;
+            for (int i = 0; i < heads.length; ++i) {
+                if (null != heads[i]) {
+                    end = Math.min(end, ends[i]);
+                }
+            }
+            if (end == Long.MAX_VALUE) {
+                return null;
+            }
+            Bucket bucket = new Bucket(end);
+            for (int i = 0; i < heads.length; ++i) {
+                while (null != heads[i] && ends[i] == end) {
+                    bucket.intervals.add(heads[i]);
+                    advance(i);
+                }
+            }
+            return bucket;
+        }
+
+        private void advance(int i) throws IOException, InterruptedException {
+            Batch b = batches[i];
+            while (positions[i] == b.intervals.size()) {
+                if (b.last) {
+                    heads[i] = null;
+                    return;
+                }
+                b = batches[i] = logs.get(i).take();
+                positions[i] = 0;
+            }
+            heads[i] = b.intervals.get(positions[i]);
+            ends[i] = b.ends[positions[i]];
+            ++positions[i];
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams intervals of a histogram log (.hlog or rotated .hlog.gz) one
+ * line at a time, so a log of any size is read in constant memory.
+ * Timestamps of intervals are turned into seconds since epoch by the
+ * StartTime/BaseTime headers the same way HistogramLogReader does.
+ */
+public class LogSource implements Closeable {
+
+    private static final double YEAR = 365 * 24 * 3600.0;
+
+    public final File file;
+    private final BufferedReader reader;
+    private int lineNumber;
+    private double startTime = Double.NaN;
+    private double baseTime = Double.NaN;
+    //interval read ahead by the constructor to see the headers before it
+    private LogInterval first;
+
+    public LogSource(File file) throws IOException {
+        this.file = file;
+        InputStream in = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+        reader = new BufferedReader(new InputStreamReader(in, "US-ASCII"), 1 << 16);
+        first = read();
+    }
+
+    /**
+     * @return StartTime of the log (seconds since epoch), or the start of
+     * its first interval if it has no header, NaN if it's empty
+     */
+    public double getStartTime() {
+        if (!Double.isNaN(startTime)) {
+            return startTime;
+        }
+        return null == first ? Double.NaN : absolute(first.start);
+    }
+
+    /**
+     * @return seconds since epoch of time logged relative to BaseTime
+     */
+    public double absolute(double time) {
+        if (Double.isNaN(baseTime)) {
+            baseTime = baseTime(startTime, time);
+        }
+        return time + baseTime;
+    }
+
+    /**
+     * @param startTime StartTime header of the log, NaN if there is none
+     * @param first timestamp of the first interval
+     * @return BaseTime of a log without BaseTime header: timestamps far
+     * before StartTime are relative to it
+     */
+    static double baseTime(double startTime, double first) {
+        return !Double.isNaN(startTime) && first < startTime - YEAR ? startTime : 0;
+    }
+
+    /**
+     * @return StartTime (from = 13) or BaseTime (from = 12) header value
+     */
+    static double parseHeader(String line, int from) {
+        int end = line.indexOf(' ', from);
+        return Double.parseDouble(line.substring(from, end < 0 ? line.length() - 1 : end));
+    }
+
+    /**
+     * @return next interval or null at the end of the log
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    public LogInterval next() throws IOException {
+        if (null != first) {
+            LogInterval i = first;
+            first = null;
+            return i;
+        }
+        return read();
+    }
+
+    private LogInterval read() throws IOException {
+        String line;
+        while (null != (line = reader.readLine())) {
+            ++lineNumber;
+            if (line.startsWith("#[StartTime: ")) {
+                startTime = parseHeader(line, 13);
+            } else if (line.startsWith("#[BaseTime: ")) {
+                baseTime = parseHeader(line, 12);
+            } else {
+                try {
+                    LogInterval i = LogInterval.parse(line);
+                    if (null != i) {
+                        return i;
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(file + ":" + lineNumber + " is malformed: " + e.getMessage());
+                }
+            }
+        }
+        return null;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -25,5 +25,8 @@ public interface CodeWriter {
     public String preCode(String methodName);
 
     public String postCode(String methodName);
+
+    // code to run when the method throws, the exception is rethrown after it
+    public String catchCode(String methodName);
     
 }
@@ -6,14 +6,157 @@
  */
 package org.jrt.socket.api;
 
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import org.jrt.impl.EndpointStats;
+
+/**
+ * Per socket state. Reads and writes of the same socket can come from
+ * different threads (f.e. reader and writer threads of a full-duplex RPC
+ * client), so pending timestamps are published and consumed atomically:
+ * the side that completes an operation publishes its timestamp, the
+ * opposite side takes it with getAndSet(0). Every published timestamp is
+ * paired at most once, 0 means there is nothing to pair with.
+ *
+ * In pipelined mode (pipeline depth > 0) every completed operation is
+ * queued instead, so a burst of requests is paired with the burst of
+ * responses in FIFO order.
+ *
+ * With message framers, a read or write completes a request/response only
+ * when it completes a message, see Accumulator.
+ */
 public class JRTHic {
-    public long i2oLatency;
-    public long i2oReadTime;
-    public long i2oWriteTime;
-    public boolean i2oLastRead;
-    
-    public long o2iLatency;
-    public long o2iReadTime;
-    public long o2iWriteTime;
-    public boolean o2iLastWrite;
+
+    private static final AtomicLongFieldUpdater<JRTHic> i2oReadTimeUpdater =
+            AtomicLongFieldUpdater.newUpdater(JRTHic.class, "i2oReadTime");
+    private static final AtomicLongFieldUpdater<JRTHic> o2iWriteTimeUpdater =
+            AtomicLongFieldUpdater.newUpdater(JRTHic.class, "o2iWriteTime");
+
+    //time of the last completed read not yet answered by a write
+    private volatile long i2oReadTime;
+    //time of the last completed write not yet answered by a read
+    private volatile long o2iWriteTime;
+
+    //outstanding reads/writes in pipelined mode, null otherwise
+    private final TimestampQueue i2oReads;
+    private final TimestampQueue o2iWrites;
+
+    //message framers of both directions, null unless -framer is specified
+    public MessageFramer inFramer;
+    public MessageFramer outFramer;
+
+    //per endpoint stats, null unless -key is specified
+    public EndpointStats endpoint;
+
+    //latencies of each direction so far, for -sampleops, see Sampling
+    public int i2oSamples;
+    public int o2iSamples;
+
+    //beginning of non blocking connect not finished yet, 0 otherwise
+    public volatile long connectStart;
+
+    //plaintext layer of TLS connection (SSLSocket app streams or SSLEngine)
+    public volatile boolean tls;
+    //beginning of initial TLS handshake not finished yet, 0 otherwise
+    public volatile long handshakeStart;
+    //raw (encrypted) stream of SSLSocket, see TlsCodeWrapper, or socket
+    //not sampled by -sampleconn; set before the socket does any I/O
+    public boolean excluded;
+    //socket was closed: it is dropped from sockRTs by the log writer an
+    //interval later, so I/O in flight on close is still recorded, see
+    //JRT.dropClosed (closedSeen is used by the log writer only)
+    public volatile boolean closed;
+    public boolean closedSeen;
+
+    public JRTHic(int pipelineDepth) {
+        if (pipelineDepth > 0) {
+            i2oReads = new TimestampQueue(pipelineDepth);
+            o2iWrites = new TimestampQueue(pipelineDepth);
+        } else {
+            i2oReads = null;
+            o2iWrites = null;
+        }
+    }
+
+    public void setFramers(MessageFramer in, MessageFramer out) {
+        inFramer = in;
+        outFramer = out;
+        if (in instanceof MessageFramer.Duplex) {
+            ((MessageFramer.Duplex) in).setOpposite(out);
+        }
+        if (out instanceof MessageFramer.Duplex) {
+            ((MessageFramer.Duplex) out).setOpposite(in);
+        }
+    }
+
+    private static long nonZero(long time) {
+        return time == 0 ? 1 : time;
+    }
+
+    /**
+     * @return number of reads dropped because of pipeline overflow (this
+     * one, when -pipeline outstanding reads are not answered yet)
+     */
+    public int readCompleted(long time) {
+        if (null != i2oReads) {
+            return i2oReads.offer(time) ? 0 : 1;
+        }
+        i2oReadTime = nonZero(time);
+        return 0;
+    }
+
+    /**
+     * @return time of the read to pair with or 0
+     */
+    public long takeRead() {
+        if (null != i2oReads) {
+            return i2oReads.poll();
+        }
+        return i2oReadTimeUpdater.getAndSet(this, 0);
+    }
+
+    /**
+     * @return number of writes dropped because of pipeline overflow, see
+     * readCompleted
+     */
+    public int writeCompleted(long time) {
+        if (null != o2iWrites) {
+            return o2iWrites.offer(time) ? 0 : 1;
+        }
+        o2iWriteTime = nonZero(time);
+        return 0;
+    }
+
+    /**
+     * @return time of the write to pair with or 0
+     */
+    public long takeWrite() {
+        if (null != o2iWrites) {
+            return o2iWrites.poll();
+        }
+        return o2iWriteTimeUpdater.getAndSet(this, 0);
+    }
+
+    /**
+     * Forgets pending operations and partially framed messages. Called when
+     * probes are woven again after jRT was stopped: I/O done meanwhile was
+     * not seen, pairing across the gap would record its length as latency.
+     */
+    public void reset() {
+        i2oReadTime = 0;
+        o2iWriteTime = 0;
+        if (null != i2oReads) {
+            while (i2oReads.poll() != 0) {
+            }
+            while (o2iWrites.poll() != 0) {
+            }
+        }
+        if (null != inFramer) {
+            inFramer.reset();
+        }
+        if (null != outFramer) {
+            outFramer.reset();
+        }
+        connectStart = 0;
+        handshakeStart = 0;
+    }
 }
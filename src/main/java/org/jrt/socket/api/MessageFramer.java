@@ -0,0 +1,61 @@
+/*
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ * 
+
+ */
+package org.jrt.socket.api;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Detects message boundaries in the byte stream of one direction of one
+ * socket, so latency is measured between complete messages instead of
+ * between single reads/writes.
+ *
+ * Framers look at the buffers passed to instrumented read/write calls right
+ * after the call and must never copy or modify them (including position and
+ * limit of ByteBuffers). A framer instance is used by one direction of one
+ * socket only, bytes are passed in stream order.
+ *
+ * @author fijiol
+ */
+public interface MessageFramer {
+
+    /**
+     * @return number of messages which end within b[off, off + len)
+     */
+    public int onBytes(byte[] b, int off, int len);
+
+    /**
+     * @return number of messages which end within buf[from, to) (absolute indexes)
+     */
+    public int onBytes(ByteBuffer buf, int from, int to);
+
+    /**
+     * Called when some bytes of the stream couldn't be inspected (f.e. 
+     * scattering/gathering I/O), framer should start over from next message.
+     */
+    public void reset();
+
+    /**
+     * Implemented by framers which need to know what the opposite direction
+     * of the socket carries (f.e. response to HTTP HEAD request has no body
+     * whatever its headers say). Called with the other framer of the socket
+     * once both are created, see JRTHic.setFramers.
+     */
+    public interface Duplex {
+        public void setOpposite(MessageFramer opposite);
+    }
+
+    /**
+     * Framer implementations are registered by -framer=<class name of Factory>,
+     * factory must have public constructor without arguments.
+     */
+    public interface Factory {
+        /**
+         * @param inbound true for bytes read from socket, false for written ones
+         */
+        public MessageFramer newFramer(boolean inbound);
+    }
+}
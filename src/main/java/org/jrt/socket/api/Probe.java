@@ -0,0 +1,164 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.socket.api;
+
+import java.lang.reflect.Method;
+import org.jrt.socket.regular.Accumulator;
+import org.objectweb.asm.Type;
+
+/**
+ * Typed counterpart of CodeWriter pre/post code for ProbeTransformer:
+ * method (name and descriptor) with static Accumulator calls at its
+ * beginning and before its normal returns. Calls are resolved against
+ * Accumulator when probe is created, so a probe which doesn't fit
+ * Accumulator fails at agent start rather than in instrumented class.
+ */
+public class Probe {
+
+    public final String methodName;
+    public final String methodDesc;
+    public final Call before;
+    public final Call after;
+
+    public Probe(String methodName, String methodDesc, Call before, Call after) {
+        this.methodName = methodName;
+        this.methodDesc = methodDesc;
+        this.before = before;
+        this.after = after;
+    }
+
+    public static Probe before(String methodName, String methodDesc, Call before) {
+        return new Probe(methodName, methodDesc, before, null);
+    }
+
+    public static Probe after(String methodName, String methodDesc, Call after) {
+        return new Probe(methodName, methodDesc, null, after);
+    }
+
+    public static Class<?>[] sig(Class<?>... params) {
+        return params;
+    }
+
+    /**
+     * @param params parameter types of Accumulator.name, args are converted
+     * to them (reference types are cast)
+     */
+    public static Call call(String name, Class<?>[] params, Arg... args) {
+        return new Call(name, params, args);
+    }
+
+    public static Arg jRT() {
+        return new Arg(Arg.JRT, null, null, null, null, 0);
+    }
+
+    public static Arg self() {
+        return new Arg(Arg.THIS, null, null, null, null, 0);
+    }
+
+    /**
+     * @param n 1 based like $n of CodeWriter code
+     */
+    public static Arg arg(int n) {
+        return new Arg(Arg.ARG, null, null, null, null, n);
+    }
+
+    /**
+     * value returned by the method, first argument of after call only
+     */
+    public static Arg result() {
+        return new Arg(Arg.RESULT, null, null, null, null, 0);
+    }
+
+    /**
+     * field of instrumented class, its type is taken from the class
+     */
+    public static Arg field(String name) {
+        return new Arg(Arg.FIELD, self(), null, name, null, 0);
+    }
+
+    /**
+     * field of target, which is cast to owner if needed
+     */
+    public static Arg field(Arg target, String owner, String name, String desc) {
+        return new Arg(Arg.FIELD, target, owner, name, desc, 0);
+    }
+
+    /**
+     * result of no argument method of target, which is cast to owner if needed
+     */
+    public static Arg invoke(Arg target, String owner, String name, String desc) {
+        return new Arg(Arg.INVOKE, target, owner, name, desc, 0);
+    }
+
+    public static class Call {
+        public static final String OWNER = Type.getInternalName(Accumulator.class);
+
+        public final String name;
+        public final String desc;
+        public final Type[] params;
+        public final Arg[] args;
+
+        Call(String name, Class<?>[] params, Arg[] args) {
+            if (params.length != args.length) {
+                throw new IllegalArgumentException("Accumulator." + name + ": " + params.length
+                        + " parameters, but " + args.length + " arguments");
+            }
+            for (int i = 1; i < args.length; ++i) {
+                if (args[i].kind == Arg.RESULT) {
+                    throw new IllegalArgumentException("Accumulator." + name + ": result must be the first argument");
+                }
+            }
+            Method m;
+            try {
+                m = Accumulator.class.getMethod(name, params);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("There is no Accumulator." + name + " for " + Type.getMethodDescriptor(Type.VOID_TYPE, types(params)));
+            }
+            this.name = name;
+            this.desc = Type.getMethodDescriptor(m);
+            this.params = Type.getArgumentTypes(m);
+            this.args = args;
+        }
+
+        public boolean withResult() {
+            return args.length > 0 && args[0].kind == Arg.RESULT;
+        }
+
+        private static Type[] types(Class<?>[] classes) {
+            Type[] t = new Type[classes.length];
+            for (int i = 0; i < classes.length; ++i) {
+                t[i] = Type.getType(classes[i]);
+            }
+            return t;
+        }
+    }
+
+    public static class Arg {
+        public static final int JRT = 0;
+        public static final int THIS = 1;
+        public static final int ARG = 2;
+        public static final int RESULT = 3;
+        public static final int FIELD = 4;
+        public static final int INVOKE = 5;
+
+        public final int kind;
+        public final Arg target;
+        public final String owner;
+        public final String name;
+        public final String desc;
+        public final int n;
+
+        Arg(int kind, Arg target, String owner, String name, String desc, int n) {
+            this.kind = kind;
+            this.target = target;
+            this.owner = owner;
+            this.name = name;
+            this.desc = desc;
+            this.n = n;
+        }
+    }
+}
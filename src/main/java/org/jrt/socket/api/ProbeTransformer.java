@@ -0,0 +1,259 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.socket.api;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jrt.impl.JRT;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * ASM counterpart of Transformer (-weaver=asm): probes of ProbeWriter
+ * become INVOKESTATIC of Accumulator with their arguments loaded straight
+ * from locals, fields and no argument getters. Nothing is compiled and
+ * no class pool is kept, untouched methods are copied as they are.
+ *
+ * As with Transformer, after calls are made before normal returns only,
+ * a class which can't be instrumented is left as it is.
+ */
+public class ProbeTransformer implements ClassFileTransformer {
+
+    private final JRT jrt;
+
+    private final ProbeWriter probeWriter;
+
+    public ProbeTransformer(JRT jrt, ProbeWriter probeWriter) {
+        this.jrt = jrt;
+        this.probeWriter = probeWriter;
+
+        probeWriter.init(jrt);
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className,
+            Class clazz, java.security.ProtectionDomain domain,
+            byte[] bytes) {
+
+        if (!probeWriter.needInstrument(className)) {
+            return null;
+        }
+
+        try {
+            return doClass(className, bytes);
+        } catch (Throwable t) {
+            System.err.println("Could not instrument class=" + className + ", exception : " + t);
+            System.err.flush();
+            t.printStackTrace();
+            return null;
+        }
+    }
+
+    public byte[] doClass(final String className, byte[] b) {
+        final Map<String, List<Probe>> probes = new HashMap<String, List<Probe>>();
+        for (Probe p : probeWriter.probes(className)) {
+            List<Probe> l = probes.get(p.methodName + p.methodDesc);
+            if (null == l) {
+                probes.put(p.methodName + p.methodDesc, l = new ArrayList<Probe>());
+            }
+            l.add(p);
+        }
+        if (probes.isEmpty()) {
+            return null;
+        }
+
+        ClassReader cr = new ClassReader(b);
+        // no new branches, so stack map frames of the class stay valid
+        ClassWriter cw = new ClassWriter(cr, ClassWriter.COMPUTE_MAXS);
+        final Map<String, String> fields = new HashMap<String, String>();
+
+        cr.accept(new ClassVisitor(Opcodes.ASM9, cw) {
+            @Override
+            public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+                // fields are visited before methods
+                fields.put(name, desc);
+                return super.visitField(access, name, desc, signature, value);
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+                List<Probe> l = probes.get(name + desc);
+                if (null == l || (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0) {
+                    return mv;
+                }
+                return new ProbeAdapter(mv, className, fields, access, name, desc, l);
+            }
+        }, 0);
+
+        return cw.toByteArray();
+    }
+
+    private class ProbeAdapter extends MethodVisitor {
+
+        private final String className;
+        private final Map<String, String> fields;
+        private final boolean isStatic;
+        private final boolean isConstructor;
+        private final String method;
+        private final Type[] argTypes;
+        private final Type returnType;
+        private final List<Probe> probes;
+
+        ProbeAdapter(MethodVisitor mv, String className, Map<String, String> fields,
+                int access, String name, String desc, List<Probe> probes) {
+            super(Opcodes.ASM9, mv);
+            this.className = className;
+            this.fields = fields;
+            this.isStatic = (access & Opcodes.ACC_STATIC) != 0;
+            this.isConstructor = name.equals("<init>");
+            this.method = className + "." + name + desc;
+            this.argTypes = Type.getArgumentTypes(desc);
+            this.returnType = Type.getReturnType(desc);
+            this.probes = probes;
+        }
+
+        @Override
+        public void visitCode() {
+            super.visitCode();
+            for (Probe p : probes) {
+                if (null != p.before) {
+                    if (isConstructor) {
+                        throw new IllegalStateException(method + ": this is not initialized yet");
+                    }
+                    emit(p.before);
+                }
+            }
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            if (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN) {
+                for (Probe p : probes) {
+                    if (null != p.after) {
+                        if (p.after.withResult()) {
+                            super.visitInsn(returnType.getSize() == 2 ? Opcodes.DUP2 : Opcodes.DUP);
+                        }
+                        emit(p.after);
+                    }
+                }
+            }
+            super.visitInsn(opcode);
+        }
+
+        private void emit(Probe.Call call) {
+            for (int i = 0; i < call.args.length; ++i) {
+                Probe.Arg a = call.args[i];
+                Type t;
+                if (a.kind == Probe.Arg.RESULT) {
+                    if (returnType.getSort() == Type.VOID) {
+                        throw new IllegalStateException(method + " returns nothing");
+                    }
+                    // duplicated before the call
+                    t = returnType;
+                } else {
+                    t = load(a);
+                }
+                convert(t, call.params[i]);
+            }
+            super.visitMethodInsn(Opcodes.INVOKESTATIC, Probe.Call.OWNER, call.name, call.desc, false);
+        }
+
+        private Type load(Probe.Arg a) {
+            switch (a.kind) {
+                case Probe.Arg.JRT:
+                    if (null != jrt.bindingClass) {
+                        super.visitFieldInsn(Opcodes.GETSTATIC, jrt.bindingClass.replace('.', '/'),
+                                "jRT", Type.getDescriptor(JRT.class));
+                    } else {
+                        super.visitLdcInsn(jrt.configuration.uuid);
+                        super.visitMethodInsn(Opcodes.INVOKESTATIC, Probe.Call.OWNER, "getJRT",
+                                Type.getMethodDescriptor(Type.getType(JRT.class), Type.getType(String.class)), false);
+                    }
+                    return Type.getType(JRT.class);
+
+                case Probe.Arg.THIS:
+                    if (isStatic) {
+                        throw new IllegalStateException(method + " is static");
+                    }
+                    super.visitVarInsn(Opcodes.ALOAD, 0);
+                    return Type.getObjectType(className);
+
+                case Probe.Arg.ARG: {
+                    if (a.n < 1 || a.n > argTypes.length) {
+                        throw new IllegalStateException(method + " has no argument $" + a.n);
+                    }
+                    int local = isStatic ? 0 : 1;
+                    for (int i = 0; i < a.n - 1; ++i) {
+                        local += argTypes[i].getSize();
+                    }
+                    Type t = argTypes[a.n - 1];
+                    super.visitVarInsn(t.getOpcode(Opcodes.ILOAD), local);
+                    return t;
+                }
+
+                case Probe.Arg.FIELD: {
+                    Type target = load(a.target);
+                    String owner = null != a.owner ? a.owner : className;
+                    String desc = a.desc;
+                    if (null == desc && owner.equals(className)) {
+                        desc = fields.get(a.name);
+                    }
+                    if (null == desc) {
+                        throw new IllegalStateException(method + ": there is no field " + owner + "." + a.name);
+                    }
+                    cast(target, owner);
+                    super.visitFieldInsn(Opcodes.GETFIELD, owner, a.name, desc);
+                    return Type.getType(desc);
+                }
+
+                case Probe.Arg.INVOKE: {
+                    Type target = load(a.target);
+                    cast(target, a.owner);
+                    super.visitMethodInsn(Opcodes.INVOKEVIRTUAL, a.owner, a.name, a.desc, false);
+                    return Type.getReturnType(a.desc);
+                }
+
+                default:
+                    throw new IllegalStateException(method + ": result can be the first argument only");
+            }
+        }
+
+        private void cast(Type from, String owner) {
+            if (from.getSort() != Type.OBJECT || !from.getInternalName().equals(owner)) {
+                super.visitTypeInsn(Opcodes.CHECKCAST, owner);
+            }
+        }
+
+        private void convert(Type from, Type to) {
+            if (from.equals(to)) {
+                return;
+            }
+            boolean fromRef = from.getSort() == Type.OBJECT || from.getSort() == Type.ARRAY;
+            boolean toRef = to.getSort() == Type.OBJECT || to.getSort() == Type.ARRAY;
+            if (fromRef && toRef) {
+                if (!to.getInternalName().equals("java/lang/Object")) {
+                    super.visitTypeInsn(Opcodes.CHECKCAST, to.getInternalName());
+                }
+                return;
+            }
+            if (from.getSort() == Type.INT && to.getSort() == Type.LONG) {
+                super.visitInsn(Opcodes.I2L);
+                return;
+            }
+            throw new IllegalStateException(method + ": " + from + " can't be passed as " + to);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.socket.api;
+
+import java.util.List;
+import org.jrt.impl.JRT;
+
+/**
+ * CodeWriter of ProbeTransformer (-weaver=asm): probes are typed calls
+ * instead of source code, so no compiler is needed to instrument a class.
+ */
+public interface ProbeWriter {
+
+    public void init(JRT jrt);
+
+    public boolean needInstrument(String className);
+
+    public List<Probe> probes(String className);
+
+}
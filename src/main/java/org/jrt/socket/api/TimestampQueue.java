@@ -0,0 +1,89 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.socket.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free FIFO of outstanding timestamps of a socket, used to
+ * pair pipelined requests and responses (N writes followed by N reads give
+ * N latencies). 0 means there is nothing to pair with, so it is never
+ * stored.
+ *
+ * Every slot carries a sequence number telling which lap of the ring it
+ * was last written or read in, so neither side ever takes a slot the other
+ * hasn't finished with (a slot claimed by offer but not filled yet reads as
+ * empty, a slot taken by poll but not released yet reads as full). When
+ * the queue is full the new timestamp is dropped: offer never consumes,
+ * consumers are the only ones moving the head.
+ */
+public class TimestampQueue {
+
+    private final int capacity;
+    private final long[] times;
+    // sequence of a slot: 2 * position of the ring it can be offered at,
+    // 2 * position + 1 once it's filled and can be polled (doubled, so
+    // filled and free of the next lap differ even with capacity 1)
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public TimestampQueue(int capacity) {
+        this.capacity = capacity;
+        this.times = new long[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; ++i) {
+            sequences.set(i, 2L * i);
+        }
+    }
+
+    /**
+     * @return false if the queue is full and the timestamp was dropped
+     */
+    public boolean offer(long time) {
+        time = time == 0 ? 1 : time;
+        while (true) {
+            long t = tail.get();
+            int i = (int) (t % capacity);
+            long d = sequences.get(i) - 2 * t;
+            if (d == 0) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    times[i] = time;
+                    // publishes the time to poll
+                    sequences.set(i, 2 * t + 1);
+                    return true;
+                }
+            } else if (d < 0) {
+                // the slot of previous lap is not polled yet
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return the oldest timestamp or 0 if there is nothing to pair with
+     */
+    public long poll() {
+        while (true) {
+            long h = head.get();
+            int i = (int) (h % capacity);
+            long d = sequences.get(i) - (2 * h + 1);
+            if (d == 0) {
+                if (head.compareAndSet(h, h + 1)) {
+                    long time = times[i];
+                    // frees the slot for the next lap
+                    sequences.set(i, 2 * (h + capacity));
+                    return time;
+                }
+            } else if (d < 0) {
+                // empty, or the slot is claimed by offer but not filled yet
+                return 0;
+            }
+        }
+    }
+}
@@ -94,6 +94,7 @@ public class Transformer implements ClassFileTransformer {
                         if ( method.isEmpty() == false && !Modifier.isNative(method.getModifiers()) ) {
                             String pre = codeWriter.preCode(method.getLongName());
                             String post = codeWriter.postCode(method.getLongName());
+                            String onThrow = codeWriter.catchCode(method.getLongName());
 
                             if (pre != null && pre.length() > 0) {
                                 code = pre;
@@ -105,7 +106,12 @@ public class Transformer implements ClassFileTransformer {
                                 methodDescription = "insert before method " + method.getLongName();
                                 method.insertAfter(post);
                             }
-                            if (traceMethods && (pre != null && pre.length() > 0 || post != null && post.length() > 0)) {
+                            if (onThrow != null && onThrow.length() > 0) {
+                                code = onThrow;
+                                methodDescription = "add catch to method " + method.getLongName();
+                                method.addCatch("{ " + onThrow + " throw $e; }", pool.get("java.lang.Throwable"));
+                            }
+                            if (traceMethods && (pre != null && pre.length() > 0 || post != null && post.length() > 0 || onThrow != null && onThrow.length() > 0)) {
                                 System.out.println(">>> " + className + " method " + method.getLongName() + " will be instrumented.");
                             }
                         }
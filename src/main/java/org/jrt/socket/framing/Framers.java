@@ -0,0 +1,69 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.socket.framing;
+
+import org.jrt.socket.api.MessageFramer;
+
+/**
+ * Resolves -framer argument to framer factory:
+ *      http                HTTP/1.x
+ *      resp                Redis RESP
+ *      length[:<bytes>]    length-prefixed binary, 4 bytes prefix by default
+ *      <class name>        custom MessageFramer.Factory implementation
+ */
+public class Framers {
+
+    public static MessageFramer.Factory forSpec(String spec) {
+        if ("http".equals(spec)) {
+            return new MessageFramer.Factory() {
+                @Override
+                public MessageFramer newFramer(boolean inbound) {
+                    return new HttpFramer();
+                }
+            };
+        }
+
+        if ("resp".equals(spec) || "redis".equals(spec)) {
+            return new MessageFramer.Factory() {
+                @Override
+                public MessageFramer newFramer(boolean inbound) {
+                    return new RespFramer();
+                }
+            };
+        }
+
+        if ("length".equals(spec) || spec.startsWith("length:")) {
+            final int prefixSize;
+            try {
+                prefixSize = spec.length() > "length:".length() ? 
+                        Integer.parseInt(spec.substring("length:".length())) : 4;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("wrong length prefix size: " + spec);
+            }
+            if (prefixSize < 1 || prefixSize > 8) {
+                throw new IllegalArgumentException("length prefix size must be 1..8 bytes: " + spec);
+            }
+            return new MessageFramer.Factory() {
+                @Override
+                public MessageFramer newFramer(boolean inbound) {
+                    return new LengthPrefixFramer(prefixSize);
+                }
+            };
+        }
+
+        try {
+            Class<?> c = Class.forName(spec, true, ClassLoader.getSystemClassLoader());
+            return (MessageFramer.Factory) c.newInstance();
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("unknown framer " + spec);
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException(spec + " doesn't implement " + MessageFramer.Factory.class.getName());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("can't create framer " + spec + ": " + e);
+        }
+    }
+}
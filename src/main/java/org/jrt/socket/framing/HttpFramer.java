@@ -0,0 +1,305 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.socket.framing;
+
+import org.jrt.socket.api.MessageFramer;
+
+/**
+ * HTTP/1.x requests and responses. Message length is taken from
+ * Content-Length or chunked Transfer-Encoding; messages with neither end
+ * right after headers (which is correct for requests without body, but
+ * not for responses delimited by connection close).
+ *
+ * Responses to HEAD requests and 204/304 responses end right after headers
+ * whatever their headers say. Interim 1xx responses (but 101) are skipped,
+ * the final response to the same request follows. HEAD requests are told
+ * by the framer of the opposite direction of the socket (see
+ * MessageFramer.Duplex), which remembers the methods of the last 64
+ * requests not answered yet.
+ */
+public class HttpFramer extends StreamFramer implements MessageFramer.Duplex {
+
+    private static final byte[] contentLength = "content-length:".getBytes();
+    private static final byte[] transferEncoding = "transfer-encoding:".getBytes();
+    private static final byte[] chunked = "chunked".getBytes();
+    private static final byte[] head = "HEAD ".getBytes();
+    private static final byte[] http = "HTTP/".getBytes();
+    private static final int START_LINE = 16;
+
+    private static final int HEADERS = 0;
+    private static final int BODY = 1;
+    private static final int CHUNK_SIZE = 2;
+    private static final int CHUNK_DATA = 3;
+    private static final int CHUNK_END = 4;
+    private static final int TRAILERS = 5;
+
+    private int state = HEADERS;
+    private boolean messageStarted = false;
+
+    //beginning of the request or status line of current message
+    private final byte[] startLine = new byte[START_LINE];
+    private int startLineLength;
+    private boolean headRequest;
+
+    //shared with the framer of opposite direction, see setOpposite
+    private Requests requests = new Requests();
+    //responses framed so far
+    private long responses;
+
+    //current header line
+    private int lineLength;
+    private int contentLengthMatch;
+    private int transferEncodingMatch;
+    private int chunkedMatch;
+
+    private long length;
+    private boolean isChunked;
+    private boolean chunkExtension;
+    private long remaining;
+
+    /**
+     * Requests seen by one direction of a socket, the other one frames the
+     * responses: a bit per request, set for HEAD ones. Written by request
+     * framer only.
+     */
+    static class Requests {
+        volatile long count;
+        volatile long headMask;
+
+        void add(boolean isHead) {
+            long bit = 1L << (count & 63);
+            headMask = isHead ? headMask | bit : headMask & ~bit;
+            count = count + 1;
+        }
+
+        /**
+         * @return true if the request n was HEAD, false if it's unknown
+         */
+        boolean isHead(long n) {
+            long mask = headMask;
+            return n < count && (mask & (1L << (n & 63))) != 0;
+        }
+    }
+
+    @Override
+    public void setOpposite(MessageFramer opposite) {
+        if (opposite instanceof HttpFramer) {
+            requests = ((HttpFramer) opposite).requests;
+        }
+    }
+
+    @Override
+    public void reset() {
+        state = HEADERS;
+        messageStarted = false;
+        startLineLength = 0;
+        length = 0;
+        isChunked = false;
+        remaining = 0;
+        newLine();
+    }
+
+    private void newLine() {
+        lineLength = 0;
+        contentLengthMatch = 0;
+        transferEncodingMatch = 0;
+    }
+
+    private boolean messageDone() {
+        reset();
+        return true;
+    }
+
+    @Override
+    protected long skippable() {
+        return state == BODY || state == CHUNK_DATA ? remaining : 0;
+    }
+
+    @Override
+    protected boolean skip(int n) {
+        remaining -= n;
+        if (remaining > 0) {
+            return false;
+        }
+        if (state == CHUNK_DATA) {
+            state = CHUNK_END;
+            return false;
+        }
+        return messageDone();
+    }
+
+    private static int match(byte[] pattern, int matched, byte b) {
+        if (matched < 0 || matched >= pattern.length) {
+            return matched;
+        }
+        if (b >= 'A' && b <= 'Z') {
+            b += 'a' - 'A';
+        }
+        return pattern[matched] == b ? matched + 1 : -1;
+    }
+
+    @Override
+    protected boolean next(byte b) {
+        switch (state) {
+            case HEADERS:
+                return nextHeaderByte(b);
+            case CHUNK_SIZE:
+                return nextChunkSizeByte(b);
+            case CHUNK_END:
+                if (b == '\n') {
+                    state = CHUNK_SIZE;
+                    length = 0;
+                    chunkExtension = false;
+                }
+                return false;
+            case TRAILERS:
+                if (b == '\n') {
+                    if (lineLength == 0) {
+                        return messageDone();
+                    }
+                    lineLength = 0;
+                } else if (b != '\r') {
+                    ++lineLength;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private boolean nextHeaderByte(byte b) {
+        if (b == '\r') {
+            return false;
+        }
+        if (b == '\n') {
+            if (lineLength > 0) {
+                messageStarted = true;
+                newLine();
+                return false;
+            }
+            if (!messageStarted) {
+                //empty lines between messages
+                return false;
+            }
+            if (startsWith(http)) {
+                int status = status();
+                if (status >= 100 && status < 200 && status != 101) {
+                    //interim response, not a message
+                    reset();
+                    return false;
+                }
+                if (requests.isHead(responses++) || status == 204 || status == 304) {
+                    return messageDone();
+                }
+            } else {
+                requests.add(startsWith(head));
+            }
+            if (isChunked) {
+                state = CHUNK_SIZE;
+                length = 0;
+                chunkExtension = false;
+                return false;
+            }
+            if (length > 0) {
+                state = BODY;
+                remaining = length;
+                return false;
+            }
+            return messageDone();
+        }
+
+        ++lineLength;
+        if (!messageStarted) {
+            if (startLineLength < START_LINE) {
+                startLine[startLineLength++] = b;
+            }
+            return false;
+        }
+        if (contentLengthMatch == contentLength.length) {
+            if (b >= '0' && b <= '9') {
+                length = length * 10 + (b - '0');
+            }
+        } else if (transferEncodingMatch == transferEncoding.length) {
+            chunkedMatch = match(chunked, chunkedMatch, b);
+            if (chunkedMatch == chunked.length) {
+                isChunked = true;
+            } else if (chunkedMatch < 0) {
+                chunkedMatch = match(chunked, 0, b);
+            }
+        } else {
+            contentLengthMatch = match(contentLength, contentLengthMatch, b);
+            transferEncodingMatch = match(transferEncoding, transferEncodingMatch, b);
+            if (contentLengthMatch == contentLength.length) {
+                length = 0;
+            }
+            if (transferEncodingMatch == transferEncoding.length) {
+                chunkedMatch = 0;
+            }
+        }
+        return false;
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        if (startLineLength < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; ++i) {
+            if (startLine[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return status code of the status line ("HTTP/1.1 204 ...") or -1
+     */
+    private int status() {
+        int i = http.length;
+        while (i < startLineLength && startLine[i] != ' ') {
+            ++i;
+        }
+        if (i + 3 >= startLineLength) {
+            return -1;
+        }
+        int status = 0;
+        for (int j = i + 1; j <= i + 3; ++j) {
+            byte d = startLine[j];
+            if (d < '0' || d > '9') {
+                return -1;
+            }
+            status = status * 10 + (d - '0');
+        }
+        return status;
+    }
+
+    private boolean nextChunkSizeByte(byte b) {
+        if (b == '\n') {
+            if (length == 0) {
+                state = TRAILERS;
+                lineLength = 0;
+                return false;
+            }
+            state = CHUNK_DATA;
+            remaining = length;
+            return false;
+        }
+        if (chunkExtension || b == '\r') {
+            return false;
+        }
+        if (b == ';') {
+            chunkExtension = true;
+        } else if (b >= '0' && b <= '9') {
+            length = length * 16 + (b - '0');
+        } else if (b >= 'a' && b <= 'f') {
+            length = length * 16 + (b - 'a' + 10);
+        } else if (b >= 'A' && b <= 'F') {
+            length = length * 16 + (b - 'A' + 10);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.socket.framing;
+
+/**
+ * Binary messages prefixed by big-endian unsigned length of the body.
+ */
+public class LengthPrefixFramer extends StreamFramer {
+
+    private final int prefixSize;
+
+    private int prefixRead = 0;
+    private long length = 0;
+    private long remaining = 0;
+
+    public LengthPrefixFramer(int prefixSize) {
+        this.prefixSize = prefixSize;
+    }
+
+    @Override
+    public void reset() {
+        prefixRead = 0;
+        length = 0;
+        remaining = 0;
+    }
+
+    @Override
+    protected long skippable() {
+        return remaining;
+    }
+
+    @Override
+    protected boolean skip(int n) {
+        remaining -= n;
+        if (remaining > 0) {
+            return false;
+        }
+        reset();
+        return true;
+    }
+
+    @Override
+    protected boolean next(byte b) {
+        length = (length << 8) | (b & 0xff);
+        if (++prefixRead < prefixSize) {
+            return false;
+        }
+        if (length == 0) {
+            reset();
+            return true;
+        }
+        remaining = length;
+        prefixRead = 0;
+        return false;
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.socket.framing;
+
+/**
+ * Redis serialization protocol (RESP2 and aggregate/simple types of RESP3):
+ * one message is one top level value, f.e. a command array or a reply.
+ * Inline commands (plain text lines) are messages too.
+ */
+public class RespFramer extends StreamFramer {
+
+    private static final int MAX_DEPTH = 32;
+
+    private static final int TYPE = 0;
+    private static final int LINE = 1;
+    private static final int NUMBER = 2;
+    private static final int BULK = 3;
+
+    private int state = TYPE;
+    private byte type;
+
+    private long number;
+    private boolean negative;
+    private long remaining;
+
+    //elements left in every open aggregate
+    private final long[] elements = new long[MAX_DEPTH];
+    private int depth = 0;
+
+    @Override
+    public void reset() {
+        state = TYPE;
+        depth = 0;
+        remaining = 0;
+    }
+
+    @Override
+    protected long skippable() {
+        return state == BULK ? remaining : 0;
+    }
+
+    @Override
+    protected boolean skip(int n) {
+        remaining -= n;
+        if (remaining > 0) {
+            return false;
+        }
+        return valueDone();
+    }
+
+    /**
+     * @return true if the top level value is completed
+     */
+    private boolean valueDone() {
+        state = TYPE;
+        while (depth > 0) {
+            if (--elements[depth - 1] > 0) {
+                return false;
+            }
+            --depth;
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean next(byte b) {
+        switch (state) {
+            case TYPE:
+                type = b;
+                switch (b) {
+                    case '$': case '*': case '%': case '~': case '>': case '=': case '!':
+                        state = NUMBER;
+                        number = 0;
+                        negative = false;
+                        return false;
+                    case '\r': case '\n':
+                        //empty inline command
+                        return false;
+                    default:
+                        //simple types and inline commands
+                        state = LINE;
+                        return false;
+                }
+            case LINE:
+                if (b == '\n') {
+                    return valueDone();
+                }
+                return false;
+            case NUMBER:
+                if (b == '-') {
+                    negative = true;
+                } else if (b >= '0' && b <= '9') {
+                    number = number * 10 + (b - '0');
+                } else if (b == '\n') {
+                    return numberDone(negative ? -number : number);
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private boolean numberDone(long n) {
+        switch (type) {
+            case '$': case '=': case '!':
+                if (n < 0) {
+                    return valueDone();
+                }
+                state = BULK;
+                remaining = n + 2;
+                return false;
+            default:
+                if (type == '%') {
+                    n *= 2;
+                }
+                if (n <= 0) {
+                    return valueDone();
+                }
+                if (depth == MAX_DEPTH) {
+                    //too deep to follow, give up on this message
+                    reset();
+                    return true;
+                }
+                elements[depth++] = n;
+                state = TYPE;
+                return false;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+ * @author Fedor Burdun
+ */
+package org.jrt.socket.framing;
+
+import java.nio.ByteBuffer;
+import org.jrt.socket.api.MessageFramer;
+
+/**
+ * Base of byte-by-byte framers. Message bodies of known length are skipped
+ * without looking at their bytes.
+ */
+public abstract class StreamFramer implements MessageFramer {
+
+    /**
+     * @return number of bytes which can be skipped without inspection
+     */
+    protected abstract long skippable();
+
+    /**
+     * @return true if the message is completed by skipped bytes
+     */
+    protected abstract boolean skip(int n);
+
+    /**
+     * @return true if the message is completed by this byte
+     */
+    protected abstract boolean next(byte b);
+
+    @Override
+    public int onBytes(byte[] b, int off, int len) {
+        int messages = 0;
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            long s = skippable();
+            if (s > 0) {
+                int n = (int) Math.min(s, end - i);
+                i += n;
+                if (skip(n)) {
+                    ++messages;
+                }
+            } else if (next(b[i++])) {
+                ++messages;
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public int onBytes(ByteBuffer buf, int from, int to) {
+        int messages = 0;
+        int i = from;
+        while (i < to) {
+            long s = skippable();
+            if (s > 0) {
+                int n = (int) Math.min(s, to - i);
+                i += n;
+                if (skip(n)) {
+                    ++messages;
+                }
+            } else if (next(buf.get(i++))) {
+                ++messages;
+            }
+        }
+        return messages;
+    }
+}
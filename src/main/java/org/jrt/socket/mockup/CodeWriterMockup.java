@@ -42,5 +42,11 @@ public class CodeWriterMockup implements CodeWriter {
         return null;
     }
 
+    @Override
+    public String catchCode(String methodName) {
+        System.out.println("catchCode: " + methodName);
+        return null;
+    }
+
     
 }
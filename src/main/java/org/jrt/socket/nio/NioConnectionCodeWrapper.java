@@ -0,0 +1,108 @@
+/*
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ * 
+
+ */
+package org.jrt.socket.nio;
+
+import org.jrt.socket.regular.Accumulator;
+
+/**
+ * Connect/finishConnect/accept/close of socket channels. It has to be
+ * registered after NioSocketCodeWrapper, so JRTHic of the channel is 
+ * already registered when connect post code runs.
+ *
+ * @author fijiol
+ */
+public class NioConnectionCodeWrapper extends NioSocketCodeWrapper {
+
+    @Override
+    public boolean needInstrument(String className) {
+        return className != null && 
+                (
+                className.equals("sun/nio/ch/SocketChannelImpl") ||
+                className.equals("sun/nio/ch/ServerSocketChannelImpl") ||
+                false
+                );
+    }
+
+    @Override
+    public String preCode(String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+
+        if (methodName.equals("sun.nio.ch.SocketChannelImpl.connect(java.net.SocketAddress)") ||
+            methodName.equals("sun.nio.ch.ServerSocketChannelImpl.accept()")) {
+            return _debugWraps(
+                    Accumulator._connectionBefore(_jRT())
+            );
+        }
+
+        if (methodName.equals("sun.nio.ch.SocketChannelImpl.implCloseSelectableChannel()")) {
+            return _debugWraps(
+                    _if("state == ST_CONNECTED && remoteAddress instanceof java.net.InetSocketAddress && localAddress instanceof java.net.InetSocketAddress",
+                            Accumulator._closeBefore(_jRT(), _inet("remoteAddress") + ".getAddress()", _inet("remoteAddress") + ".getPort()", _inet("localAddress") + ".getPort()"))
+            );
+        }
+
+        return null;
+    }
+
+    @Override
+    public String postCode(String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+
+        if (methodName.equals("sun.nio.ch.SocketChannelImpl.connect(java.net.SocketAddress)")) {
+            return _debugWraps(
+                    Accumulator._connectAfter(_jRT(), _channelHic(), "$_")
+            );
+        }
+
+        if (methodName.equals("sun.nio.ch.SocketChannelImpl.finishConnect()")) {
+            return _debugWraps(
+                    Accumulator._finishConnectAfter(_jRT(), _channelHic(), "$_")
+            );
+        }
+
+        if (methodName.equals("sun.nio.ch.ServerSocketChannelImpl.accept()")) {
+            return _debugWraps(
+                    _if("$_ != null",
+                            Accumulator._acceptAfter(_jRT(), "$_.socket().getInetAddress()", "$_.socket().getPort()", "$_.socket().getLocalPort()"))
+            );
+        }
+
+        return null;
+    }
+
+    @Override
+    public String catchCode(String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+
+        // channel of a failed connect is not registered, see NioSocketCodeWrapper
+        if (methodName.equals("sun.nio.ch.SocketChannelImpl.connect(java.net.SocketAddress)")) {
+            return _debugWraps(
+                    _if("$1 instanceof java.net.InetSocketAddress",
+                            Accumulator._connectFailed(_jRT(), _inet("$1") + ".getAddress()", _inet("$1") + ".getPort()", "0"))
+            );
+        }
+
+        if (methodName.equals("sun.nio.ch.SocketChannelImpl.finishConnect()")) {
+            return _debugWraps(
+                    Accumulator._finishConnectFailed(_jRT(), _channelHic())
+            );
+        }
+
+        return null;
+    }
+
+    public String _channelHic() {
+        return _jRT() + ".sockRTs.get(fd)";
+    }
+
+}
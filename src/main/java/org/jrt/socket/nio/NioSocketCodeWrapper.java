@@ -16,6 +16,22 @@ import org.jrt.socket.regular.JavaNetSocketCodeWrapper;
  */
 public class NioSocketCodeWrapper extends JavaNetSocketCodeWrapper {
 
+    // Socket channels do I/O through these IOUtil methods: SocketChannelImpl
+    // through the first four, AsynchronousSocketChannel of JDK 17+ through
+    // the ones with async flag (of JDK 8/11 through the ones without offset
+    // and length, which delegate to READV/WRITEV). Since JDK 11 each of them
+    // delegates to a core overload which isn't instrumented and none of them
+    // calls another, so every operation is seen once. Overloads which the
+    // running JDK doesn't have are just not found.
+    private static final String IOUTIL_READ = "sun.nio.ch.IOUtil.read(java.io.FileDescriptor,java.nio.ByteBuffer,long,sun.nio.ch.NativeDispatcher)";
+    private static final String IOUTIL_READV = "sun.nio.ch.IOUtil.read(java.io.FileDescriptor,java.nio.ByteBuffer[],int,int,sun.nio.ch.NativeDispatcher)";
+    private static final String IOUTIL_WRITE = "sun.nio.ch.IOUtil.write(java.io.FileDescriptor,java.nio.ByteBuffer,long,sun.nio.ch.NativeDispatcher)";
+    private static final String IOUTIL_WRITEV = "sun.nio.ch.IOUtil.write(java.io.FileDescriptor,java.nio.ByteBuffer[],int,int,sun.nio.ch.NativeDispatcher)";
+    private static final String IOUTIL_ASYNC_READ = "sun.nio.ch.IOUtil.read(java.io.FileDescriptor,java.nio.ByteBuffer,long,boolean,sun.nio.ch.NativeDispatcher)";
+    private static final String IOUTIL_ASYNC_READV = "sun.nio.ch.IOUtil.read(java.io.FileDescriptor,java.nio.ByteBuffer[],boolean,sun.nio.ch.NativeDispatcher)";
+    private static final String IOUTIL_ASYNC_WRITE = "sun.nio.ch.IOUtil.write(java.io.FileDescriptor,java.nio.ByteBuffer,long,boolean,sun.nio.ch.NativeDispatcher)";
+    private static final String IOUTIL_ASYNC_WRITEV = "sun.nio.ch.IOUtil.write(java.io.FileDescriptor,java.nio.ByteBuffer[],boolean,sun.nio.ch.NativeDispatcher)";
+
     @Override
     public void init(JRT jRT) {
         super.init(jRT);
@@ -35,6 +51,7 @@ public class NioSocketCodeWrapper extends JavaNetSocketCodeWrapper {
     @Override
     public String postCode(String methodName) {
         
+        // accepted channel, JDK 8/11
         if (methodName.equals("sun.nio.ch.SocketChannelImpl(java.nio.channels.spi.SelectorProvider,java.io.FileDescriptor,java.net.InetSocketAddress)")) {
             return _block(
                     //ENSURE that fd everywhere can be get!
@@ -42,10 +59,19 @@ public class NioSocketCodeWrapper extends JavaNetSocketCodeWrapper {
             );
         }
 
+        // accepted channel, JDK 17+ (remote address can be unix domain one)
+        if (methodName.equals("sun.nio.ch.SocketChannelImpl(java.nio.channels.spi.SelectorProvider,java.net.ProtocolFamily,java.io.FileDescriptor,java.net.SocketAddress)")) {
+            return _block(
+                    _if("remoteAddress instanceof java.net.InetSocketAddress && localAddress instanceof java.net.InetSocketAddress",
+                            Accumulator._filter(_jRT(), "fd", _inet("remoteAddress") + ".getAddress()", _inet("remoteAddress") + ".getPort()", _inet("localAddress") + ".getPort()"))
+            );
+        }
+
         if (methodName.equals("sun.nio.ch.SocketChannelImpl.connect(java.net.SocketAddress)")) {
             return _block(
                     //ENSURE that fd everywhere can be get!
-                    Accumulator._filter(_jRT(), "fd", "((java.net.InetSocketAddress)$1).getAddress()", "((java.net.InetSocketAddress)$1).getPort()", "0")
+                    _if("$1 instanceof java.net.InetSocketAddress",
+                            Accumulator._filter(_jRT(), "fd", "((java.net.InetSocketAddress)$1).getAddress()", "((java.net.InetSocketAddress)$1).getPort()", "0"))
             );
         }
 
@@ -70,15 +96,29 @@ public class NioSocketCodeWrapper extends JavaNetSocketCodeWrapper {
             );
         }
 
-        if (methodName.contains("sun.nio.ch.IOUtil.read(java.io.FileDescriptor,")) {
+        // single buffer read/write returns int, scattering/gathering ones return long
+        // and their buffers are not inspected
+        if (methodName.equals(IOUTIL_READ) || methodName.equals(IOUTIL_ASYNC_READ)) {
+            return _debugWraps(
+                    Accumulator._readAfter(_jRT(), _ioHic(), "$2", "$_")
+            );
+        }
+
+        if (methodName.equals(IOUTIL_READV) || methodName.equals(IOUTIL_ASYNC_READV)) {
             return _debugWraps(
-                    Accumulator._readAfter(_jRT(), _ioHic())
+                    Accumulator._readAfter(_jRT(), _ioHic(), "$_")
             );
         }
 
-        if (methodName.contains("sun.nio.ch.IOUtil.write(java.io.FileDescriptor,")) {
+        if (methodName.equals(IOUTIL_WRITE) || methodName.equals(IOUTIL_ASYNC_WRITE)) {
             return _debugWraps(
-                    Accumulator._writeAfter(_jRT(), _ioHic())
+                    Accumulator._writeAfter(_jRT(), _ioHic(), "$2", "$_")
+            );
+        }
+
+        if (methodName.equals(IOUTIL_WRITEV) || methodName.equals(IOUTIL_ASYNC_WRITEV)) {
+            return _debugWraps(
+                    Accumulator._writeAfter(_jRT(), _ioHic(), "$_")
             );
         }
         
@@ -91,23 +131,36 @@ public class NioSocketCodeWrapper extends JavaNetSocketCodeWrapper {
             return null;
         }
                               
-        if (methodName.contains("sun.nio.ch.IOUtil.read(java.io.FileDescriptor,")) {
+        if (methodName.equals(IOUTIL_READ) || methodName.equals(IOUTIL_READV) ||
+            methodName.equals(IOUTIL_ASYNC_READ) || methodName.equals(IOUTIL_ASYNC_READV)) {
             
             return _debugWraps(
                     Accumulator._readBefore(_jRT(), _ioHic())
             );
         }
 
-        if (methodName.contains("sun.nio.ch.IOUtil.write(java.io.FileDescriptor,")) {
+        if (methodName.equals(IOUTIL_WRITE) || methodName.equals(IOUTIL_WRITEV) ||
+            methodName.equals(IOUTIL_ASYNC_WRITE) || methodName.equals(IOUTIL_ASYNC_WRITEV)) {
             return _debugWraps(
                     Accumulator._writeBefore(_jRT(), _ioHic())
             );
         }
 
+        if (methodName.equals("sun.nio.ch.SocketChannelImpl.implCloseSelectableChannel()") ||
+            methodName.equals("sun.nio.ch.AsynchronousSocketChannelImpl.close()")) {
+            return _debugWraps(
+                    Accumulator._unregister(_jRT(), "fd")
+            );
+        }
+
         return null;
     }
     
     
+    public String _inet(String socketAddress) {
+        return "((java.net.InetSocketAddress)" + socketAddress + ")";
+    }
+    
     @Override
     public String _ioHic() {
         // return _jRT() + ".sockRTs.get(fd)"; // <-- Expected fd ~ $1
@@ -0,0 +1,114 @@
+/*
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ * 
+
+ */
+package org.jrt.socket.nio;
+
+import java.util.Collections;
+import org.jrt.socket.regular.Accumulator;
+import org.jrt.socket.regular.JavaNetSocketCodeWrapper;
+
+/**
+ * java.net sockets of JDK 13+, where SocketInputStream/SocketOutputStream
+ * of PlainSocketImpl are replaced by NioSocketImpl. JRTHic of the socket 
+ * is registered by connect/accept, read/write(byte[],int,int) are called 
+ * once per operation of socket streams (also on virtual threads, which 
+ * are parked inside of them).
+ *
+ * @author fijiol
+ */
+public class NioSocketImplCodeWrapper extends JavaNetSocketCodeWrapper {
+
+    @Override
+    public boolean needInstrument(String className) {
+        return className != null && 
+                className.equals("sun/nio/ch/NioSocketImpl");
+    }
+
+    @Override
+    public String preCode(String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+
+        if (methodName.equals("sun.nio.ch.NioSocketImpl.read(byte[],int,int)")) {
+            return _debugWraps(
+                    Accumulator._readBefore(_jRT(), _ioHic())
+            );
+        }
+
+        if (methodName.equals("sun.nio.ch.NioSocketImpl.write(byte[],int,int)")) {
+            return _debugWraps(
+                    Accumulator._writeBefore(_jRT(), _ioHic())
+            );
+        }
+
+        if (methodName.equals("sun.nio.ch.NioSocketImpl.close()")) {
+            return _debugWraps(
+                    Accumulator._unregister(_jRT(), "this")
+            );
+        }
+
+        return null;
+    }
+
+    @Override
+    public String postCode(String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+
+        if (methodName.equals("sun.nio.ch.NioSocketImpl.connect(java.net.SocketAddress,int)")) {
+            return _debugWraps(
+                    _saveJRTHic(
+                            Accumulator._filter(_jRT(), "this", "address", "port", "localport")
+                    )
+            );
+        }
+
+        // $1 is the accepted socket, its protected fields are reachable through NioSocketImpl only
+        if (methodName.equals("sun.nio.ch.NioSocketImpl.accept(java.net.SocketImpl)")) {
+            String accepted = "((sun.nio.ch.NioSocketImpl)$1)";
+            String filter = Accumulator._filter(_jRT(), "$1", accepted + ".address", accepted + ".port", accepted + ".localport");
+            if (jRT.configuration.injectHicField) {
+                filter = accepted + "." + _hicField() + " = " + filter;
+            }
+            return _debugWraps(
+                    _block(filter)
+            );
+        }
+
+        if (methodName.equals("sun.nio.ch.NioSocketImpl.read(byte[],int,int)")) {
+            return _debugWraps(
+                    Accumulator._readAfter(_jRT(), _ioHic(), "$1", "$2", "$_")
+            );
+        }
+
+        if (methodName.equals("sun.nio.ch.NioSocketImpl.write(byte[],int,int)")) {
+            return _debugWraps(
+                    Accumulator._writeAfter(_jRT(), _ioHic(), "$1", "$2", "$3")
+            );
+        }
+
+        return null;
+    }
+
+    @Override
+    public Iterable<String> classNewFields(String className) {
+        if (jRT.configuration.injectHicField && needInstrument(className)) {
+            return Collections.singletonList("org.jrt.socket.api.JRTHic " + _hicField());
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String _ioHic() {
+        if (jRT.configuration.injectHicField) {
+            return "this." + _hicField();
+        }
+        return _jRT() + ".sockRTs.get(this)";
+    }
+
+}
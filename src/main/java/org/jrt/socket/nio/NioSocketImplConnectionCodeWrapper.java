@@ -0,0 +1,89 @@
+/*
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ * 
+
+ */
+package org.jrt.socket.nio;
+
+import org.jrt.socket.regular.Accumulator;
+import org.jrt.socket.regular.JavaNetSocketCodeWrapper;
+
+/**
+ * Connect/accept/close of java.net sockets of JDK 13+, see 
+ * JavaNetConnectionCodeWrapper.
+ *
+ * @author fijiol
+ */
+public class NioSocketImplConnectionCodeWrapper extends JavaNetSocketCodeWrapper {
+
+    @Override
+    public boolean needInstrument(String className) {
+        return className != null && 
+                className.equals("sun/nio/ch/NioSocketImpl");
+    }
+
+    @Override
+    public String preCode(String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+
+        if (methodName.equals("sun.nio.ch.NioSocketImpl.connect(java.net.SocketAddress,int)") ||
+            methodName.equals("sun.nio.ch.NioSocketImpl.accept(java.net.SocketImpl)")) {
+            return _debugWraps(
+                    Accumulator._connectionBefore(_jRT())
+            );
+        }
+
+        if (methodName.equals("sun.nio.ch.NioSocketImpl.close()")) {
+            return _debugWraps(
+                    _if("state == ST_CONNECTED",
+                            Accumulator._closeBefore(_jRT(), "address", "port", "localport"))
+            );
+        }
+
+        return null;
+    }
+
+    @Override
+    public String postCode(String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+
+        if (methodName.equals("sun.nio.ch.NioSocketImpl.connect(java.net.SocketAddress,int)")) {
+            return _debugWraps(
+                    Accumulator._connectAfter(_jRT(), "address", "port", "localport")
+            );
+        }
+
+        if (methodName.equals("sun.nio.ch.NioSocketImpl.accept(java.net.SocketImpl)")) {
+            String accepted = "((sun.nio.ch.NioSocketImpl)$1)";
+            return _debugWraps(
+                    Accumulator._acceptAfter(_jRT(), accepted + ".address", accepted + ".port", accepted + ".localport")
+            );
+        }
+
+        return null;
+    }
+
+    @Override
+    public String catchCode(String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+
+        // address and port are set by successful connect only
+        if (methodName.equals("sun.nio.ch.NioSocketImpl.connect(java.net.SocketAddress,int)")) {
+            String remote = "((java.net.InetSocketAddress)$1)";
+            return _debugWraps(
+                    _if("$1 instanceof java.net.InetSocketAddress",
+                            Accumulator._connectFailed(_jRT(), remote + ".getAddress()", remote + ".getPort()", "localport"))
+            );
+        }
+
+        return null;
+    }
+
+}
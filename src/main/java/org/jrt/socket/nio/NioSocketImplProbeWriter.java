@@ -0,0 +1,76 @@
+/*
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+
+ */
+package org.jrt.socket.nio;
+
+import static org.jrt.socket.api.Probe.*;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jrt.impl.JRT;
+import org.jrt.socket.api.Probe;
+import org.jrt.socket.api.ProbeWriter;
+
+/**
+ * Probes of NioSocketImplCodeWrapper for ProbeTransformer.
+ *
+ * @author fijiol
+ */
+public class NioSocketImplProbeWriter implements ProbeWriter {
+
+    private static final String IMPL = "sun/nio/ch/NioSocketImpl";
+
+    @Override
+    public void init(JRT jrt) {
+    }
+
+    @Override
+    public boolean needInstrument(String className) {
+        return className != null &&
+                className.equals(IMPL);
+    }
+
+    @Override
+    public List<Probe> probes(String className) {
+        if (!needInstrument(className)) {
+            return Collections.emptyList();
+        }
+
+        List<Probe> probes = new ArrayList<Probe>();
+        Class<?>[] register = sig(JRT.class, Object.class, InetAddress.class, int.class, int.class);
+
+        probes.add(after("connect", "(Ljava/net/SocketAddress;I)V",
+                call("register", register, jRT(), self(),
+                        field(self(), IMPL, "address", "Ljava/net/InetAddress;"),
+                        field(self(), IMPL, "port", "I"),
+                        field(self(), IMPL, "localport", "I"))));
+
+        // $1 is the accepted socket, its protected fields are reachable through NioSocketImpl only
+        probes.add(after("accept", "(Ljava/net/SocketImpl;)V",
+                call("register", register, jRT(), arg(1),
+                        field(arg(1), IMPL, "address", "Ljava/net/InetAddress;"),
+                        field(arg(1), IMPL, "port", "I"),
+                        field(arg(1), IMPL, "localport", "I"))));
+
+        probes.add(new Probe("read", "([BII)I",
+                call("readBefore", sig(JRT.class, Object.class), jRT(), self()),
+                call("readAfter", sig(int.class, JRT.class, Object.class, byte[].class, int.class),
+                        result(), jRT(), self(), arg(1), arg(2))));
+
+        probes.add(new Probe("write", "([BII)V",
+                call("writeBefore", sig(JRT.class, Object.class), jRT(), self()),
+                call("writeAfter", sig(JRT.class, Object.class, byte[].class, int.class, int.class),
+                        jRT(), self(), arg(1), arg(2), arg(3))));
+
+        probes.add(before("close", "()V",
+                call("unregister", sig(JRT.class, Object.class), jRT(), self())));
+
+        return probes;
+    }
+
+}
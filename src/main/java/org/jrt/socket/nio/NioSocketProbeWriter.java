@@ -0,0 +1,105 @@
+/*
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+
+ */
+package org.jrt.socket.nio;
+
+import static org.jrt.socket.api.Probe.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jrt.impl.JRT;
+import org.jrt.socket.api.Probe;
+import org.jrt.socket.api.ProbeWriter;
+
+/**
+ * Probes of NioSocketCodeWrapper for ProbeTransformer. Types of
+ * remoteAddress/localAddress differ between JDKs, they are taken from
+ * the instrumented class.
+ *
+ * @author fijiol
+ */
+public class NioSocketProbeWriter implements ProbeWriter {
+
+    // the same IOUtil overloads as NioSocketCodeWrapper probes, async ones
+    // are there since JDK 17 (AsynchronousSocketChannel), probes of methods
+    // the running JDK doesn't have match nothing
+    private static final String IOUTIL_SINGLE = "(Ljava/io/FileDescriptor;Ljava/nio/ByteBuffer;JLsun/nio/ch/NativeDispatcher;)I";
+    private static final String IOUTIL_VECTOR = "(Ljava/io/FileDescriptor;[Ljava/nio/ByteBuffer;IILsun/nio/ch/NativeDispatcher;)J";
+    private static final String IOUTIL_ASYNC_SINGLE = "(Ljava/io/FileDescriptor;Ljava/nio/ByteBuffer;JZLsun/nio/ch/NativeDispatcher;)I";
+    private static final String IOUTIL_ASYNC_VECTOR = "(Ljava/io/FileDescriptor;[Ljava/nio/ByteBuffer;ZLsun/nio/ch/NativeDispatcher;)J";
+
+    @Override
+    public void init(JRT jrt) {
+    }
+
+    @Override
+    public boolean needInstrument(String className) {
+        return className != null &&
+                (
+                className.equals("sun/nio/ch/IOUtil") ||
+                className.equals("sun/nio/ch/SocketChannelImpl") ||
+                className.equals("sun/nio/ch/AsynchronousSocketChannelImpl") ||
+                false
+                );
+    }
+
+    @Override
+    public List<Probe> probes(String className) {
+        if (!needInstrument(className)) {
+            return Collections.emptyList();
+        }
+
+        List<Probe> probes = new ArrayList<Probe>();
+
+        if (className.equals("sun/nio/ch/IOUtil")) {
+            Call readBefore = call("readBefore", sig(JRT.class, Object.class), jRT(), arg(1));
+            Call writeBefore = call("writeBefore", sig(JRT.class, Object.class), jRT(), arg(1));
+            Call readSingleAfter = call("readAfter", sig(int.class, JRT.class, Object.class, ByteBuffer.class),
+                    result(), jRT(), arg(1), arg(2));
+            Call readVectorAfter = call("readAfter", sig(long.class, JRT.class, Object.class),
+                    result(), jRT(), arg(1));
+            Call writeSingleAfter = call("writeAfter", sig(int.class, JRT.class, Object.class, ByteBuffer.class),
+                    result(), jRT(), arg(1), arg(2));
+            Call writeVectorAfter = call("writeAfter", sig(long.class, JRT.class, Object.class),
+                    result(), jRT(), arg(1));
+            // single buffer read/write returns int, scattering/gathering ones return long
+            // and their buffers are not inspected
+            for (String single : new String[] {IOUTIL_SINGLE, IOUTIL_ASYNC_SINGLE}) {
+                probes.add(new Probe("read", single, readBefore, readSingleAfter));
+                probes.add(new Probe("write", single, writeBefore, writeSingleAfter));
+            }
+            for (String vector : new String[] {IOUTIL_VECTOR, IOUTIL_ASYNC_VECTOR}) {
+                probes.add(new Probe("read", vector, readBefore, readVectorAfter));
+                probes.add(new Probe("write", vector, writeBefore, writeVectorAfter));
+            }
+            return probes;
+        }
+
+        Call accepted = call("registerChannel", sig(JRT.class, Object.class, Object.class, Object.class),
+                jRT(), field("fd"), field("remoteAddress"), field("localAddress"));
+        Call connected = call("registerChannel", sig(JRT.class, Object.class, Object.class),
+                jRT(), field("fd"), arg(1));
+        Call closed = call("unregister", sig(JRT.class, Object.class), jRT(), field("fd"));
+
+        if (className.equals("sun/nio/ch/SocketChannelImpl")) {
+            // accepted channel, JDK 8/11 and JDK 17+
+            probes.add(after("<init>", "(Ljava/nio/channels/spi/SelectorProvider;Ljava/io/FileDescriptor;Ljava/net/InetSocketAddress;)V", accepted));
+            probes.add(after("<init>", "(Ljava/nio/channels/spi/SelectorProvider;Ljava/net/ProtocolFamily;Ljava/io/FileDescriptor;Ljava/net/SocketAddress;)V", accepted));
+            probes.add(after("connect", "(Ljava/net/SocketAddress;)Z", connected));
+            probes.add(before("implCloseSelectableChannel", "()V", closed));
+        } else {
+            probes.add(after("<init>", "(Lsun/nio/ch/AsynchronousChannelGroupImpl;Ljava/io/FileDescriptor;Ljava/net/InetSocketAddress;)V", accepted));
+            probes.add(after("connect", "(Ljava/net/SocketAddress;)Ljava/util/concurrent/Future;", connected));
+            probes.add(after("connect", "(Ljava/net/SocketAddress;Ljava/lang/Object;Ljava/nio/channels/CompletionHandler;)V", connected));
+            probes.add(before("close", "()V", closed));
+        }
+
+        return probes;
+    }
+
+}
@@ -7,65 +7,21 @@
 package org.jrt.socket.regular;
 
 import org.jrt.impl.Configuration;
+import org.jrt.impl.EndpointStats;
 import org.jrt.impl.JRT;
+import org.jrt.impl.SocketFilter;
 import org.jrt.socket.api.JRTHic;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import javax.net.ssl.SSLEngineResult;
+import org.LatencyUtils.LatencyStats;
 
 public class Accumulator {
 
     private static String this_package = "org.jrt.socket.regular";
     private static String this_class = this_package + ".Accumulator";
     
-    private static boolean matchPort(String a, String filter) {
-        //return a.matches(".*" + filter + ".*");
-        if (null == filter) {
-            return false;
-        }
-        return a.equals(filter);
-    }
-    
-    private static boolean matchAddr(String a, String filter) {
-        if (null == filter) {
-            return false;
-        }
-        return a.matches(".*" + filter + ".*");
-    }
-    
-    private static boolean match(JRT jRT, InetAddress remoteAddress, int remotePort, int localPort) {
-        
-        boolean matched = false;
-        
-        if (jRT.configuration.filterEntries.isEmpty()) {
-            matched = true;
-        } else {
-            for (Configuration.IOFilterEntry entry : jRT.configuration.filterEntries) {
-                boolean matched_locally = true;
-
-                if (null != entry.remoteaddr  &&
-                        !matchAddr(remoteAddress.getHostAddress(), entry.remoteaddr) &&
-                        !matchAddr(remoteAddress.getHostName(), entry.remoteaddr)  ) {
-                    matched_locally = false;
-                }
-                if (null != entry.remoteport && 
-                        !matchPort(String.valueOf(remotePort), entry.remoteport)) {
-                    matched_locally = false;
-                }
-                if (null != entry.localport && 
-                        !matchPort(String.valueOf(localPort), entry.localport)) {
-                    matched_locally = false;
-                }
-                if (matched_locally) {
-                    matched = true;
-                    break;
-                }
-            }
-        }
-        
-        //System.out.println("Calculate response time between " + remoteAddress + ":" + remotePort + " <-> " + "127.0.0.1:" + localPort + " === " + matched); //Print on debug level?
-        
-        return matched;
-    }    
-    
     public static JRT getJRT(String uuid) {
         return JRT.jRTWorkers.get(uuid);
     }
@@ -87,18 +43,42 @@ public class Accumulator {
         if (jRT.sockRTs.containsKey(sock)) {
             return jRT.sockRTs.get(sock);
         } else {
-            jrtHic = new JRTHic();
+            jrtHic = new JRTHic(jRT.configuration.pipelineDepth);
             jRT.sockRTs.put(sock, jrtHic);
         }
         
+        ++jRT.jrtStat.registrations;
+        
         //Decide to filter or not?
-        if (!match(jRT, remoteAddress, remotePort, localPort)) { 
+        Configuration conf = jRT.configuration;
+        int filterEntry = conf.socketFilter.matchEntry(remoteAddress, remotePort, localPort);
+        
+        //System.out.println("Calculate response time between " + remoteAddress + ":" + remotePort + " <-> " + "127.0.0.1:" + localPort + " === " + filterEntry); //Print on debug level?
+        
+        if (SocketFilter.NO_MATCH == filterEntry) { 
             //sockRTs.put(sock, null); //??!
             jRT.sockRTs.remove(sock);
+            ++jRT.jrtStat.filteredSocket;
             
             return null;
         }
         
+        // not measured, but kept registered, so the socket is sampled once
+        if (!jRT.sampling.connection()) {
+            jrtHic.excluded = true;
+            ++jRT.jrtStat.unsampledSocket;
+            return jrtHic;
+        }
+        
+        if (null != conf.framerFactory) {
+            jrtHic.setFramers(conf.framerFactory.newFramer(true), conf.framerFactory.newFramer(false));
+        }
+        
+        if (null != jRT.endpoints) {
+            jrtHic.endpoint = jRT.endpoints.get(
+                    jRT.endpoints.keyOf(conf, remoteAddress, remotePort, localPort, filterEntry));
+        }
+        
         ++jRT.jrtStat.processedSocket;
         
         return jrtHic;
@@ -108,20 +88,31 @@ public class Accumulator {
     
     
 
-    private static String _timestampStub(String methodName, String jRT, String ioHic) {
-        return this_class + "." + methodName + "(" + "(org.jrt.impl.JRT)" + jRT + ", " +  "(org.jrt.socket.api.JRTHic)" +  ioHic + ");";
+    private static String _timestampStub(String methodName, String jRT, String ioHic, String... data) {
+        StringBuilder args = new StringBuilder();
+        for (String d : data) {
+            args.append(", ").append(d);
+        }
+        return this_class + "." + methodName + "(" + "(org.jrt.impl.JRT)" + jRT + ", " +  "(org.jrt.socket.api.JRTHic)" +  ioHic + args + ");";
     }
     
-    public static String _readAfter(String jRT, String ioHic) {
-        return _timestampStub("putTimestampReadAfter", jRT, ioHic);
+    /**
+     * @param data either (byte[], offset, bytes read), (ByteBuffer, bytes read)
+     * or just (bytes read) when buffers can't be inspected
+     */
+    public static String _readAfter(String jRT, String ioHic, String... data) {
+        return _timestampStub("putTimestampReadAfter", jRT, ioHic, data);
     }
     
     public static String _readBefore(String jRT, String ioHic) {
         return _timestampStub("putTimestampReadBefore", jRT, ioHic);
     }
     
-    public static String _writeAfter(String jRT, String ioHic) {
-        return _timestampStub("putTimestampWriteAfter", jRT, ioHic);
+    /**
+     * @param data see _readAfter
+     */
+    public static String _writeAfter(String jRT, String ioHic, String... data) {
+        return _timestampStub("putTimestampWriteAfter", jRT, ioHic, data);
     }
     
     public static String _writeBefore(String jRT, String ioHic) {
@@ -131,46 +122,549 @@ public class Accumulator {
     
     
     
-    public static void putTimestampReadAfter(JRT jRT, JRTHic hic) {
-        if (null == jRT || hic == null) {
+    /*
+     * Without framers every read/write which transferred some bytes is a
+     * message (EOF and non blocking attempts returning nothing are not, 
+     * f.e. IOUtil is retried this way on virtual threads): i2o is measured from
+     * the end of a read to the beginning of the next write, o2i from the end
+     * of a write to the beginning of the next read. With framers only 
+     * reads/writes completing a message count, and both are measured 
+     * between message completions (request received -> response written, 
+     * request written -> response received).
+     */
+    
+    /**
+     * @return null if the endpoint key of the socket was evicted, no lock
+     * is taken here: LogWriter registers the key again, see
+     * EndpointRegistry.reregister
+     */
+    private static EndpointStats endpoint(JRTHic hic, long now) {
+        EndpointStats e = hic.endpoint;
+        if (null == e) {
+            return null;
+        }
+        e.lastUsed = now;
+        return e.evicted ? null : e;
+    }
+    
+    private static void recordI2o(JRT jRT, JRTHic hic, long writeTime) {
+        long readTime = hic.takeRead();
+        long latency;
+        // pending read is taken anyway, so it isn't paired after -mode is switched
+        if (readTime != 0 && (latency = writeTime - readTime) > 0 && jRT.configuration.i2oEnabled
+                && jRT.sampling.operation(hic, true, writeTime)) {
+            LatencyStats ls = hic.tls ? jRT.tlsI2oLS : jRT.i2oLS;
+            if (null != ls) ls.recordLatency(latency);
+            EndpointStats e = endpoint(hic, writeTime);
+            if (null != e && null != e.i2oLS) e.i2oLS.recordLatency(latency);
+        }
+    }
+    
+    private static void recordO2i(JRT jRT, JRTHic hic, long readTime) {
+        long writeTime = hic.takeWrite();
+        long latency;
+        if (writeTime != 0 && (latency = readTime - writeTime) > 0 && jRT.configuration.o2iEnabled
+                && jRT.sampling.operation(hic, false, readTime)) {
+            LatencyStats ls = hic.tls ? jRT.tlsO2iLS : jRT.o2iLS;
+            if (null != ls) ls.recordLatency(latency);
+            EndpointStats e = endpoint(hic, readTime);
+            if (null != e && null != e.o2iLS) e.o2iLS.recordLatency(latency);
+        }
+    }
+    
+    private static void readsCompleted(JRT jRT, JRTHic hic, long now, int messages) {
+        for (int i = 0; i < messages; ++i) {
+            if (null != hic.inFramer) {
+                recordO2i(jRT, hic, now);
+            }
+            int dropped = hic.readCompleted(now);
+            if (dropped > 0) {
+                jRT.jrtStat.pipelineOverflows.addAndGet(dropped);
+            }
+        }
+    }
+    
+    private static void writesCompleted(JRT jRT, JRTHic hic, long now, int messages) {
+        for (int i = 0; i < messages; ++i) {
+            if (null != hic.outFramer) {
+                recordI2o(jRT, hic, now);
+            }
+            int dropped = hic.writeCompleted(now);
+            if (dropped > 0) {
+                jRT.jrtStat.pipelineOverflows.addAndGet(dropped);
+            }
+        }
+    }
+    
+    /**
+     * @return true if socket is not measured; counts the probe call with
+     * -overhead
+     */
+    private static boolean skip(JRT jRT, JRTHic hic) {
+        if (null == jRT) {
+            return true;
+        }
+        if (jRT.configuration.overhead) {
+            jRT.jrtStat.probeCalls.increment();
+        }
+        return null == hic || hic.excluded;
+    }
+    
+    public static void putTimestampReadAfter(JRT jRT, JRTHic hic, byte[] b, int off, int len) {
+        if (skip(jRT, hic)) {
             return;
         }
         
-        hic.i2oReadTime = System.nanoTime();
-        hic.i2oLastRead = true;
+        long now = System.nanoTime();
+        if (null != jRT.transfer) {
+            jRT.transfer.read(len);
+        }
+        int messages = len > 0 ? 1 : 0;
+        if (null != hic.inFramer) {
+            messages = len > 0 ? hic.inFramer.onBytes(b, off, len) : 0;
+        }
+        readsCompleted(jRT, hic, now, messages);
+    }
+    
+    public static void putTimestampReadAfter(JRT jRT, JRTHic hic, ByteBuffer buf, int len) {
+        if (skip(jRT, hic)) {
+            return;
+        }
+        
+        long now = System.nanoTime();
+        if (null != jRT.transfer) {
+            jRT.transfer.read(len);
+        }
+        int messages = len > 0 ? 1 : 0;
+        if (null != hic.inFramer) {
+            messages = len > 0 ? hic.inFramer.onBytes(buf, buf.position() - len, buf.position()) : 0;
+        }
+        readsCompleted(jRT, hic, now, messages);
+    }
+    
+    public static void putTimestampReadAfter(JRT jRT, JRTHic hic, long len) {
+        if (skip(jRT, hic)) {
+            return;
+        }
+        
+        long now = System.nanoTime();
+        if (null != jRT.transfer) {
+            jRT.transfer.read(len);
+        }
+        int messages = len > 0 ? 1 : 0;
+        if (null != hic.inFramer) {
+            // bytes can't be inspected, count them as a message
+            hic.inFramer.reset();
+            messages = len > 0 ? 1 : 0;
+        }
+        readsCompleted(jRT, hic, now, messages);
     }
     
     public static void putTimestampWriteBefore(JRT jRT, JRTHic hic) {
-        if (null == jRT || hic == null) {
+        if (skip(jRT, hic) || null != hic.outFramer) {
             return;
         }
         
-        hic.i2oWriteTime = System.nanoTime();
-        if (hic.i2oLastRead && (hic.i2oLatency = hic.i2oWriteTime - hic.i2oReadTime) > 0) {
-            if (null != jRT.i2oLS) jRT.i2oLS.recordLatency(hic.i2oLatency);
+        recordI2o(jRT, hic, System.nanoTime());
+    }
+    
+    public static void putTimestampWriteAfter(JRT jRT, JRTHic hic, byte[] b, int off, int len) {
+        if (skip(jRT, hic)) {
+            return;
         }
-        hic.i2oLastRead = false;
+        
+        long now = System.nanoTime();
+        if (null != jRT.transfer) {
+            jRT.transfer.written(len);
+        }
+        int messages = len > 0 ? 1 : 0;
+        if (null != hic.outFramer) {
+            messages = len > 0 ? hic.outFramer.onBytes(b, off, len) : 0;
+        }
+        writesCompleted(jRT, hic, now, messages);
     }
     
-    public static void putTimestampWriteAfter(JRT jRT, JRTHic hic) {
-        if (null == jRT || hic == null) {
+    public static void putTimestampWriteAfter(JRT jRT, JRTHic hic, ByteBuffer buf, int len) {
+        if (skip(jRT, hic)) {
             return;
         }
         
-        hic.o2iReadTime = System.nanoTime();
-        hic.o2iLastWrite = true;
+        long now = System.nanoTime();
+        if (null != jRT.transfer) {
+            jRT.transfer.written(len);
+        }
+        int messages = len > 0 ? 1 : 0;
+        if (null != hic.outFramer) {
+            messages = len > 0 ? hic.outFramer.onBytes(buf, buf.position() - len, buf.position()) : 0;
+        }
+        writesCompleted(jRT, hic, now, messages);
+    }
+    
+    public static void putTimestampWriteAfter(JRT jRT, JRTHic hic, long len) {
+        if (skip(jRT, hic)) {
+            return;
+        }
+        
+        long now = System.nanoTime();
+        if (null != jRT.transfer) {
+            jRT.transfer.written(len);
+        }
+        int messages = len > 0 ? 1 : 0;
+        if (null != hic.outFramer) {
+            hic.outFramer.reset();
+            messages = len > 0 ? 1 : 0;
+        }
+        writesCompleted(jRT, hic, now, messages);
     }
     
     public static void putTimestampReadBefore(JRT jRT, JRTHic hic) {
-        if (null == jRT || hic == null) {
+        if (skip(jRT, hic) || null != hic.inFramer) {
             return;
         }
         
-        hic.o2iWriteTime = System.nanoTime();
-        if (hic.o2iLastWrite && (hic.o2iLatency = hic.o2iWriteTime - hic.o2iReadTime) > 0) {
-            if (null != jRT.o2iLS) jRT.o2iLS.recordLatency(hic.o2iLatency);
+        recordO2i(jRT, hic, System.nanoTime());
+    }
+    
+    
+    
+    
+    public static String _connectionBefore(String jRT) {
+        return this_class + ".connectionBefore(" + jRT + ");";
+    }
+    
+    public static String _connectAfter(String jRT, String remoteInetAddress, String remotePort, String localPort) {
+        return this_class + ".connectAfter(" + jRT + ", " + remoteInetAddress + ", " + remotePort + ", " + localPort + ");";
+    }
+    
+    public static String _connectAfter(String jRT, String ioHic, String connected) {
+        return this_class + ".connectAfter(" + jRT + ", (org.jrt.socket.api.JRTHic)" + ioHic + ", " + connected + ");";
+    }
+    
+    public static String _finishConnectAfter(String jRT, String ioHic, String connected) {
+        return this_class + ".finishConnectAfter(" + jRT + ", (org.jrt.socket.api.JRTHic)" + ioHic + ", " + connected + ");";
+    }
+    
+    public static String _acceptAfter(String jRT, String remoteInetAddress, String remotePort, String localPort) {
+        return this_class + ".acceptAfter(" + jRT + ", " + remoteInetAddress + ", " + remotePort + ", " + localPort + ");";
+    }
+    
+    public static String _closeBefore(String jRT, String remoteInetAddress, String remotePort, String localPort) {
+        return this_class + ".closeBefore(" + jRT + ", " + remoteInetAddress + ", " + remotePort + ", " + localPort + ");";
+    }
+    
+    public static String _connectFailed(String jRT, String remoteInetAddress, String remotePort, String localPort) {
+        return this_class + ".connectFailed(" + jRT + ", " + remoteInetAddress + ", " + remotePort + ", " + localPort + ");";
+    }
+    
+    public static String _finishConnectFailed(String jRT, String ioHic) {
+        return this_class + ".finishConnectFailed(" + jRT + ", (org.jrt.socket.api.JRTHic)" + ioHic + ");";
+    }
+    
+    public static String _unregister(String jRT, String sock) {
+        return this_class + ".unregister(" + jRT + ", " + sock + ");";
+    }
+    
+    /*
+     * Connection lifecycle: connect/accept durations go to their own
+     * histograms, connections which pass the socket filter are counted as
+     * opened by successful connect/accept and as closed by close of a 
+     * connected socket. Connects which throw (refused, timed out...) go to
+     * the failed histogram and are not counted as opened.
+     */
+    
+    private static boolean connectionMatch(JRT jRT, InetAddress remoteAddress, int remotePort, int localPort) {
+        return null != jRT && null != jRT.connections &&
+                jRT.configuration.socketFilter.match(remoteAddress, remotePort, localPort);
+    }
+    
+    private static void recordConnect(JRT jRT, long start, long now) {
+        jRT.connections.opened.incrementAndGet();
+        if (start != 0 && now > start) {
+            jRT.connections.connectLS.recordLatency(now - start);
+        }
+    }
+    
+    private static void recordConnectFailure(JRT jRT, long start, long now) {
+        jRT.connections.failed.incrementAndGet();
+        if (start != 0 && now > start) {
+            jRT.connections.connectFailedLS.recordLatency(now - start);
+        }
+    }
+    
+    public static void connectionBefore(JRT jRT) {
+        if (null == jRT || null == jRT.connections) {
+            return;
+        }
+        jRT.connections.begin();
+    }
+    
+    /**
+     * Blocking connect of java.net sockets.
+     */
+    public static void connectAfter(JRT jRT, InetAddress remoteAddress, int remotePort, int localPort) {
+        long now = System.nanoTime();
+        if (!connectionMatch(jRT, remoteAddress, remotePort, localPort)) {
+            return;
+        }
+        recordConnect(jRT, jRT.connections.takeBegin(), now);
+    }
+    
+    /**
+     * Connect of socket channels, hic is already registered by socket
+     * filter; non blocking connect is finished by finishConnect.
+     */
+    public static void connectAfter(JRT jRT, JRTHic hic, boolean connected) {
+        long now = System.nanoTime();
+        if (null == jRT || null == jRT.connections) {
+            return;
+        }
+        long start = jRT.connections.takeBegin();
+        if (null == hic) {
+            return;
+        }
+        if (connected) {
+            recordConnect(jRT, start, now);
+        } else {
+            hic.connectStart = start;
+        }
+    }
+    
+    public static void finishConnectAfter(JRT jRT, JRTHic hic, boolean connected) {
+        if (null == jRT || null == jRT.connections || null == hic || !connected) {
+            return;
+        }
+        long start = hic.connectStart;
+        if (start != 0) {
+            hic.connectStart = 0;
+            recordConnect(jRT, start, System.nanoTime());
+        }
+    }
+    
+    /**
+     * Blocking connect of java.net sockets or socket channels which threw.
+     */
+    public static void connectFailed(JRT jRT, InetAddress remoteAddress, int remotePort, int localPort) {
+        long now = System.nanoTime();
+        if (null == jRT || null == jRT.connections) {
+            return;
+        }
+        long start = jRT.connections.takeBegin();
+        if (connectionMatch(jRT, remoteAddress, remotePort, localPort)) {
+            recordConnectFailure(jRT, start, now);
+        }
+    }
+    
+    public static void finishConnectFailed(JRT jRT, JRTHic hic) {
+        if (null == jRT || null == jRT.connections || null == hic) {
+            return;
+        }
+        long start = hic.connectStart;
+        if (start != 0) {
+            hic.connectStart = 0;
+            recordConnectFailure(jRT, start, System.nanoTime());
+        }
+    }
+    
+    public static void acceptAfter(JRT jRT, InetAddress remoteAddress, int remotePort, int localPort) {
+        long now = System.nanoTime();
+        if (!connectionMatch(jRT, remoteAddress, remotePort, localPort)) {
+            return;
+        }
+        jRT.connections.opened.incrementAndGet();
+        long start = jRT.connections.takeBegin();
+        if (start != 0 && now > start) {
+            jRT.connections.acceptLS.recordLatency(now - start);
+        }
+    }
+    
+    public static void closeBefore(JRT jRT, InetAddress remoteAddress, int remotePort, int localPort) {
+        if (!connectionMatch(jRT, remoteAddress, remotePort, localPort)) {
+            return;
+        }
+        jRT.connections.closed.incrementAndGet();
+    }
+    
+    /**
+     * Close of a socket (impl, fd...) marks its JRTHic closed, sockRTs 
+     * holds its keys strongly until the log writer drops it. It is not 
+     * removed right away: a read or write which another thread completes
+     * meanwhile looks JRTHic up after the operation.
+     */
+    public static void unregister(JRT jRT, Object sock) {
+        if (null == jRT || null == sock) {
+            return;
+        }
+        JRTHic hic = jRT.sockRTs.get(sock);
+        if (null != hic) {
+            hic.closed = true;
+        }
+    }
+    
+    
+    
+    
+    public static String _handshakeBefore(String jRT, String conn, String remoteInetAddress, String remotePort, String localPort) {
+        return this_class + ".handshakeBefore(" + jRT + ", " + conn + ", " + remoteInetAddress + ", " + remotePort + ", " + localPort + ");";
+    }
+    
+    public static String _handshakeAfter(String jRT, String ioHic, String negotiated) {
+        return this_class + ".handshakeAfter(" + jRT + ", (org.jrt.socket.api.JRTHic)" + ioHic + ", " + negotiated + ");";
+    }
+    
+    public static String _wrapAfter(String jRT, String ioHic, String result) {
+        return this_class + ".wrapAfter(" + jRT + ", (org.jrt.socket.api.JRTHic)" + ioHic + ", " + result + ");";
+    }
+    
+    public static String _unwrapAfter(String jRT, String ioHic, String result) {
+        return this_class + ".unwrapAfter(" + jRT + ", (org.jrt.socket.api.JRTHic)" + ioHic + ", " + result + ");";
+    }
+    
+    /*
+     * TLS plaintext layer: SSLSocket/SSLEngine gets its own JRTHic when its
+     * initial handshake begins, latencies of its application data go to tls
+     * histograms. SSLEngine doesn't know its peer address, so engines are 
+     * filtered by peer port only.
+     */
+    
+    public static void handshakeBefore(JRT jRT, Object conn, InetAddress remoteAddress, int remotePort, int localPort) {
+        if (null == jRT || null == jRT.handshakeLS) {
+            return;
+        }
+        JRTHic hic = initializeJRTHic(jRT, conn, remoteAddress, remotePort, localPort);
+        if (null == hic || hic.excluded) {
+            return;
         }
-        hic.o2iLastWrite = false;
+        hic.tls = true;
+        if (hic.handshakeStart == 0) {
+            hic.handshakeStart = System.nanoTime();
+        }
+    }
+    
+    public static void handshakeAfter(JRT jRT, JRTHic hic, boolean negotiated) {
+        if (null == jRT || null == jRT.handshakeLS || null == hic || !negotiated) {
+            return;
+        }
+        long start = hic.handshakeStart;
+        long now = System.nanoTime();
+        if (start != 0) {
+            hic.handshakeStart = 0;
+            if (now > start) {
+                jRT.handshakeLS.recordLatency(now - start);
+            }
+        }
+    }
+    
+    public static void wrapAfter(JRT jRT, JRTHic hic, SSLEngineResult result) {
+        if (null == jRT || null == hic || null == result) {
+            return;
+        }
+        handshakeAfter(jRT, hic, result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED);
+        if (result.bytesConsumed() > 0) {
+            putTimestampWriteBefore(jRT, hic);
+            putTimestampWriteAfter(jRT, hic, (long) result.bytesConsumed());
+        }
+    }
+    
+    public static void unwrapAfter(JRT jRT, JRTHic hic, SSLEngineResult result) {
+        if (null == jRT || null == hic || null == result) {
+            return;
+        }
+        handshakeAfter(jRT, hic, result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED);
+        if (result.bytesProduced() > 0) {
+            putTimestampReadBefore(jRT, hic);
+            putTimestampReadAfter(jRT, hic, (long) result.bytesProduced());
+        }
+    }
+    
+    public static String _excludeSocket(String jRT, String sock) {
+        return this_class + ".excludeSocket(" + jRT + ", " + sock + ");";
+    }
+    
+    /*
+     * Raw socket under SSLSocket: its encrypted traffic is measured by 
+     * plaintext probes already, so socket stays registered but is skipped.
+     */
+    public static void excludeSocket(JRT jRT, Object sock) {
+        if (null == jRT || null == jRT.handshakeLS || null == sock) {
+            return;
+        }
+        JRTHic hic = jRT.sockRTs.get(sock);
+        if (null != hic) {
+            hic.excluded = true;
+        }
+    }
+    
+    /*
+     * Entry points of ProbeTransformer (-weaver=asm), which passes the 
+     * socket (impl, fd) instead of its JRTHic and value returned by 
+     * instrumented method first. They are the same as code of CodeWriters
+     * in sockRTs mode.
+     */
+    
+    private static JRTHic hic(JRT jRT, Object sock) {
+        if (null == jRT || null == sock) {
+            return null;
+        }
+        return jRT.sockRTs.get(sock);
+    }
+    
+    public static void register(JRT jRT, Object sock, InetAddress remoteAddress, int remotePort, int localPort) {
+        initializeJRTHic(jRT, sock, remoteAddress, remotePort, localPort);
+    }
+    
+    /**
+     * @param socket raw streams of SSLSocket are not registered in -tls mode
+     */
+    public static void register(JRT jRT, Object sock, Object socket, InetAddress remoteAddress, int remotePort, int localPort) {
+        if (null != jRT && null != jRT.handshakeLS && socket instanceof javax.net.ssl.SSLSocket) {
+            return;
+        }
+        initializeJRTHic(jRT, sock, remoteAddress, remotePort, localPort);
+    }
+    
+    public static void registerChannel(JRT jRT, Object fd, Object remote) {
+        registerChannel(jRT, fd, remote, null);
+    }
+    
+    public static void registerChannel(JRT jRT, Object fd, Object remote, Object local) {
+        if (!(remote instanceof InetSocketAddress)) {
+            return;
+        }
+        InetSocketAddress r = (InetSocketAddress) remote;
+        int localPort = local instanceof InetSocketAddress ? ((InetSocketAddress) local).getPort() : 0;
+        initializeJRTHic(jRT, fd, r.getAddress(), r.getPort(), localPort);
+    }
+    
+    public static void readBefore(JRT jRT, Object sock) {
+        putTimestampReadBefore(jRT, hic(jRT, sock));
+    }
+    
+    public static void writeBefore(JRT jRT, Object sock) {
+        putTimestampWriteBefore(jRT, hic(jRT, sock));
+    }
+    
+    public static void readAfter(int len, JRT jRT, Object sock, byte[] b, int off) {
+        putTimestampReadAfter(jRT, hic(jRT, sock), b, off, len);
+    }
+    
+    public static void readAfter(int len, JRT jRT, Object sock, ByteBuffer buf) {
+        putTimestampReadAfter(jRT, hic(jRT, sock), buf, len);
+    }
+    
+    public static void readAfter(long len, JRT jRT, Object sock) {
+        putTimestampReadAfter(jRT, hic(jRT, sock), len);
+    }
+    
+    public static void writeAfter(JRT jRT, Object sock, byte[] b, int off, int len) {
+        putTimestampWriteAfter(jRT, hic(jRT, sock), b, off, len);
+    }
+    
+    public static void writeAfter(int len, JRT jRT, Object sock, ByteBuffer buf) {
+        putTimestampWriteAfter(jRT, hic(jRT, sock), buf, len);
+    }
+    
+    public static void writeAfter(long len, JRT jRT, Object sock) {
+        putTimestampWriteAfter(jRT, hic(jRT, sock), len);
     }
     
 }
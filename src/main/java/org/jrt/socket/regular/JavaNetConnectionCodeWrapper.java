@@ -0,0 +1,90 @@
+/*
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ * 
+
+ */
+package org.jrt.socket.regular;
+
+import org.jrt.impl.CodeWriterRegistry;
+
+/**
+ * Connect/accept/close of java.net sockets, see Accumulator.connectAfter.
+ *
+ * @author fijiol
+ */
+public class JavaNetConnectionCodeWrapper extends JavaNetSocketCodeWrapper {
+
+    @Override
+    public boolean needInstrument(String className) {
+        return className != null && 
+                className.equals("java/net/AbstractPlainSocketImpl");
+    }
+
+    @Override
+    public String preCode(String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+
+        if (methodName.equals("java.net.AbstractPlainSocketImpl.doConnect(java.net.InetAddress,int,int)") ||
+            methodName.equals("java.net.AbstractPlainSocketImpl.accept(java.net.SocketImpl)")) {
+            return _debugWraps(
+                    Accumulator._connectionBefore(_jRT())
+            );
+        }
+
+        // only the first close of a connected (not server) socket counts,
+        // remote port of listening socket is 0 (SocketImpl.serverSocket is
+        // not there since JDK 13); failed doConnect closes the socket too,
+        // while port and address are set already (SocketImpl.socket is 
+        // replaced by isConnected since JDK 13)
+        if (methodName.equals("java.net.AbstractPlainSocketImpl.close()")) {
+            String connected = CodeWriterRegistry.jdkVersion() < 13 ? "(socket == null || socket.isConnected())" : "isConnected";
+            return _debugWraps(
+                    _if("fd != null && !closePending && port != 0 && address != null && " + connected,
+                            Accumulator._closeBefore(_jRT(), "address", "port", "localport"))
+            );
+        }
+
+        return null;
+    }
+
+    @Override
+    public String postCode(String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+
+        if (methodName.equals("java.net.AbstractPlainSocketImpl.doConnect(java.net.InetAddress,int,int)")) {
+            return _debugWraps(
+                    Accumulator._connectAfter(_jRT(), "$1", "$2", "localport")
+            );
+        }
+
+        if (methodName.equals("java.net.AbstractPlainSocketImpl.accept(java.net.SocketImpl)")) {
+            return _debugWraps(
+                    Accumulator._acceptAfter(_jRT(), "$1.address", "$1.port", "$1.localport")
+            );
+        }
+
+        return null;
+    }
+
+    @Override
+    public String catchCode(String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+
+        // refused, unreachable, timed out...
+        if (methodName.equals("java.net.AbstractPlainSocketImpl.doConnect(java.net.InetAddress,int,int)")) {
+            return _debugWraps(
+                    Accumulator._connectFailed(_jRT(), "$1", "$2", "localport")
+            );
+        }
+
+        return null;
+    }
+
+}
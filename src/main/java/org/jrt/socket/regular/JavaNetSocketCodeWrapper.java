@@ -7,6 +7,7 @@
 package org.jrt.socket.regular;
 
 import java.util.Collections;
+import org.jrt.impl.CodeWriterRegistry;
 import org.jrt.impl.JRT;
 import org.jrt.socket.api.CodeWriter;
 
@@ -74,18 +75,34 @@ public class JavaNetSocketCodeWrapper implements CodeWriter {
     }
     
     public String _uniqVar(String name) {
-        return jRT.configuration.uuid.replaceAll("", "_") + name;
+        // uuid (-id) is any string, keep a valid java identifier as JRTBinder does
+        return "_" + jRT.configuration.uuid.replaceAll("[^A-Za-z0-9_]", "_") + "_" + name;
     }
     
     public String _jRT() {
+        if (jRT.bindingClass != null) {
+            return "(" + jRT.bindingClass + ".jRT)";
+        }
         return "((org.jrt.impl.JRT)" + jrt_static + ".jRTWorkers.get(" + _str(jRT.configuration.uuid) + "))";
     }
     
+    public String _hicField() {
+        return _uniqVar("jrtHic");
+    }
+    
     public String _ioHic() {
+        if (jRT.configuration.injectHicField) {
+            return "this." + _hicField();
+        }
         return _jRT() + ".sockRTs.get(impl)";
     }
     
     public String _saveJRTHic(String ioHicValue) {
+        if (jRT.configuration.injectHicField) {
+            // both streams of the socket get the same JRTHic from sockRTs 
+            // (keyed by impl), so i2o/o2i pairing keeps working
+            return _block( _hicField() + " = " + ioHicValue );
+        }
         return _block( ioHicValue );
     }
     
@@ -94,7 +111,8 @@ public class JavaNetSocketCodeWrapper implements CodeWriter {
     public boolean needInstrument(String className) {
         return className != null && (
                 className.equals("java/net/SocketInputStream") | 
-                className.equals("java/net/SocketOutputStream"));
+                className.equals("java/net/SocketOutputStream") |
+                className.equals("java/net/AbstractPlainSocketImpl"));
     }
 
     @Override
@@ -109,12 +127,18 @@ public class JavaNetSocketCodeWrapper implements CodeWriter {
             );
         }
 
-        if (methodName.equals("java.net.SocketOutputStream.write(byte[],int,int)")) {
+        if (methodName.equals("java.net.SocketOutputStream.socketWrite(byte[],int,int)")) {
             return _debugWraps(
                     Accumulator._writeBefore(_jRT(), _ioHic())
             );
         }
 
+        // streams of the socket are registered by impl
+        if (methodName.equals("java.net.AbstractPlainSocketImpl.close()")) {
+            return _debugWraps(
+                    Accumulator._unregister(_jRT(), "this")
+            );
+        }
         
         return null;
     }
@@ -128,30 +152,44 @@ public class JavaNetSocketCodeWrapper implements CodeWriter {
         if (methodName.equals("java.net.SocketInputStream(java.net.AbstractPlainSocketImpl)") || 
             methodName.equals("java.net.SocketOutputStream(java.net.AbstractPlainSocketImpl)")) {
             
-            return _debugWraps(
-                    _saveJRTHic(
-                            Accumulator._filter(_jRT(), "impl", "impl.getInetAddress()", "impl.getPort()", "impl.getLocalPort()")
-                    )
+            String save = _saveJRTHic(
+                    Accumulator._filter(_jRT(), "impl", "impl.getInetAddress()", "impl.getPort()", "impl.getLocalPort()")
             );
+            if (jRT.configuration.tls && CodeWriterRegistry.jdkVersion() < 13) {
+                // encrypted records of SSLSocket, its app data is measured by TlsCodeWrapper
+                // (SocketImpl.getSocket is gone since JDK 13, see TlsCodeWrapper)
+                save = _if("!(impl.getSocket() instanceof javax.net.ssl.SSLSocket)", save);
+            }
+            return _debugWraps(save);
         }
         
        if (methodName.equals("java.net.SocketInputStream.read(byte[],int,int,int)")) {
             return _debugWraps(
-                    Accumulator._readAfter(_jRT(), _ioHic())
+                    Accumulator._readAfter(_jRT(), _ioHic(), "$1", "$2", "$_")
             );
         }
 
-        if (methodName.equals("java.net.SocketOutputStream.write(byte[],int,int)")) {
+        if (methodName.equals("java.net.SocketOutputStream.socketWrite(byte[],int,int)")) {
             return _debugWraps(
-                    Accumulator._writeAfter(_jRT(), _ioHic())
+                    Accumulator._writeAfter(_jRT(), _ioHic(), "$1", "$2", "$3")
             );
         }
 
         return null;
     }
 
+    @Override
+    public String catchCode(String methodName) {
+        return null;
+    }
+
     @Override
     public Iterable<String> classNewFields(String className) {
+        if (jRT.configuration.injectHicField && className != null && (
+                className.equals("java/net/SocketInputStream") ||
+                className.equals("java/net/SocketOutputStream"))) {
+            return Collections.singletonList("org.jrt.socket.api.JRTHic " + _hicField());
+        }
         return Collections.emptyList();
     }
 
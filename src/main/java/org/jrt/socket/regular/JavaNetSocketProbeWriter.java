@@ -0,0 +1,90 @@
+/*
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ *
+
+ */
+package org.jrt.socket.regular;
+
+import static org.jrt.socket.api.Probe.*;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jrt.impl.CodeWriterRegistry;
+import org.jrt.impl.JRT;
+import org.jrt.socket.api.Probe;
+import org.jrt.socket.api.ProbeWriter;
+
+/**
+ * Probes of JavaNetSocketCodeWrapper for ProbeTransformer.
+ *
+ * @author fijiol
+ */
+public class JavaNetSocketProbeWriter implements ProbeWriter {
+
+    private static final String IMPL = "java/net/AbstractPlainSocketImpl";
+
+    // skip raw streams of SSLSocket, see JavaNetSocketCodeWrapper
+    private boolean tls;
+
+    @Override
+    public void init(JRT jrt) {
+        tls = jrt.configuration.tls && CodeWriterRegistry.jdkVersion() < 13;
+    }
+
+    @Override
+    public boolean needInstrument(String className) {
+        return className != null && (
+                className.equals("java/net/SocketInputStream") ||
+                className.equals("java/net/SocketOutputStream") ||
+                className.equals(IMPL));
+    }
+
+    @Override
+    public List<Probe> probes(String className) {
+        if (!needInstrument(className)) {
+            return Collections.emptyList();
+        }
+
+        List<Probe> probes = new ArrayList<Probe>();
+
+        // streams of the socket are registered by impl
+        if (className.equals(IMPL)) {
+            probes.add(before("close", "()V",
+                    call("unregister", sig(JRT.class, Object.class), jRT(), self())));
+            return probes;
+        }
+
+        Arg impl = field("impl");
+        Arg remoteAddress = invoke(impl, IMPL, "getInetAddress", "()Ljava/net/InetAddress;");
+        Arg remotePort = invoke(impl, IMPL, "getPort", "()I");
+        Arg localPort = invoke(impl, IMPL, "getLocalPort", "()I");
+        if (tls) {
+            probes.add(after("<init>", "(Ljava/net/AbstractPlainSocketImpl;)V",
+                    call("register", sig(JRT.class, Object.class, Object.class, InetAddress.class, int.class, int.class),
+                            jRT(), impl, invoke(impl, IMPL, "getSocket", "()Ljava/net/Socket;"),
+                            remoteAddress, remotePort, localPort)));
+        } else {
+            probes.add(after("<init>", "(Ljava/net/AbstractPlainSocketImpl;)V",
+                    call("register", sig(JRT.class, Object.class, InetAddress.class, int.class, int.class),
+                            jRT(), impl, remoteAddress, remotePort, localPort)));
+        }
+
+        if (className.equals("java/net/SocketInputStream")) {
+            probes.add(new Probe("read", "([BIII)I",
+                    call("readBefore", sig(JRT.class, Object.class), jRT(), impl),
+                    call("readAfter", sig(int.class, JRT.class, Object.class, byte[].class, int.class),
+                            result(), jRT(), impl, arg(1), arg(2))));
+        } else {
+            probes.add(new Probe("socketWrite", "([BII)V",
+                    call("writeBefore", sig(JRT.class, Object.class), jRT(), impl),
+                    call("writeAfter", sig(JRT.class, Object.class, byte[].class, int.class, int.class),
+                            jRT(), impl, arg(1), arg(2), arg(3))));
+        }
+
+        return probes;
+    }
+
+}
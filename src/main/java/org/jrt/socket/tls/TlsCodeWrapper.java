@@ -0,0 +1,196 @@
+/*
+ * Written by Fedor Burdun of Azul Systems, and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/
+ * 
+
+ */
+package org.jrt.socket.tls;
+
+import org.jrt.socket.regular.Accumulator;
+import org.jrt.socket.regular.JavaNetSocketCodeWrapper;
+
+/**
+ * Application data of TLS connections: app streams of SSLSocketImpl and
+ * SSLEngineImpl.wrap/unwrap of the TLS implementation which came with 
+ * JDK 11 (and was backported to 8u261). Raw streams of SSLSocket are not
+ * measured in this mode: SocketInputStream/SocketOutputStream skip them
+ * on construction (see JavaNetSocketCodeWrapper), NioSocketImpl (JDK 14+)
+ * is excluded when SSLSocket asks Socket for its raw input stream. Raw 
+ * channel I/O under SSLEngine can't be told apart from plain channels 
+ * and still is measured.
+ *
+ * SSLSocketImpl is unregistered on close, SSLEngineImpl once both of its
+ * directions are done: by closeInbound/closeOutbound or by close_notify
+ * wrapped/unwrapped.
+ *
+ * @author fijiol
+ */
+public class TlsCodeWrapper extends JavaNetSocketCodeWrapper {
+
+    private final boolean nioSocketImpl;
+
+    public TlsCodeWrapper() {
+        this(false);
+    }
+
+    /**
+     * @param nioSocketImpl exclude raw NioSocketImpl of SSLSocket, java.net
+     * of JDK 14+ is required (DelegatingSocketImpl)
+     */
+    public TlsCodeWrapper(boolean nioSocketImpl) {
+        this.nioSocketImpl = nioSocketImpl;
+    }
+
+    @Override
+    public boolean needInstrument(String className) {
+        return className != null && 
+                (
+                (nioSocketImpl && className.equals("java/net/Socket")) ||
+                className.equals("sun/security/ssl/SSLSocketImpl") || 
+                className.equals("sun/security/ssl/SSLSocketImpl$AppInputStream") || 
+                className.equals("sun/security/ssl/SSLSocketImpl$AppOutputStream") || 
+                className.equals("sun/security/ssl/SSLEngineImpl") ||
+                false
+                );
+    }
+
+    @Override
+    public String preCode(String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+
+        // JDK 11+ does handshake in startHandshake(boolean), both of them
+        // are instrumented, handshake is recorded once by the inner one
+        if (methodName.equals("sun.security.ssl.SSLSocketImpl.startHandshake()") ||
+            methodName.equals("sun.security.ssl.SSLSocketImpl.startHandshake(boolean)")) {
+            return _debugWraps(
+                    _if("!conContext.isNegotiated",
+                            Accumulator._handshakeBefore(_jRT(), "this", "getInetAddress()", "getPort()", "getLocalPort()"))
+            );
+        }
+
+        if (methodName.equals("sun.security.ssl.SSLEngineImpl.beginHandshake()") ||
+            methodName.equals("sun.security.ssl.SSLEngineImpl.wrap(java.nio.ByteBuffer[],int,int,java.nio.ByteBuffer[],int,int)") ||
+            methodName.equals("sun.security.ssl.SSLEngineImpl.unwrap(java.nio.ByteBuffer[],int,int,java.nio.ByteBuffer[],int,int)")) {
+            return _debugWraps(
+                    _if("!conContext.isNegotiated",
+                            Accumulator._handshakeBefore(_jRT(), "this", "null", "getPeerPort()", "0"))
+            );
+        }
+
+        if (methodName.equals("sun.security.ssl.SSLSocketImpl$AppInputStream.read(byte[],int,int)")) {
+            return _debugWraps(
+                    Accumulator._readBefore(_jRT(), _ioHic())
+            );
+        }
+
+        // socket is closed by the peer's close_notify too, not by close() only
+        if (methodName.equals("sun.security.ssl.SSLSocketImpl.close()") ||
+            methodName.equals("sun.security.ssl.SSLSocketImpl.closeSocket(boolean)")) {
+            return _debugWraps(
+                    Accumulator._unregister(_jRT(), "this")
+            );
+        }
+
+        if (methodName.equals("sun.security.ssl.SSLSocketImpl$AppOutputStream.write(byte[],int,int)")) {
+            return _debugWraps(
+                    Accumulator._writeBefore(_jRT(), _ioHic())
+            );
+        }
+
+        return null;
+    }
+
+    @Override
+    public String postCode(String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+
+        // SSLSocketImpl takes raw streams right after connect/accept, raw
+        // JRTHic is registered by NioSocketImpl probes at that moment
+        if (methodName.equals("java.net.Socket.getInputStream()")) {
+            return _debugWraps(
+                    _if("this instanceof javax.net.ssl.SSLSocket",
+                            Accumulator._excludeSocket(_jRT(), 
+                                    "(impl instanceof java.net.DelegatingSocketImpl ? " + 
+                                    "(Object) ((java.net.DelegatingSocketImpl) impl).delegate() : (Object) impl)"))
+            );
+        }
+
+        if (methodName.equals("sun.security.ssl.SSLSocketImpl.startHandshake()") ||
+            methodName.equals("sun.security.ssl.SSLSocketImpl.startHandshake(boolean)")) {
+            return _debugWraps(
+                    Accumulator._handshakeAfter(_jRT(), _connHic(), "conContext.isNegotiated")
+            );
+        }
+
+        if (methodName.equals("sun.security.ssl.SSLEngineImpl.wrap(java.nio.ByteBuffer[],int,int,java.nio.ByteBuffer[],int,int)")) {
+            return _debugWraps(
+                    Accumulator._wrapAfter(_jRT(), _connHic(), "$_") +
+                    _if("$_.getStatus() == javax.net.ssl.SSLEngineResult.Status.CLOSED", _unregisterDoneEngine())
+            );
+        }
+
+        if (methodName.equals("sun.security.ssl.SSLEngineImpl.unwrap(java.nio.ByteBuffer[],int,int,java.nio.ByteBuffer[],int,int)")) {
+            return _debugWraps(
+                    Accumulator._unwrapAfter(_jRT(), _connHic(), "$_") +
+                    _if("$_.getStatus() == javax.net.ssl.SSLEngineResult.Status.CLOSED", _unregisterDoneEngine())
+            );
+        }
+
+        if (methodName.equals("sun.security.ssl.SSLEngineImpl.closeInbound()") ||
+            methodName.equals("sun.security.ssl.SSLEngineImpl.closeOutbound()")) {
+            return _debugWraps(
+                    _unregisterDoneEngine()
+            );
+        }
+
+        if (methodName.equals("sun.security.ssl.SSLSocketImpl$AppInputStream.read(byte[],int,int)")) {
+            return _debugWraps(
+                    Accumulator._readAfter(_jRT(), _ioHic(), "$1", "$2", "$_")
+            );
+        }
+
+        if (methodName.equals("sun.security.ssl.SSLSocketImpl$AppOutputStream.write(byte[],int,int)")) {
+            return _debugWraps(
+                    Accumulator._writeAfter(_jRT(), _ioHic(), "$1", "$2", "$3")
+            );
+        }
+
+        return null;
+    }
+
+    @Override
+    public String catchCode(String methodName) {
+        if (methodName == null) {
+            return null;
+        }
+
+        // closeInbound before peer's close_notify closes the engine and throws
+        if (methodName.equals("sun.security.ssl.SSLEngineImpl.closeInbound()")) {
+            return _debugWraps(
+                    _unregisterDoneEngine()
+            );
+        }
+
+        return null;
+    }
+
+    public String _unregisterDoneEngine() {
+        return _if("isOutboundDone() && isInboundDone()",
+                Accumulator._unregister(_jRT(), "this"));
+    }
+
+    public String _connHic() {
+        return _jRT() + ".sockRTs.get(this)";
+    }
+
+    @Override
+    public String _ioHic() {
+        // app streams are inner classes of SSLSocketImpl
+        return _jRT() + ".sockRTs.get(this$0)";
+    }
+
+}
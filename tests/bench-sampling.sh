@@ -0,0 +1,80 @@
+#!/bin/bash
+
+# Throughput of loopback round trips over many connections without jRT,
+# with jRT recording everything and with connection, operation and
+# budget sampling; checks recorded latencies match the sample rate and
+# the rate is in the log header:
+#
+#	CONNECTIONS=1000 ROUNDS=1000 RUNS=3 tests/bench-sampling.sh
+
+die() {
+	echo $*
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19790
+CONNECTIONS=${CONNECTIONS:-100}
+ROUNDS=${ROUNDS:-1000}
+RUNS=${RUNS:-1}
+TOTAL=$((CONNECTIONS * ROUNDS))
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac jrttest/ManyConnections.java) || die "Could not compile benchmark"
+
+o2i() {
+	grep ' o2i latencies was recorded' $1 | awk '{print $4}'
+}
+
+# both directions, budget is shared by them
+i2oo2i() {
+	grep ' o2i latencies was recorded' $1 | awk '{print $1 + $4}'
+}
+
+echo "$CONNECTIONS connections, $ROUNDS round trips each"
+
+# name, sampling args (none for no jRT), expected o2i latencies (or
+# i2o and o2i latencies per second with budget)
+run() {
+	for RUN in $(seq $RUNS); do
+		LOG=$TEST/$1-$RUN.log
+		AGENT=""
+		[ "$2" != none ] && AGENT="-javaagent:$JRT=-si=1000,-lp=$1-$RUN,-rport=$PORT$2"
+		(cd $TEST && java $AGENT -cp . jrttest.ManyConnections -port:$PORT -connections:$CONNECTIONS -rounds:$ROUNDS -wait:1100 &> $LOG)
+		grep -q '^rate=' $LOG || die "Benchmark run failed, see $LOG"
+		RECORDED=""
+		if [ "$2" != none ]; then
+			RECORDED=$(o2i $LOG)
+			if [ -n "$4" ]; then
+				# every started second of the run, the main thread only
+				SECONDS_=$(( $(sed -n 's/^time=\([0-9]*\)ms/\1/p' $LOG) / 1000 + 1 ))
+				BOTH=$(i2oo2i $LOG)
+				[ "$BOTH" -le $((SECONDS_ * $4)) -a "$BOTH" -ge $4 ] || die "Expected at most $4 latencies/s, see $LOG !!! bench [FAILED]"
+			else
+				[ "$RECORDED" -ge $(($3 * 9 / 10)) -a "$RECORDED" -le $3 ] || die "Expected about $3 o2i latencies, see $LOG !!! bench [FAILED]"
+			fi
+			RECORDED=", $RECORDED latencies recorded"
+		fi
+		echo "$1: $(sed -n 's/^rate=//p' $LOG) round trips$RECORDED"
+	done
+}
+
+run none none
+run all "" $TOTAL
+run conn10 ",-sampleconn=10" $((TOTAL / 10))
+run ops10 ",-sampleops=10" $((TOTAL / 10))
+run ops100 ",-sampleops=100" $((TOTAL / 100))
+run budget1000 ",-samplebudget=1000" $TOTAL 1000
+
+grep -q '^#\[SampleRate: 0.1 (connections 1/10, operations 1/1, no budget)\]' $TEST/conn10-1.o2i.hlog || die "Expected sample rate in the header, see $TEST/conn10-1.o2i.hlog !!! bench [FAILED]"
+grep -q '^#\[SampleRate: 0.01 (connections 1/1, operations 1/100, no budget)\]' $TEST/ops100-1.o2i.hlog || die "Expected sample rate in the header, see $TEST/ops100-1.o2i.hlog !!! bench [FAILED]"
+grep -q '^#\[SampleRate' $TEST/all-1.o2i.hlog && die "Expected no sample rate in the header, see $TEST/all-1.o2i.hlog !!! bench [FAILED]"
+echo "sample rates in headers"
+
+echo "..DONE"
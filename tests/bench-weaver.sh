@@ -0,0 +1,96 @@
+#!/bin/bash
+
+# Agent startup and attach (retransform) time of javassist and asm weavers
+# on a JVM with a lot of loaded classes:
+#
+#	CLASSES=50000 RUNS=5 tests/bench-weaver.sh
+
+die() {
+	echo $*
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19750
+CLASSES=${CLASSES:-30000}
+RUNS=${RUNS:-3}
+ROUNDS=100
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+# attach API of JDK 8 is in tools.jar
+JDK=${JAVA_HOME:-$(dirname $(dirname $(readlink -f $(which java))))}
+[ -f $JDK/../lib/tools.jar ] && JDK=$JDK/..
+TOOLS=$JDK/lib/tools.jar
+
+now() {
+	echo $(( $(date +%s%N) / 1000000 ))
+}
+
+# instrumentation time and retransformed classes from jRT summary
+instrumentation() {
+	grep 'instrumentation took' $1 | awk '{print "instrumentation " $3 " ms, " $5 " classes retransformed"}'
+}
+
+o2i() {
+	grep ' o2i latencies was recorded' $1 | awk '{print $4}'
+}
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac jrttest/ManyClasses.java) || die "Could not compile benchmark"
+
+echo "Startup with $CLASSES generated classes"
+
+for WEAVER in none javassist asm; do
+	for RUN in $(seq $RUNS); do
+		LOG=$TEST/startup-$WEAVER-$RUN.log
+		AGENT=""
+		[ $WEAVER != none ] && AGENT="-javaagent:$JRT=-start=0,-si=100,-lp=startup-$WEAVER,-rport=$PORT,-weaver=$WEAVER"
+
+		START=$(now)
+		(cd $TEST && java $AGENT -cp . jrttest.ManyClasses -port:$PORT -classes:$CLASSES -rounds:$ROUNDS &> $LOG)
+		END=$(now)
+		grep -q '^rounds=' $LOG || die "Benchmark run failed, see $LOG"
+
+		if [ $WEAVER == none ]; then
+			echo "$WEAVER: JVM $((END - START)) ms"
+		else
+			[ "$(o2i $LOG)" == "$ROUNDS" ] || die "Expected o2i latency per round, see $LOG !!! bench [FAILED]"
+			echo "$WEAVER: JVM $((END - START)) ms, $(instrumentation $LOG)"
+		fi
+	done
+done
+
+echo "Attach to JVM with $CLASSES generated classes"
+
+for WEAVER in javassist asm; do
+	for RUN in $(seq $RUNS); do
+		LOG=$TEST/attach-$WEAVER-$RUN.log
+		MARKER=$TEST/attached-$WEAVER-$RUN
+
+		(cd $TEST && java -cp . jrttest.ManyClasses -port:$PORT -classes:$CLASSES -rounds:$ROUNDS -attach:$MARKER &> $LOG) &
+		APP=$!
+		for i in $(seq 600); do
+			grep -q '^pid=' $LOG && break
+			sleep 0.1
+		done
+		PID=$(grep '^pid=' $LOG | sed 's/pid=//')
+		[ -z "$PID" ] && die "Benchmark run failed, see $LOG"
+
+		START=$(now)
+		java -cp $JRT:$TOOLS org.jrt.Attachermain -pid=$PID \
+			-agentargs=-start=0,-si=100,-lp=attach-$WEAVER,-rport=$PORT,-weaver=$WEAVER &> $TEST/attacher-$WEAVER-$RUN.log
+		END=$(now)
+		touch $MARKER
+		wait $APP
+
+		[ "$(o2i $LOG)" == "$ROUNDS" ] || die "Expected o2i latency per round after attach, see $LOG !!! bench [FAILED]"
+		echo "$WEAVER: attach $((END - START)) ms, $(instrumentation $LOG)"
+	done
+done
+
+echo "..DONE"
@@ -0,0 +1,77 @@
+#!/bin/bash
+
+# Runs a jRTCollector and three JVMs with jRT pushing to it at the same
+# time and checks the combined log: it has latencies of all of them,
+# interval by interval, the collector saw all three agents and survived
+# malformed datagrams:
+#
+#	tests/test-collector.sh
+
+die() {
+	echo $*
+	[ -n "$COLLECTOR" ] && kill $COLLECTOR 2> /dev/null
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19770
+CPORT=19779
+ROUNDS=1000
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac jrttest/ControlWindow.java) || die "Could not compile test"
+
+# generous grace, JVMs starting at the same time push first intervals late
+$ITSELF_PATH/../jRTCollector -si 200 -grace 2000 -o $TEST/host $CPORT &> $TEST/collector.log &
+COLLECTOR=$!
+sleep 1
+kill -0 $COLLECTOR 2> /dev/null || die "jRTCollector failed, see $TEST/collector.log"
+
+# interval headers (magic, empty agent, direction and tag, start, end) with
+# histograms of negative and of larger than the datagram length
+HEADER='jRT1\x00\x00\x00\x00\x00\x00\x00\x00\x00\x00\x00\x00\x00\x00\x00\x00\x00\x00\x00\x00\x00\x00'
+printf "$HEADER\xff\xff\xff\xff" > /dev/udp/127.0.0.1/$CPORT
+printf "$HEADER\x7f\xff\xff\xff" > /dev/udp/127.0.0.1/$CPORT
+
+for RUN in a b c; do
+	PORT=$((PORT + 1))
+	(cd $TEST && java -javaagent:$JRT=-si=200,-lp=$RUN,-rport=$PORT,-collector=$CPORT \
+		-cp . jrttest.ControlWindow -port:$PORT -rounds:$ROUNDS -phases:1 -wait:1000 &> $TEST/$RUN.log) &
+done
+wait %2 %3 %4
+
+# the rest is written when the collector is killed
+kill $COLLECTOR
+wait $COLLECTOR
+COLLECTOR=
+
+grep -q "agents=3" $TEST/collector.log || die "Intervals of all agents were not merged, see $TEST/collector.log !!! test [FAILED]"
+grep -q " 0 of them late, 2 malformed" $TEST/collector.log || die "Intervals were lost or malformed ones not counted, see $TEST/collector.log !!! test [FAILED]"
+for RUN in a b c; do
+	grep -q "interval histograms was pushed to collector $CPORT, 0 failed" $TEST/$RUN.log || die "$RUN did not push, see $TEST/$RUN.log !!! test [FAILED]"
+done
+
+# total count of the last interval line
+total() {
+	tail -1 $1 | sed 's/.*T:\([0-9]*\).*/\1/'
+}
+
+$ITSELF_PATH/../jRTLogMerger -interval 0.2 -o $TEST/host.merger $TEST/host.o2i.hlog || die "jRTLogMerger failed"
+$ITSELF_PATH/../jRTLogMerger -interval 0.2 -o $TEST/abc.merger $TEST/a.o2i.hlog $TEST/b.o2i.hlog $TEST/c.o2i.hlog || die "jRTLogMerger failed"
+[ "$(total $TEST/host.merger)" == $((3 * ROUNDS)) ] || die "Expected $((3 * ROUNDS)) latencies, see $TEST/host.merger !!! test [FAILED]"
+# logs start at different times, so intervals with latencies are compared
+intervals() {
+	grep -v '^#' $1 | sed 's/^[0-9.]*: //' | grep -v '^I:0 '
+}
+diff <(intervals $TEST/abc.merger) <(intervals $TEST/host.merger) > /dev/null || die "Combined log intervals differ from merged logs of agents !!! test [FAILED]"
+diff <(grep -v '^#' $TEST/abc.merger.hgrm) <(grep -v '^#' $TEST/host.merger.hgrm) > /dev/null || die "Combined distribution differs from merged logs of agents !!! test [FAILED]"
+echo "host: $(total $TEST/host.merger) latencies in $(grep -c ': I:' $TEST/host.merger) intervals, same as merged logs of agents"
+grep agents= $TEST/collector.log | grep -v "count=0 " | tail -3
+
+echo "..DONE"
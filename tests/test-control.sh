@@ -0,0 +1,82 @@
+#!/bin/bash
+
+# Stops and starts jRT of a running JVM by attach (-ctl=stop|start) between
+# phases of loopback rounds and checks that only rounds of started phases
+# are recorded:
+#
+#	tests/test-control.sh
+#	WEAVER=asm tests/test-control.sh
+
+die() {
+	echo $*
+	[ -n "$APP" ] && kill $APP 2> /dev/null
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19760
+ROUNDS=100
+WEAVER=${WEAVER:-javassist}
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+# attach API of JDK 8 is in tools.jar
+JDK=${JAVA_HOME:-$(dirname $(dirname $(readlink -f $(which java))))}
+[ -f $JDK/../lib/tools.jar ] && JDK=$JDK/..
+TOOLS=$JDK/lib/tools.jar
+
+o2i() {
+	grep ' o2i latencies was recorded' $1 | awk '{print $4}'
+}
+
+wait_for() {
+	for i in $(seq 600); do
+		grep -q "^$1" $2 && return
+		sleep 0.1
+	done
+	die "Test run failed, no $1 in $2"
+}
+
+# $1 - name, $2 - initial agent command, $3 - command after phase 1,
+# $4 - command after phase 2, $5 - reconnect every phase, $6 - expected o2i
+run() {
+	LOG=$TEST/$1.log
+
+	(cd $TEST && java -javaagent:$JRT=-start=0,-si=100,-lp=$1,-rport=$PORT,-weaver=$WEAVER$2 \
+		-cp . jrttest.ControlWindow -port:$PORT -rounds:$ROUNDS -phases:3 -marker:$1. -reconnect:$5 &> $LOG) &
+	APP=$!
+	wait_for pid= $LOG
+	PID=$(grep '^pid=' $LOG | sed 's/pid=//')
+
+	PHASE=1
+	for CTL in $3 $4; do
+		wait_for phase=$PHASE $LOG
+		java -cp $JRT:$TOOLS org.jrt.Attachermain -pid=$PID -agentargs=-ctl=$CTL &>> $TEST/$1.attacher.log \
+			|| die "Could not attach, see $TEST/$1.attacher.log"
+		grep -q "jRT uid 1 is ${CTL}" $LOG || die "jRT was not ${CTL}ed, see $LOG"
+		touch $TEST/$1.$PHASE
+		PHASE=$((PHASE + 1))
+	done
+	wait $APP
+
+	grep -q '^rounds=' $LOG || die "Test run failed, see $LOG"
+	[ "$(o2i $LOG)" == "$6" ] || die "Expected $6 o2i latencies, got $(o2i $LOG), see $LOG !!! test [FAILED]"
+	echo "$1: $(o2i $LOG) of $((ROUNDS * 3)) rounds recorded"
+}
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac jrttest/ControlWindow.java) || die "Could not compile test"
+
+echo "Weaver $WEAVER"
+
+# connection opened before stop is measured again after start
+run window "" stop start false $((ROUNDS * 2))
+
+# loaded stopped, connections opened while started are measured
+run stopped ",-ctl=stop" start stop true $ROUNDS
+
+echo "..DONE"
@@ -0,0 +1,56 @@
+#!/bin/bash
+
+# Runs a JVM with jRT logging uncorrected histograms next to corrected
+# ones (-raw) with non default LatencyStats knobs and checks that every
+# interval has both, uncorrected ones count every latency exactly once
+# and out of range knobs are rejected:
+#
+#	tests/test-correction.sh
+
+die() {
+	echo $*
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19780
+ROUNDS=1000
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac jrttest/ControlWindow.java) || die "Could not compile test"
+
+(cd $TEST && java -javaagent:$JRT=-si=200,-lp=raw,-rport=$PORT,-raw=true,-lowest=100,-digits=3,-window=64,-timecap=1000000000,-pause=5000000,-pausethreads=2 \
+	-cp . jrttest.ControlWindow -port:$PORT -rounds:$ROUNDS -phases:1 -wait:1000 &> $TEST/raw.log) || die "Test failed, see $TEST/raw.log"
+
+# latencies recorded by jRT, from its statistic
+recorded() {
+	sed -n "s/^ \([0-9]*\) i2o and \([0-9]*\) o2i latencies.*/$1/p" $TEST/raw.log
+}
+
+for DIR in i2o o2i; do
+	[ $DIR == i2o ] && RECORDED=$(recorded '\1') || RECORDED=$(recorded '\2')
+	LOG=$TEST/raw.$DIR.hlog
+	CORRECTED=$(grep -c '^[0-9]' $LOG)
+	RAW=$(grep -c '^Tag=raw,' $LOG)
+	[ $CORRECTED -gt 0 -a $CORRECTED == $RAW ] || die "Expected uncorrected histogram of every interval, see $LOG !!! test [FAILED]"
+
+	$ITSELF_PATH/../jRTLogQuery -tag raw $LOG > $TEST/raw.$DIR.query || die "jRTLogQuery failed"
+	$ITSELF_PATH/../jRTLogQuery $LOG > $TEST/corrected.$DIR.query || die "jRTLogQuery failed"
+	RAWCOUNT=$(sed -n 's/^Count: //p' $TEST/raw.$DIR.query)
+	COUNT=$(sed -n 's/^Count: //p' $TEST/corrected.$DIR.query)
+	[ "$RAWCOUNT" == "$RECORDED" ] || die "Uncorrected count differs from recorded latencies, see $TEST/raw.$DIR.query !!! test [FAILED]"
+	[ $COUNT -ge $RAWCOUNT ] || die "Corrected count is less than uncorrected one, see $TEST/corrected.$DIR.query !!! test [FAILED]"
+	echo "$DIR: $RAW intervals, $RAWCOUNT uncorrected and $COUNT corrected latencies"
+done
+
+(cd $TEST && java -javaagent:$JRT=-lp=bad,-digits=7 -cp . jrttest.ControlWindow -port:$PORT -rounds:1 -phases:1 &> $TEST/bad.log) && die "-digits=7 was accepted, see $TEST/bad.log !!! test [FAILED]"
+grep -q "significant digits must be 0..5" $TEST/bad.log || die "Expected an error message, see $TEST/bad.log !!! test [FAILED]"
+echo "-digits=7 rejected"
+
+echo "..DONE"
@@ -0,0 +1,58 @@
+#!/bin/bash
+
+# Request/response turns over a socket read and written by different
+# threads: strict turns unframed, then a window of requests in flight
+# with -framer=length and -pipeline. jRT has to record exactly one o2i
+# latency per turn and one i2o latency per turn but the ones written
+# before anything was read
+#
+#	ROUNDS=20000 tests/test-duplex.sh
+
+die() {
+	echo $*
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19500
+ROUNDS=${ROUNDS:-5000}
+WINDOW=8
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac jrttest/DuplexStress.java)
+
+# duplex <name> <window> <jRT options>
+duplex() {
+	echo "Test run ($1)"
+	LOG=$TEST/$1.log
+	(cd $TEST && java -javaagent:$JRT=-start=0,-si=100,-lp=$1,-rport=$PORT$3 -cp . jrttest.DuplexStress \
+		-port:$PORT -writers:4 -readers:4 -rounds:$ROUNDS -window:$2 &> $LOG)
+
+	TURNS=$(grep '^turns=' $LOG | sed 's/turns=//')
+	[ -z "$TURNS" ] && die "Stress run failed, see $LOG"
+
+	# hlog counts include pause corrections, so take raw counts from jRT summary
+	I2O=$(grep 'latencies was recorded' $LOG | awk '{print $1}')
+	O2I=$(grep 'latencies was recorded' $LOG | awk '{print $4}')
+	[ -z "$I2O" -o -z "$O2I" ] && die "There is no jRT summary in $LOG"
+
+	echo "$I2O i2o and $O2I o2i latencies recorded for $TURNS turns"
+
+	[ "$O2I" == "$TURNS" ] || die "Expected o2i latency per turn, see $LOG !!! test [FAILED]"
+}
+
+duplex duplex 1
+[ "$I2O" == "$((TURNS - 1))" ] || die "Expected i2o latency per turn but the first, see $LOG !!! test [FAILED]"
+
+duplex duplex-window $WINDOW ",-framer=length,-pipeline=$WINDOW"
+[ "$I2O" == "$((TURNS - WINDOW))" ] || die "Expected i2o latency per turn but the first $WINDOW, see $LOG !!! test [FAILED]"
+grep -q ' 0 outstanding requests was dropped' $LOG || die "Pipeline overflow, see $LOG !!! test [FAILED]"
+
+echo "..DONE"
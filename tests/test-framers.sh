@@ -0,0 +1,33 @@
+#!/bin/bash
+
+# Streams of known messages through message framers (-framer http, length,
+# resp): pipelined, chunked, bodiless HTTP responses, split at every byte
+# and at random, in byte arrays and ByteBuffers
+#
+#	tests/test-framers.sh
+
+die() {
+	echo $*
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac -cp $JRT jrttest/FramerCheck.java) || die "Could not compile test"
+
+echo "Test run"
+
+LOG=$TEST/framers.log
+(cd $TEST && java -cp $JRT:. jrttest.FramerCheck &> $LOG)
+RESULT=$?
+cat $LOG
+[ "$RESULT" == "0" ] || die "Framer check failed, see $LOG !!! test [FAILED]"
+
+echo "..DONE"
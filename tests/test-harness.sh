@@ -0,0 +1,100 @@
+#!/bin/bash
+
+# Drives loopback servers (blocking java.net, NIO selector and
+# AsynchronousSocketChannel) with known service time distributions with
+# and without jRT, checks that jRT records a latency of every request and
+# its uncorrected percentiles match the ones taken by the harness, and
+# reports throughput with and without jRT:
+#
+#	SERVERS="blocking nio" DISTS=exp REQUESTS=2000 tests/test-harness.sh
+#
+# JDK homes to run with can be given, f.e. tests/test-harness.sh /opt/jdk8
+# /opt/jdk17 /opt/jdk21 (IOUtil methods used by the servers differ by JDK),
+# WEAVER=asm runs jRT with ASM weaver.
+#
+# Throughput includes JIT and instrumentation warm up, longer runs (more
+# REQUESTS) show the steady state overhead.
+#
+# Messages are length prefixed and measured by -framer=length, server
+# sockets are told apart from client ones by endpoint keys of filter
+# entries: <port>:: is i2o of the server (service time), ::<port> is o2i of
+# clients (round trip).
+
+die() {
+	echo $*
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19795
+SERVERS=${SERVERS:-blocking nio async}
+DISTS=${DISTS:-fixed exp bimodal}
+SERVICE=${SERVICE:-500}
+CONNECTIONS=${CONNECTIONS:-4}
+REQUESTS=${REQUESTS:-1000}
+RATE=${RATE:-0}
+# tolerance of a percentile, relative and absolute (us)
+TOLERANCE=${TOLERANCE:-0.05}
+SLACK=${SLACK:-100}
+WEAVER=${WEAVER:-javassist}
+
+JDKS="$*"
+[ -z "$JDKS" ] && JDKS=${JAVA_HOME:-$(dirname $(dirname $(readlink -f $(which java))))}
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+
+harness() {
+	$JDK/bin/java $1 -cp $TEST/$JDK_NAME jrttest.LoadHarness -server:$SERVER -dist:$DIST -service:$SERVICE -connections:$CONNECTIONS \
+		-requests:$REQUESTS -rate:$RATE -port:$PORT -wait:$2
+}
+
+# field of a harness line: percentiles <line prefix> <p50|p90|p99|count> <log>
+field() {
+	sed -n "s/^$1:.* $2=\([0-9.]*\).*/\1/p" $3
+}
+
+# compares percentiles of the harness with jRT's: check <name> <line prefix> <log> <tag>
+check() {
+	$ITSELF_PATH/../jRTLogQuery -tag "raw:$4" -outputValueUnitRatio 1000 -percentiles 50,90,99 $3 > $3.$1.query || die "jRTLogQuery failed"
+	COUNT=$(sed -n 's/^Count: //p' $3.$1.query)
+	[ "$COUNT" == "$(field $2 count $LOG)" ] || die "$1: jRT recorded $COUNT latencies, expected $(field $2 count $LOG), see $3.$1.query !!! test [FAILED]"
+	for P in 50 90 99; do
+		EXPECTED=$(field $2 p$P $LOG)
+		GOT=$(sed -n "s/^$P.0%: //p" $3.$1.query)
+		awk -v e=$EXPECTED -v g=$GOT -v t=$TOLERANCE -v s=$SLACK 'BEGIN { d = e - g; if (d < 0) d = -d; exit !(d <= e * t + s) }' \
+			|| die "$1: p$P of jRT is $GOT us, harness $EXPECTED us, see $3.$1.query and $LOG !!! test [FAILED]"
+		RESULT="$RESULT $1.p$P=$GOT/$EXPECTED"
+	done
+}
+
+for JDK in $JDKS; do
+	[ -x $JDK/bin/java ] || die "There is no java in $JDK"
+	JDK_NAME=$(basename $JDK)
+	mkdir -p $TEST/$JDK_NAME
+	(cd $TEST && $JDK/bin/javac -d $JDK_NAME jrttest/LoadHarness.java) || die "Could not compile harness with $JDK"
+	echo "Harness on $JDK_NAME ($WEAVER weaver)"
+
+for SERVER in $SERVERS; do
+	for DIST in $DISTS; do
+		NAME=$JDK_NAME/$SERVER.$DIST
+		PLAIN=$TEST/$NAME.plain.log
+		LOG=$TEST/$NAME.log
+		harness "" 0 &> $PLAIN || die "Harness failed, see $PLAIN"
+		harness "-javaagent:$JRT=-si=200,-lp=$TEST/$NAME,-lport=$PORT,-rport=$PORT,-key=filter,-framer=length,-raw=true,-weaver=$WEAVER" 1000 &> $LOG \
+			|| die "Harness failed, see $LOG"
+
+		RESULT=""
+		check service service $TEST/$NAME.i2o.hlog "$PORT::"
+		check roundtrip roundtrip $TEST/$NAME.o2i.hlog "::$PORT"
+		echo "$NAME: throughput $(sed -n 's/^throughput=//p' $PLAIN) without jRT, $(sed -n 's/^throughput=//p' $LOG) with jRT, jRT/harness us:$RESULT"
+	done
+done
+done
+
+echo "..DONE"
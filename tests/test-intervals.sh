@@ -0,0 +1,61 @@
+#!/bin/bash
+
+# Runs two JVMs started at different times and checks that all interval
+# ends of their logs are on the same wall clock boundaries (multiples of
+# -si since epoch), so logs can be merged interval by interval, and that
+# intervals dropped during -start delay are not counted as logged:
+#
+#	tests/test-intervals.sh
+
+die() {
+	echo $*
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19760
+SI=200
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac jrttest/ControlWindow.java) || die "Could not compile test"
+
+# prints absolute end (ms since epoch) of every interval of hlog
+ends() {
+	awk -F, '
+		/^#\[StartTime: / { split($0, a, " "); start = a[2] }
+		/^[0-9]/ { printf "%.0f\n", (start + $1 + $2) * 1000 }
+	' $1
+}
+
+for RUN in a b; do
+	LOG=$TEST/$RUN.log
+	(cd $TEST && java -javaagent:$JRT=-si=$SI,-lp=$RUN,-rport=$PORT \
+		-cp . jrttest.ControlWindow -port:$PORT -rounds:20000 -phases:1 -wait:$((SI * 4)) &> $LOG) || die "Test run failed, see $LOG"
+	grep 'log intervals' $LOG
+
+	INTERVALS=$(ends $TEST/$RUN.o2i.hlog | wc -l)
+	[ $INTERVALS -gt 2 ] || die "Expected some intervals, see $TEST/$RUN.o2i.hlog !!! test [FAILED]"
+	for END in $(ends $TEST/$RUN.o2i.hlog); do
+		[ $((END % SI)) == 0 ] || die "Interval end $END is not a multiple of $SI, see $TEST/$RUN.o2i.hlog !!! test [FAILED]"
+	done
+	echo "$RUN: $INTERVALS intervals end on $SI ms boundaries"
+	# start the second run off the boundary
+	sleep 0.13
+done
+
+LOG=$TEST/delayed.log
+(cd $TEST && java -javaagent:$JRT=-si=$SI,-lp=delayed,-rport=$PORT,-start=$((SI * 5)) \
+	-cp . jrttest.ControlWindow -port:$PORT -rounds:20000 -phases:1 -wait:$((SI * 4)) &> $LOG) || die "Test run failed, see $LOG"
+COUNTED=$(awk '/ log intervals, / { print $1 }' $LOG)
+INTERVALS=$(ends $TEST/delayed.o2i.hlog | wc -l)
+# the summary may be printed while the last interval is written
+[ -n "$COUNTED" ] && [ $COUNTED -ge $INTERVALS -a $COUNTED -le $((INTERVALS + 1)) ] || die "$COUNTED intervals counted, $INTERVALS logged, see $LOG !!! test [FAILED]"
+echo "delayed: $COUNTED intervals counted, $INTERVALS logged"
+
+echo "..DONE"
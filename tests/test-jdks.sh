@@ -0,0 +1,71 @@
+#!/bin/bash
+
+die() {
+	echo $*
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19700
+WEAVER=${WEAVER:-javassist}
+
+# JDK homes to test with, f.e. test-jdks.sh /opt/jdk8 /opt/jdk11 /opt/jdk17 /opt/jdk21
+# (WEAVER=asm to test ASM weaver)
+JDKS="$*"
+[ -z "$JDKS" ] && JDKS=${JAVA_HOME:-$(dirname $(dirname $(readlink -f $(which java))))}
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+rm -rf $TEST
+mkdir -p $TEST
+cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ $TEST/
+
+for JDK in $JDKS; do
+	[ -x $JDK/bin/java ] || die "There is no java in $JDK"
+	NAME=$(basename $JDK)
+	mkdir -p $TEST/$NAME
+	(cd $TEST && $JDK/bin/javac -d $NAME jrttest/LoopbackEcho.java) || die "Could not compile test with $JDK"
+
+	# JDK 13..17 have both socket implementations, others ignore the property
+	for PLAIN in false true; do
+	# JRTHic in sockRTs and in injected fields, named after an id that isn't a java identifier
+	for HF in false true; do
+		echo "Test run on $NAME (usePlainSocketImpl=$PLAIN, -hf=$HF, $WEAVER weaver)"
+
+		LOG=$TEST/$NAME/test-$PLAIN-$HF.log
+		(cd $TEST/$NAME && $JDK/bin/java -Djdk.net.usePlainSocketImpl=$PLAIN \
+			-javaagent:$JRT=-start=0,-si=100,-lp=loopback-$PLAIN-$HF,-conn=true,-rport=$PORT,-weaver=$WEAVER,-hf=$HF,-id=loopback-$NAME.1 \
+			-cp . jrttest.LoopbackEcho -port:$PORT -rounds:200 &> $LOG)
+
+		grep -q 'Could not instrument' $LOG && die "Instrumentation failed, see $LOG !!! test [FAILED]"
+
+		ROUNDS=$(grep '^rounds=' $LOG | sed 's/rounds=//')
+		CONNECTIONS=$(grep '^connections=' $LOG | sed 's/connections=//')
+		CONNECTS_FAILED=$(grep '^failed=' $LOG | sed 's/failed=//')
+		[ -z "$ROUNDS" -o -z "$CONNECTIONS" -o -z "$CONNECTS_FAILED" ] && die "Loopback run failed, see $LOG"
+
+		# hlog counts include pause corrections, so take raw counts from jRT summary
+		O2I=$(grep ' o2i latencies was recorded' $LOG | awk '{print $4}')
+		OPENED=$(grep 'connections was opened' $LOG | awk '{print $1}')
+		CLOSED=$(grep 'connections was opened' $LOG | awk '{print $6}')
+		FAILED=$(grep 'connections was opened' $LOG | awk '{print $8}')
+		REGISTERED=$(grep 'open sockets are registered' $LOG | awk '{print $(NF-4)}')
+		[ -z "$O2I" -o -z "$OPENED" -o -z "$REGISTERED" ] && die "There is no jRT summary in $LOG"
+
+		echo "$O2I o2i latencies for $ROUNDS rounds, $OPENED/$CLOSED connections opened/closed of $CONNECTIONS, $FAILED of $CONNECTS_FAILED connects failed, $REGISTERED sockets left registered"
+
+		[ "$O2I" == "$ROUNDS" ] || die "Expected o2i latency per round on $NAME !!! test [FAILED]"
+		[ "$OPENED" == "$CONNECTIONS" ] || die "Expected opened connection per client on $NAME !!! test [FAILED]"
+		[ "$CLOSED" == "$CONNECTIONS" ] || die "Expected closed connection per client on $NAME !!! test [FAILED]"
+		[ "$FAILED" == "$CONNECTS_FAILED" ] || die "Expected failed connects to be recorded on $NAME !!! test [FAILED]"
+		# every client socket is closed, server side ones don't pass -rport
+		[ "$REGISTERED" == "0" ] || die "Expected closed sockets to be unregistered on $NAME !!! test [FAILED]"
+		FAILED_TAGS=$(grep -c '^Tag=failed,' $TEST/$NAME/loopback-$PLAIN-$HF.connect.hlog)
+		[ "$FAILED_TAGS" -gt 0 ] || die "Expected failed connects tagged in connect.hlog on $NAME !!! test [FAILED]"
+	done
+	done
+done
+
+echo "..DONE"
@@ -0,0 +1,47 @@
+#!/bin/bash
+
+# Switches -mode and replaces filter entries of running jRT through its
+# MBean (-jmx=true) between phases of loopback rounds and checks recorded
+# counters and last interval percentiles read from the MBean:
+#
+#	tests/test-jmx.sh
+
+die() {
+	echo $*
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19770
+ROUNDS=100
+WEAVER=${WEAVER:-javassist}
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac jrttest/JmxReconfigure.java) || die "Could not compile test"
+
+LOG=$TEST/jmx.log
+(cd $TEST && java -javaagent:$JRT=-si=100,-lp=jmx,-rport=$PORT,-jmx=true,-weaver=$WEAVER \
+	-cp . jrttest.JmxReconfigure -port:$PORT -rounds:$ROUNDS -interval:100 &> $LOG) || die "Test run failed, see $LOG"
+
+# $1 - phase, $2 - expected "mode=.. i2o=.. o2i=.."
+check() {
+	LINE=$(grep "^phase=$1 " $LOG)
+	echo "$LINE"
+	echo "$LINE" | grep -q "phase=$1 $2 " || die "Expected $2 after phase $1, see $LOG !!! test [FAILED]"
+}
+
+# client side only: one i2o between every pair of rounds, one o2i per round
+check 1 "mode=both i2o=$((ROUNDS - 1)) o2i=$ROUNDS"
+grep "^phase=1 " $LOG | grep -q " p99=[1-9]" || die "Expected o2i p99 of last interval, see $LOG !!! test [FAILED]"
+# i2o is not recorded anymore
+check 2 "mode=o2i i2o=$((ROUNDS - 1)) o2i=$((ROUNDS * 2))"
+# new connection doesn't match new filter
+check 3 "mode=o2i i2o=$((ROUNDS - 1)) o2i=$((ROUNDS * 2))"
+
+echo "..DONE"
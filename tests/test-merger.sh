@@ -0,0 +1,68 @@
+#!/bin/bash
+
+# Runs two JVMs with jRT at the same time and checks jRTLogMerger: a
+# single log gives the same intervals as jRTLogProcessor, logs of both
+# JVMs are merged interval by interval, -alltags doesn't count raw and
+# per endpoint intervals twice, and -start/-end, -csv work:
+#
+#	tests/test-merger.sh
+
+die() {
+	echo $*
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19760
+ROUNDS=1000
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac jrttest/ControlWindow.java) || die "Could not compile test"
+
+for RUN in a b; do
+	PORT=$((PORT + 1))
+	(cd $TEST && java -javaagent:$JRT=-si=200,-lp=$RUN,-rport=$PORT,-raw=true,-key=remote \
+		-cp . jrttest.ControlWindow -port:$PORT -rounds:$ROUNDS -phases:1 -wait:1000 &> $TEST/$RUN.log) &
+done
+wait
+
+# total count of the last interval line
+total() {
+	tail -1 $1 | sed 's/.*T:\([0-9]*\).*/\1/'
+}
+
+$ITSELF_PATH/../jRTLogProcessor -i $TEST/a.o2i.hlog -o $TEST/a.processor > /dev/null || die "jRTLogProcessor failed"
+$ITSELF_PATH/../jRTLogMerger -interval 0.2 -o $TEST/a.merger $TEST/a.o2i.hlog || die "jRTLogMerger failed"
+# jRTLogProcessor truncates interval ends to ms, so timestamps may differ by 1 ms
+intervals() {
+	grep -v '^#' $1 | sed 's/^[0-9.]*: //'
+}
+diff <(intervals $TEST/a.processor) <(intervals $TEST/a.merger) || die "Single log intervals differ from jRTLogProcessor !!! test [FAILED]"
+diff $TEST/a.processor.hgrm $TEST/a.merger.hgrm || die "Single log distribution differs from jRTLogProcessor !!! test [FAILED]"
+echo "a: $(total $TEST/a.merger) latencies, same as jRTLogProcessor"
+
+$ITSELF_PATH/../jRTLogMerger -interval 0.2 -o $TEST/b.merger $TEST/b.o2i.hlog || die "jRTLogMerger failed"
+$ITSELF_PATH/../jRTLogMerger -interval 0.2 -threads 2 -o $TEST/ab.merger $TEST/a.o2i.hlog $TEST/b.o2i.hlog || die "jRTLogMerger failed"
+[ $(total $TEST/ab.merger) == $(($(total $TEST/a.merger) + $(total $TEST/b.merger))) ] || die "Merged total is not a sum of totals, see $TEST/ab.merger !!! test [FAILED]"
+[ $(total $TEST/ab.merger) == $((2 * ROUNDS)) ] || die "Expected $((2 * ROUNDS)) latencies, see $TEST/ab.merger !!! test [FAILED]"
+# intervals of both JVMs end on the same boundaries, so there are not more of them
+[ $(grep -c ': I:' $TEST/ab.merger) -le $(( $(grep -c ': I:' $TEST/a.merger) + 1 )) ] || die "Intervals were not merged, see $TEST/ab.merger !!! test [FAILED]"
+echo "a+b: $(total $TEST/ab.merger) latencies in $(grep -c ': I:' $TEST/ab.merger) intervals"
+
+grep -q '^Tag=raw,' $TEST/a.o2i.hlog && grep -q '^Tag=127.0.0.1:' $TEST/a.o2i.hlog || die "Expected raw and endpoint intervals, see $TEST/a.o2i.hlog !!! test [FAILED]"
+$ITSELF_PATH/../jRTLogMerger -interval 0.2 -alltags -o $TEST/all.merger $TEST/a.o2i.hlog $TEST/b.o2i.hlog || die "jRTLogMerger failed"
+[ $(total $TEST/all.merger) == $((2 * ROUNDS)) ] || die "Expected $((2 * ROUNDS)) latencies of all tags, see $TEST/all.merger !!! test [FAILED]"
+echo "-alltags: $(total $TEST/all.merger) latencies"
+
+$ITSELF_PATH/../jRTLogMerger -interval 0.2 -csv -start 0.5 -end 1 -o $TEST/range.merger $TEST/ || die "jRTLogMerger failed"
+LINES=$(grep -c '^[0-9]' $TEST/range.merger)
+[ $LINES -ge 2 -a $LINES -le 4 ] || die "Expected 0.5 s of 0.2 s intervals, see $TEST/range.merger !!! test [FAILED]"
+echo "range: $LINES csv intervals"
+
+echo "..DONE"
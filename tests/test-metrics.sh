@@ -0,0 +1,60 @@
+#!/bin/bash
+
+# Scrapes OpenMetrics endpoint of jRT (-metrics) while loopback rounds
+# are paused and checks counters of overall and per endpoint summaries:
+#
+#	tests/test-metrics.sh
+
+die() {
+	echo $*
+	[ -n "$PID" ] && kill $PID 2> /dev/null
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19760
+METRICS=19771
+ROUNDS=100
+WEAVER=${WEAVER:-javassist}
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac jrttest/ControlWindow.java) || die "Could not compile test"
+
+LOG=$TEST/metrics.log
+(cd $TEST && java -javaagent:$JRT=-si=100,-lp=metrics,-rport=$PORT,-key=remote,-metrics=127.0.0.1:$METRICS,-weaver=$WEAVER \
+	-cp . jrttest.ControlWindow -port:$PORT -rounds:$ROUNDS -phases:2 -marker:$TEST/metrics. &> $LOG) &
+
+for i in $(seq 100); do
+	grep -q '^phase=1' $LOG && break
+	sleep 0.1
+done
+PID=$(grep '^pid=' $LOG | sed 's/pid=//')
+[ -z "$PID" ] && die "Test run failed, see $LOG"
+
+# let jRT publish the interval with the rounds
+sleep 0.5
+SCRAPE=$TEST/metrics.txt
+curl -s -H 'Accept: application/openmetrics-text' http://127.0.0.1:$METRICS/metrics > $SCRAPE || die "Could not scrape metrics"
+touch $TEST/metrics.1
+wait
+
+# $1 - series, $2 - expected value
+check() {
+	grep -qF "$1 $2" $SCRAPE || die "Expected $1 $2, see $SCRAPE !!! test [FAILED]"
+	echo "$1 $2"
+}
+
+check 'jrt_latency_seconds_count{jrt="1",direction="o2i"}' $ROUNDS
+check 'jrt_latency_seconds_count{jrt="1",direction="i2o"}' $((ROUNDS - 1))
+check 'jrt_latency_seconds_count{jrt="1",direction="o2i",key="127.0.0.1:'$PORT'"}' $ROUNDS
+# scrape connection itself is not measured
+check 'jrt_sockets_total{jrt="1"}' 1
+grep -q '^# EOF$' $SCRAPE || die "Expected # EOF, see $SCRAPE !!! test [FAILED]"
+
+echo "..DONE"
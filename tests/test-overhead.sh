@@ -0,0 +1,51 @@
+#!/bin/bash
+
+# Runs a JVM with jRT measuring itself (-overhead) and checks that every
+# interval has a line of calibrated probe cost, probe calls of all rounds
+# are counted and the statistic reports them:
+#
+#	tests/test-overhead.sh
+
+die() {
+	echo $*
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19781
+ROUNDS=1000
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac jrttest/ControlWindow.java) || die "Could not compile test"
+
+(cd $TEST && java -javaagent:$JRT=-si=200,-lp=self,-rport=$PORT,-overhead=true \
+	-cp . jrttest.ControlWindow -port:$PORT -rounds:$ROUNDS -phases:1 -wait:1000 &> $TEST/self.log) || die "Test failed, see $TEST/self.log"
+
+CSV=$TEST/self.overhead.csv
+[ -f $CSV ] || die "No overhead log, see $TEST/self.log !!! test [FAILED]"
+INTERVALS=$(grep -c '^[0-9]' $CSV)
+HLOG_INTERVALS=$(grep -c '^[0-9]' $TEST/self.o2i.hlog)
+[ $INTERVALS -gt 0 -a $INTERVALS == $HLOG_INTERVALS ] || die "Expected an overhead line of every interval, see $CSV !!! test [FAILED]"
+
+# a round is a write and a read on each of both sides: at least 4 probes
+# of each side, only the client one is measured but all are counted
+PROBES=$(awk -F, '/^[0-9]/ { s += $3 } END { print s }' $CSV)
+[ $PROBES -ge $((4 * ROUNDS)) ] || die "Expected at least $((4 * ROUNDS)) probe calls, got $PROBES, see $CSV !!! test [FAILED]"
+awk -F, '/^[0-9]/ && !($4 > 0 && $6 > 0) { exit 1 }' $CSV || die "Expected positive probe and registration cost, see $CSV !!! test [FAILED]"
+
+grep -q "probe calls and registrations took" $TEST/self.log || die "No probe time in statistic, see $TEST/self.log !!! test [FAILED]"
+# the client and the accepted socket, each is checked once however many
+# of its streams are registered
+CHECKED=$(awk '/socket filter was checked/ { print $5 }' $TEST/self.log)
+[ "$CHECKED" == 2 ] || die "Expected socket filter checked for 2 sockets, got $CHECKED, see $TEST/self.log !!! test [FAILED]"
+grep -q "log writer took" $TEST/self.log || die "No log writer time in statistic, see $TEST/self.log !!! test [FAILED]"
+echo "$INTERVALS intervals, $PROBES probe calls"
+grep "probe calls and registrations took\|socket filter was checked\|log writer took" $TEST/self.log
+
+echo "..DONE"
@@ -0,0 +1,65 @@
+#!/bin/bash
+
+# Queries o2i log of a running jRT with jRTLogQuery: after the first
+# phase of rounds, and after the second one when the log has grown (the
+# cached index is extended), then a sub range. Counts are checked against
+# the rounds and jRTLogMerger:
+#
+#	tests/test-query.sh
+
+die() {
+	echo $*
+	[ -n "$PID" ] && kill $PID 2> /dev/null
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19760
+ROUNDS=500
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac jrttest/ControlWindow.java) || die "Could not compile test"
+
+LOG=$TEST/query.log
+HLOG=$TEST/query.o2i.hlog
+(cd $TEST && java -javaagent:$JRT=-si=100,-lp=query,-rport=$PORT \
+	-cp . jrttest.ControlWindow -port:$PORT -rounds:$ROUNDS -phases:2 -marker:$TEST/query. -wait:300 &> $LOG) &
+
+for i in $(seq 100); do
+	grep -q '^phase=1' $LOG && break
+	sleep 0.1
+done
+PID=$(grep '^pid=' $LOG | sed 's/pid=//')
+[ -z "$PID" ] && die "Test run failed, see $LOG"
+sleep 0.3
+
+# $1 - expected count, other - jRTLogQuery arguments
+query() {
+	EXPECTED=$1
+	shift
+	$ITSELF_PATH/../jRTLogQuery "$@" > $TEST/query.txt || die "jRTLogQuery failed"
+	head -1 $TEST/query.txt
+	grep -q "^Count: $EXPECTED\$" $TEST/query.txt || die "Expected count $EXPECTED, see $TEST/query.txt !!! test [FAILED]"
+}
+
+query $ROUNDS $HLOG
+[ -f $HLOG.idx ] || die "Index was not cached !!! test [FAILED]"
+
+touch $TEST/query.1
+wait
+PID=
+
+query $((2 * ROUNDS)) $HLOG
+INTERVALS=$(grep -c '^[0-9]' $HLOG)
+[ $(stat -c %s $HLOG.idx) == $((48 + 16 * INTERVALS)) ] || die "Index was not extended to $INTERVALS intervals !!! test [FAILED]"
+
+MERGED=$($ITSELF_PATH/../jRTLogMerger -start 0.3 -end 1.5 $HLOG | grep 'Total count' | sed 's/.*Total count *= *//; s/\]//')
+query $MERGED -start 0.3 -end 1.5 -percentiles 99.9 $HLOG
+
+echo "..DONE"
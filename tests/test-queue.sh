@@ -0,0 +1,33 @@
+#!/bin/bash
+
+# Bursts through the FIFO of -pipeline pairing (TimestampQueue): over its
+# capacity, around its ring and by a producer and a consumer thread at once
+#
+#	CAPACITY=4 tests/test-queue.sh
+
+die() {
+	echo $*
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+CAPACITY=${CAPACITY:-16}
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac -cp $JRT jrttest/QueueBurst.java) || die "Could not compile test"
+
+echo "Test run"
+
+LOG=$TEST/queue.log
+(cd $TEST && java -cp $JRT:. jrttest.QueueBurst -capacity:$CAPACITY &> $LOG)
+RESULT=$?
+cat $LOG
+[ "$RESULT" == "0" ] || die "Queue burst failed, see $LOG !!! test [FAILED]"
+
+echo "..DONE"
@@ -0,0 +1,56 @@
+#!/bin/bash
+
+# Checks rotation of interval logs: by time with compression (segments
+# are gzipped and together with the active log make a continuous
+# timeline, size/connect/accept logs are rotated too) and by size with
+# disk budget (oldest segments are deleted):
+#
+#	tests/test-rotation.sh
+
+die() {
+	echo $*
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19760
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac jrttest/ControlWindow.java) || die "Could not compile test"
+
+# $1 - log prefix, $2 - jRT args
+run() {
+	LOG=$TEST/$1.log
+	(cd $TEST && java -javaagent:$JRT=-si=100,-lp=$1,-rport=$PORT,$2 \
+		-cp . jrttest.ControlWindow -port:$PORT -rounds:100 -phases:1 -wait:$WAIT &> $LOG) || die "Test run failed, see $LOG"
+	grep 'log segments' $LOG || die "No log segments rotated, see $LOG !!! test [FAILED]"
+}
+
+WAIT=2000 run time -logtime=300,-bytes=true,-conn=true
+for LOG in size connect accept; do
+	ls $TEST/time.$LOG.1.hlog.gz &> /dev/null || die "$LOG log was not rotated, see $TEST !!! test [FAILED]"
+done
+SEGMENTS=$(ls $TEST/time.o2i.*.hlog.gz | wc -l)
+[ $SEGMENTS -ge 3 ] || die "Expected compressed segments, see $TEST !!! test [FAILED]"
+# start and end of every interval of all segments in order
+for N in $(seq $SEGMENTS); do zcat $TEST/time.o2i.$N.hlog.gz; done | cat - $TEST/time.o2i.hlog | awk -F, '
+	/^[0-9]/ {
+		if (end != "" && $1 != end) { print "gap at " end " - " $1; exit 1 }
+		end = sprintf("%.3f", $1 + $2); ++n
+	}
+	END { print n " intervals in " '$SEGMENTS' " segments and the active log" }
+' || die "Intervals of segments are not continuous !!! test [FAILED]"
+
+WAIT=4000 run size -logsize=1k,-logzip=false,-logbudget=2k
+[ -f $TEST/size.i2o.1.hlog -a -f $TEST/size.o2i.1.hlog ] && die "Oldest segments were not deleted over budget !!! test [FAILED]"
+ls $TEST/size.*.hlog.gz &> /dev/null && die "Segments should not be compressed !!! test [FAILED]"
+grep -q ' [1-9][0-9]* deleted over disk budget' $TEST/size.log || die "Expected deleted segments, see $TEST/size.log !!! test [FAILED]"
+echo "$(ls $TEST/size.*.hlog | wc -l) logs left, $(cat $TEST/size.*.hlog | wc -c) bytes"
+
+echo "..DONE"
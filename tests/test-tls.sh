@@ -0,0 +1,46 @@
+#!/bin/bash
+
+die() {
+	echo $*
+	exit 1
+}
+
+ITSELF_PATH=$(dirname $(readlink -f $0))
+TEST=$ITSELF_PATH/tmp
+JRT=$ITSELF_PATH/../jRT.jar
+PORT=19900
+
+[ -f $JRT ] || die "jRT was not built yet, please build it"
+
+
+echo "Test run"
+
+rm -rf $TEST
+mkdir -p $TEST
+(cd $TEST && cp -r $ITSELF_PATH/../jRTTest/src/jrttest/ ./)
+(cd $TEST && javac jrttest/TlsEcho.java)
+(cd $TEST && keytool -genkeypair -alias jrt -keyalg RSA -keysize 2048 -dname CN=localhost -validity 30 \
+	-keystore keystore.jks -storepass changeit -keypass changeit &> keytool.log) || die "Could not generate keystore, see $TEST/keytool.log"
+(cd $TEST && java -javaagent:$JRT=-start=0,-si=100,-lp=tls,-tls=true,-rport=$PORT -cp . jrttest.TlsEcho -port:$PORT -rounds:200 -keystore:keystore.jks &> test.log)
+
+echo "Analysis..."
+
+ROUNDS=$(grep '^rounds=' $TEST/test.log | sed 's/rounds=//')
+[ -z "$ROUNDS" ] && die "TLS run failed, see $TEST/test.log"
+
+# hlog counts include pause corrections, so take raw counts from jRT summary
+RAW=$(grep ' o2i latencies was recorded' $TEST/test.log | awk '{print $1 + $4}')
+HANDSHAKES=$(grep 'TLS handshakes' $TEST/test.log | awk '{print $1}')
+TLS_O2I=$(grep 'TLS handshakes' $TEST/test.log | awk '{print $7}')
+REGISTERED=$(grep 'open sockets are registered' $TEST/test.log | awk '{print $(NF-4)}')
+[ -z "$RAW" -o -z "$HANDSHAKES" -o -z "$TLS_O2I" -o -z "$REGISTERED" ] && die "There is no jRT summary in $TEST/test.log"
+
+echo "$HANDSHAKES handshakes, $TLS_O2I TLS o2i and $RAW raw latencies recorded for $ROUNDS rounds, $REGISTERED sockets left registered"
+
+[ "$HANDSHAKES" == "2" ] || die "Expected handshakes of client socket and client engine !!! test [FAILED]"
+[ "$TLS_O2I" == "$((ROUNDS * 2))" ] || die "Expected o2i latency per round !!! test [FAILED]"
+[ "$RAW" == "0" ] || die "Encrypted records were measured !!! test [FAILED]"
+# closed sockets and engines, their raw sockets too
+[ "$REGISTERED" == "0" ] || die "Expected closed sockets and engines to be unregistered !!! test [FAILED]"
+
+echo "..DONE"